@@ -0,0 +1,77 @@
+package com.simple.jupiter.benchmark.channel;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import com.simple.jupiter.transport.netty.channel.NettyChannel;
+import com.simple.jupiter.transport.netty.handler.IdleStateChecker;
+import com.simple.jupiter.util.JConstants;
+import com.simple.jupiter.util.SystemPropertyUtil;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.HashedWheelTimer;
+
+/**
+ * 空闲连接的堆内存占用: N 个挂着 {@link IdleStateChecker} 和 {@link NettyChannel} 的连接, 减去同样数量的裸 channel,
+ * 每次测量之前多次 GC.
+ *
+ * 连接用 {@link EmbeddedChannel} 模拟, 都没有写过数据. 不是 JMH 基准, JMH 测的是单次操作的耗时和分配, 不是常驻内存,
+ * 建议固定堆大小运行, 例如 -Xms2g -Xmx2g.
+ *
+ * -Dconnections=100000             连接数
+ * -Didle.timer=true                IdleStateChecker 使用 HashedWheelTimer(每个连接自己的 timeout), 默认使用 event-loop 扫描
+ *
+ * jupiter
+ * org.jupiter.benchmark.channel
+ */
+public class IdleConnectionFootprint {
+
+    private static final int CONNECTIONS = SystemPropertyUtil.getInt("connections", 100000);
+    private static final boolean IDLE_TIMER = SystemPropertyUtil.getBoolean("idle.timer", false);
+
+    public static void main(String[] args) throws InterruptedException {
+        HashedWheelTimer timer = IDLE_TIMER ? new HashedWheelTimer() : null;
+
+        long base = usedHeap();
+        EmbeddedChannel[] channels = new EmbeddedChannel[CONNECTIONS];
+        for (int i = 0; i < CONNECTIONS; i++) {
+            channels[i] = new EmbeddedChannel();
+        }
+        long bare = usedHeap() - base;
+        close(channels);
+
+        base = usedHeap();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            IdleStateChecker checker = IDLE_TIMER
+                    ? new IdleStateChecker(timer, JConstants.READER_IDLE_TIME_SECONDS, 0, 0)
+                    : new IdleStateChecker(JConstants.READER_IDLE_TIME_SECONDS, 0, 0);
+            channels[i] = new EmbeddedChannel(checker);
+            NettyChannel.attachChannel(channels[i]);
+        }
+        long full = usedHeap() - base;
+        close(channels);
+
+        System.out.printf("connections: %d, idle checker: %s%n", CONNECTIONS, IDLE_TIMER ? "timer" : "sweeper");
+        System.out.printf("bare channel: %d bytes/conn%n", bare / CONNECTIONS);
+        System.out.printf("with IdleStateChecker + NettyChannel: %d bytes/conn%n", full / CONNECTIONS);
+        System.out.printf("overhead: %d bytes/conn%n", (full - bare) / CONNECTIONS);
+
+        if (timer != null) {
+            timer.stop();
+        }
+    }
+
+    private static void close(EmbeddedChannel[] channels) {
+        for (int i = 0; i < channels.length; i++) {
+            channels[i].finishAndReleaseAll();
+            channels[i] = null;
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,111 @@
+package com.simple.jupiter.benchmark.codec;
+
+import java.util.concurrent.TimeUnit;
+import com.simple.jupiter.rpc.model.metadata.MessageWrapper;
+import com.simple.jupiter.rpc.model.metadata.ServiceMetadata;
+import com.simple.jupiter.serialization.Serializer;
+import com.simple.jupiter.serialization.java.JavaSerializer;
+import com.simple.jupiter.transport.channel.JChannel;
+import com.simple.jupiter.transport.netty.channel.NettyChannel;
+import com.simple.jupiter.transport.netty.handler.LowCopyProtocolDecoder;
+import com.simple.jupiter.transport.netty.handler.LowCopyProtocolEncoder;
+import com.simple.jupiter.transport.payload.JRequestPayload;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 一个请求经过 low copy 编码/解码的完整来回(序列化 -> encoder -> decoder -> 反序列化)的开销,
+ * 对比 NettyOutputBuf/NettyInputBuf 通过 Recycler 复用和不复用(maxCapacityPerThread=0)时每次调用分配的字节数.
+ *
+ * 需要关注的是 GCProfiler 输出的 gc.alloc.rate.norm(B/op).
+ *
+ * jupiter
+ * org.jupiter.benchmark.codec
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BufRecyclerBenchmark {
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BufRecyclerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Param({ "64", "4096" })
+    private int bodySize;
+
+    private EmbeddedChannel encoder;
+    private EmbeddedChannel decoder;
+    private JChannel channel;
+    private Serializer serializer;
+    private MessageWrapper message;
+
+    @Setup
+    public void setup() {
+        encoder = new EmbeddedChannel(new LowCopyProtocolEncoder());
+        decoder = new EmbeddedChannel(new LowCopyProtocolDecoder());
+        channel = NettyChannel.attachChannel(encoder);
+        serializer = new JavaSerializer();
+
+        message = new MessageWrapper(new ServiceMetadata("benchmark", "BufRecyclerBenchmark", "1.0.0"));
+        message.setAppName("benchmark");
+        message.setMethodName("echo");
+        message.setArgs(new Object[] { new byte[bodySize] });
+    }
+
+    @TearDown
+    public void tearDown() {
+        encoder.finishAndReleaseAll();
+        decoder.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public Object recycled() {
+        return roundTrip();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dio.netty.recycler.maxCapacityPerThread=0")
+    public Object notRecycled() {
+        return roundTrip();
+    }
+
+    private Object roundTrip() {
+        JRequestPayload payload = new JRequestPayload();
+        payload.outputBuf(serializer.code(), serializer.writeObject(channel.allocOutputBuf(), message));
+        encoder.writeOutbound(payload);
+        payload.clear();
+        ByteBuf frame = encoder.readOutbound();
+
+        decoder.writeInbound(frame);
+        JRequestPayload received = decoder.readInbound();
+        MessageWrapper msg = serializer.readObject(received.inputBuf(), MessageWrapper.class);
+        received.clear();
+        return msg;
+    }
+}
@@ -0,0 +1,122 @@
+package com.simple.jupiter.benchmark.codec;
+
+import java.util.concurrent.TimeUnit;
+import com.simple.jupiter.serialization.SerializerType;
+import com.simple.jupiter.transport.netty.handler.CumulativeProtocolDecoder;
+import com.simple.jupiter.transport.netty.handler.LowCopyCumulativeProtocolDecoder;
+import com.simple.jupiter.transport.netty.handler.LowCopyProtocolDecoder;
+import com.simple.jupiter.transport.netty.handler.ProtocolDecoder;
+import com.simple.jupiter.transport.netty.handler.ProtocolEncoder;
+import com.simple.jupiter.transport.payload.JRequestPayload;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * ReplayingDecoder 实现的解码器(默认)和 ByteToMessageDecoder 实现的累积解码器
+ * (jupiter.io.codec.decoder.cumulative=true) 解码一个请求帧的开销.
+ *
+ * 一个帧按 readSize 拆成多次读到达(模拟大消息体跨多次 socket read), 消息体越大, 帧不完整时 ReplayingDecoder
+ * 重复解码的次数越多.
+ *
+ * jupiter
+ * org.jupiter.benchmark.codec
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DecoderBenchmark {
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(DecoderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Param({ "64", "4096", "1048576" })
+    private int bodySize;
+
+    // 每次读到的字节数
+    @Param({ "8192" })
+    private int readSize;
+
+    @Param({ "true", "false" })
+    private boolean lowCopy;
+
+    private ByteBuf frame;
+    private EmbeddedChannel replaying;
+    private EmbeddedChannel cumulative;
+
+    @Setup
+    public void setup() {
+        EmbeddedChannel encoder = new EmbeddedChannel(new ProtocolEncoder());
+        JRequestPayload payload = new JRequestPayload();
+        payload.bytes(SerializerType.PROTO_STUFF.value(), new byte[bodySize]);
+        encoder.writeOutbound(payload);
+        frame = encoder.readOutbound();
+        encoder.finishAndReleaseAll();
+
+        replaying = new EmbeddedChannel(newDecoder(false));
+        cumulative = new EmbeddedChannel(newDecoder(true));
+    }
+
+    @TearDown
+    public void tearDown() {
+        frame.release();
+        replaying.finishAndReleaseAll();
+        cumulative.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public Object replaying() {
+        return decode(replaying);
+    }
+
+    @Benchmark
+    public Object cumulative() {
+        return decode(cumulative);
+    }
+
+    private ChannelHandler newDecoder(boolean cumulative) {
+        if (lowCopy) {
+            return cumulative ? new LowCopyCumulativeProtocolDecoder() : new LowCopyProtocolDecoder();
+        }
+        return cumulative ? new CumulativeProtocolDecoder() : new ProtocolDecoder();
+    }
+
+    private Object decode(EmbeddedChannel decoder) {
+        int length = frame.readableBytes();
+        for (int offset = 0; offset < length; offset += readSize) {
+            decoder.writeInbound(frame.retainedSlice(offset, Math.min(readSize, length - offset)));
+        }
+        JRequestPayload payload = decoder.readInbound();
+        if (payload.inputBuf() != null) {
+            payload.inputBuf().release();
+        }
+        payload.clear();
+        return payload;
+    }
+}
@@ -0,0 +1,102 @@
+package com.simple.jupiter.benchmark.codec;
+
+import java.io.IOException;
+import com.simple.jupiter.serialization.SerializerType;
+import com.simple.jupiter.serialization.io.OutputBuf;
+import com.simple.jupiter.transport.netty.Handshakes;
+import com.simple.jupiter.transport.netty.channel.NettyChannel;
+import com.simple.jupiter.transport.netty.handler.CumulativeProtocolDecoder;
+import com.simple.jupiter.transport.netty.handler.LowCopyCumulativeProtocolDecoder;
+import com.simple.jupiter.transport.netty.handler.LowCopyProtocolDecoder;
+import com.simple.jupiter.transport.netty.handler.LowCopyProtocolEncoder;
+import com.simple.jupiter.transport.netty.handler.ProtocolDecoder;
+import com.simple.jupiter.transport.netty.handler.ProtocolEncoder;
+import com.simple.jupiter.transport.payload.JRequestPayload;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * 每次调用的协议头字节数: v1(固定16字节) 和协商之后的 v2(varint invoke id 和消息体长度, 见 JOption.COMPACT_HEADER).
+ *
+ * 不是 JMH 基准, 协议头长度是确定的, 只需要把不同 invoke id / 消息体长度的请求编码一次, 帧长度减去消息体长度;
+ * 每个帧都会再经过全部四种解码器, 确认解出来的 invoke id 和消息体长度不变.
+ *
+ * jupiter
+ * org.jupiter.benchmark.codec
+ */
+public class HeaderBytesPerCall {
+
+    private static final long[] INVOKE_IDS = { 1, 127, 1L << 14, (1L << 21) - 1, 1L << 39 };
+    private static final int[] BODY_SIZES = { 16, 127, 4096, 16 * 1024 - 1, 1024 * 1024 };
+
+    public static void main(String[] args) throws IOException {
+        System.out.printf("%-14s %-10s %-10s %-4s %s%n", "invokeId", "bodySize", "encoder", "v1", "v2");
+        for (long invokeId : INVOKE_IDS) {
+            for (int bodySize : BODY_SIZES) {
+                for (boolean lowCopy : new boolean[] { true, false }) {
+                    int v1 = headerBytes(invokeId, bodySize, lowCopy, false);
+                    int v2 = headerBytes(invokeId, bodySize, lowCopy, true);
+                    System.out.printf("%-14d %-10d %-10s %-4d %d%n",
+                            invokeId, bodySize, lowCopy ? "low_copy" : "byte[]", v1, v2);
+                }
+            }
+        }
+    }
+
+    private static int headerBytes(long invokeId, int bodySize, boolean lowCopy, boolean compact) throws IOException {
+        EmbeddedChannel encoder = new EmbeddedChannel(lowCopy ? new LowCopyProtocolEncoder() : new ProtocolEncoder());
+        if (compact) {
+            encoder.attr(Handshakes.COMPACT_HEADER).set(true);
+        }
+
+        JRequestPayload payload = new JRequestPayload(invokeId);
+        byte[] body = new byte[bodySize];
+        if (lowCopy) {
+            OutputBuf outputBuf = NettyChannel.attachChannel(encoder).allocOutputBuf();
+            outputBuf.outputStream().write(body);
+            payload.outputBuf(SerializerType.PROTO_STUFF.value(), outputBuf);
+        } else {
+            payload.bytes(SerializerType.PROTO_STUFF.value(), body);
+        }
+        encoder.writeOutbound(payload);
+        payload.clear();
+
+        ByteBuf frame = encoder.readOutbound();
+        encoder.finishAndReleaseAll();
+        try {
+            int headerBytes = frame.readableBytes() - bodySize;
+            ChannelHandler[] decoders = {
+                    new LowCopyProtocolDecoder(),
+                    new LowCopyCumulativeProtocolDecoder(),
+                    new ProtocolDecoder(),
+                    new CumulativeProtocolDecoder()
+            };
+            for (ChannelHandler decoder : decoders) {
+                verify(decoder, frame.retainedDuplicate(), invokeId, bodySize);
+            }
+            return headerBytes;
+        } finally {
+            frame.release();
+        }
+    }
+
+    private static void verify(ChannelHandler handler, ByteBuf frame, long invokeId, int bodySize) {
+        EmbeddedChannel decoder = new EmbeddedChannel(handler);
+        decoder.writeInbound(frame);
+        JRequestPayload payload = decoder.readInbound();
+        try {
+            int size = payload.inputBuf() != null ? payload.inputBuf().size() : payload.bytes().length;
+            if (payload.invokeId() != invokeId || size != bodySize) {
+                throw new IllegalStateException(handler.getClass().getSimpleName() + ": invokeId="
+                        + payload.invokeId() + ", bodySize=" + size + ", expected " + invokeId + "/" + bodySize);
+            }
+        } finally {
+            if (payload.inputBuf() != null) {
+                payload.inputBuf().release();
+            }
+            payload.clear();
+            decoder.finishAndReleaseAll();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.simple.jupiter.concurrent;
+
+import net.openhft.affinity.AffinityStrategies;
+import net.openhft.affinity.AffinityStrategy;
+
+/**
+ * IO线程(netty event loop)与业务线程的绑核布局.
+ *
+ * NONE:
+ * 不绑核, 默认值.
+ *
+ * CORE:
+ * 每个IO线程绑定到一个独立的cpu上, 不关心它们落在哪个socket.
+ *
+ * SAME_SOCKET:
+ * 每个IO线程绑定到一个独立的cpu上, 并尽量集中在同一个socket; 开启了业务线程绑核
+ * (-Djupiter.executor.factory.affinity.thread=true)时, 业务线程会放在IO线程所在socket的其余cpu上,
+ * 避免IO线程与业务线程之间跨NUMA节点访问cache. 同一socket的cpu用完后才会退化到其他socket.
+ *
+ * 注意业务线程数通常多于cpu数, 超出的线程拿不到空闲cpu, 不会被绑定.
+ *
+ * jupiter
+ * org.jupiter.common.concurrent
+ */
+public enum AffinityLayout {
+    NONE,
+    CORE,
+    SAME_SOCKET;
+
+    /**
+     * 服务端IO线程发布的绑核基准, provider业务线程以它为参照选择cpu.
+     */
+    public static final String ACCEPTOR_ANCHOR = "jupiter.acceptor.worker";
+    /**
+     * 客户端IO线程发布的绑核基准, consumer业务线程以它为参照选择cpu.
+     */
+    public static final String CONNECTOR_ANCHOR = "jupiter.connector";
+
+    /**
+     * IO线程依次选择cpu的策略, 每个新线程以上一个线程绑定的cpu为参照.
+     */
+    public AffinityStrategy[] ioStrategies() {
+        switch (this) {
+            case CORE:
+                return new AffinityStrategy[] { AffinityStrategies.DIFFERENT_CORE, AffinityStrategies.ANY };
+            case SAME_SOCKET:
+                return new AffinityStrategy[] { AffinityStrategies.SAME_SOCKET, AffinityStrategies.ANY };
+            default:
+                throw new UnsupportedOperationException("No affinity for layout: " + this);
+        }
+    }
+
+    /**
+     * 业务线程选择cpu的策略, 以IO线程绑定的cpu为参照.
+     */
+    public static AffinityStrategy[] businessStrategies() {
+        return new AffinityStrategy[] { AffinityStrategies.SAME_SOCKET, AffinityStrategies.ANY };
+    }
+
+    public static AffinityLayout parse(String name) {
+        for (AffinityLayout layout : values()) {
+            if (layout.name().equalsIgnoreCase(name)) {
+                return layout;
+            }
+        }
+        return null;
+    }
+}
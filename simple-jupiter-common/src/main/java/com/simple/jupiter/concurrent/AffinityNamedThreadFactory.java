@@ -23,6 +23,8 @@ import net.openhft.affinity.AffinityLock;
 import net.openhft.affinity.AffinityStrategies;
 import net.openhft.affinity.AffinityStrategy;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -34,6 +36,10 @@ import static com.simple.jupiter.util.Requires.requireNotNull;
  *
  * If no strategies are provided AffinityStrategies.ANY is used.
  *
+ * 一个factory可以通过 {@link #publishAnchor(String)} 把自己发布为绑核基准, 另一个factory通过
+ * {@link #followAnchor(String)} 让它的第一个线程以基准factory最近绑定的cpu为参照选择cpu,
+ * 例如让业务线程和IO线程落在同一个socket上, 见 {@link AffinityLayout}.
+ *
  * Jupiter
  * org.jupiter.common.concurrent
  *
@@ -49,13 +55,17 @@ public class AffinityNamedThreadFactory implements ThreadFactory {
                 "Class[" + AffinityNamedThreadFactory.class.getName() + "] must rely on SL4J");
     }
 
+    // anchor key -> factory
+    private static final ConcurrentMap<String, AffinityNamedThreadFactory> anchors = new ConcurrentHashMap<>();
+
     private final AtomicInteger id = new AtomicInteger();
     private final String name;
     private final boolean daemon;
     private final int priority;
     private final ThreadGroup group;
     private final AffinityStrategy[] strategies;
-    private AffinityLock lastAffinityLock = null;
+    private volatile AffinityLock lastAffinityLock = null;
+    private volatile String anchor = null;
 
     public AffinityNamedThreadFactory(String name, AffinityStrategy... strategies) {
         this(name, false, Thread.NORM_PRIORITY, strategies);
@@ -119,6 +129,24 @@ public class AffinityNamedThreadFactory implements ThreadFactory {
         return t;
     }
 
+    /**
+     * 把当前factory发布为绑核基准.
+     */
+    public AffinityNamedThreadFactory publishAnchor(String key) {
+        anchors.put(requireNotNull(key, "key"), this);
+        return this;
+    }
+
+    /**
+     * 第一个线程以指定基准factory最近绑定的cpu为参照选择cpu, 基准不存在(或还没有绑定过cpu)时退化为任意cpu.
+     *
+     * 基准在创建线程时才查找, 所以发布基准可以晚于调用此方法.
+     */
+    public AffinityNamedThreadFactory followAnchor(String key) {
+        this.anchor = requireNotNull(key, "key");
+        return this;
+    }
+
     public ThreadGroup getThreadGroup() {
         return group;
     }
@@ -132,7 +160,14 @@ public class AffinityNamedThreadFactory implements ThreadFactory {
     }
 
     private synchronized AffinityLock acquireLockBasedOnLast() {
-        AffinityLock al = lastAffinityLock == null ? AffinityLock.acquireLock() : lastAffinityLock.acquireLock(strategies);
+        AffinityLock base = lastAffinityLock;
+        if (base == null && anchor != null) {
+            AffinityNamedThreadFactory f = anchors.get(anchor);
+            if (f != null && f != this) {
+                base = f.lastAffinityLock;
+            }
+        }
+        AffinityLock al = base == null ? AffinityLock.acquireLock() : base.acquireLock(strategies);
         if (al.cpuId() >= 0) {
             if (!al.isBound()) {
                 al.bind();
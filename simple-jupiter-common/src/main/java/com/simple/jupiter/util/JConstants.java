@@ -67,6 +67,24 @@ public final class JConstants {
     /** Whether use low copy strategy for serialization */
     public static final boolean CODEC_LOW_COPY =
             SystemPropertyUtil.getBoolean("jupiter.io.codec.low_copy", true);
+    /** Whether pack the requests/responses written between two flushes into one batch frame (low copy only) */
+    public static final boolean CODEC_BATCH =
+            SystemPropertyUtil.getBoolean("jupiter.io.codec.batch", false);
+    /** Whether decode with a cumulative (non-replaying) decoder, which waits for the whole frame before decoding */
+    public static final boolean CODEC_DECODER_CUMULATIVE =
+            SystemPropertyUtil.getBoolean("jupiter.io.codec.decoder.cumulative", false);
+    /** 消息体压缩类型(deflate/lz), 默认不压缩 */
+    public static final String CODEC_COMPRESSOR =
+            SystemPropertyUtil.get("jupiter.io.codec.compressor", "");
+    /** 消息体超过这个长度才会被压缩 */
+    public static final int CODEC_COMPRESS_THRESHOLD =
+            SystemPropertyUtil.getInt("jupiter.io.codec.compress.threshold", 16 * 1024);
+    /** 是否为每个provider单独保留一个连接(bulk lane)传输大消息, 避免大消息阻塞同一个连接上的小消息 */
+    public static final boolean BULK_LANE_ENABLED =
+            SystemPropertyUtil.getBoolean("jupiter.io.bulk.lane", false);
+    /** 序列化后(请求, 或者同一个方法最近的响应)超过这个长度的调用走bulk lane */
+    public static final int BULK_LANE_THRESHOLD =
+            SystemPropertyUtil.getInt("jupiter.io.bulk.lane.threshold", 1024 * 1024);
 
     /** Load balancer 默认预热时间 **/
     public static final int DEFAULT_WARM_UP =
@@ -81,6 +99,9 @@ public final class JConstants {
     /** Suggest that the count of connections **/
     public static final int SUGGESTED_CONNECTION_COUNT =
             SystemPropertyUtil.getInt("jupiter.rpc.suggest.connection.count", Math.min(AVAILABLE_PROCESSORS, 4));
+    /** 同一个JVM内的consumer与provider之间是否直接调用(不经过网络, 不做序列化) */
+    public static final boolean INJVM_ENABLED =
+            SystemPropertyUtil.getBoolean("jupiter.rpc.injvm", true);
 
     /** Metrics csv reporter */
     public static final boolean METRIC_CSV_REPORTER =
@@ -0,0 +1,69 @@
+package com.simple.jupiter.util;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import com.simple.jupiter.util.internal.logging.InternalLogger;
+import com.simple.jupiter.util.internal.logging.InternalLoggerFactory;
+
+/**
+ * 本机网络地址相关的工具方法.
+ *
+ * jupiter
+ * org.jupiter.common.util
+ */
+public final class NetUtil {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(NetUtil.class);
+
+    // 本机所有网卡上的地址(getHostAddress()格式), 只在第一次使用时加载
+    private static volatile Set<String> localAddresses;
+
+    /**
+     * 判断 host 是否是本机的地址.
+     */
+    public static boolean isLocalAddress(String host) {
+        if (Strings.isBlank(host)) {
+            return false;
+        }
+        return "localhost".equalsIgnoreCase(host) || localAddresses().contains(host);
+    }
+
+    private static Set<String> localAddresses() {
+        Set<String> addresses = localAddresses;
+        if (addresses == null) {
+            synchronized (NetUtil.class) {
+                addresses = localAddresses;
+                if (addresses == null) {
+                    localAddresses = addresses = loadLocalAddresses();
+                }
+            }
+        }
+        return addresses;
+    }
+
+    private static Set<String> loadLocalAddresses() {
+        Set<String> addresses = new HashSet<>();
+        try {
+            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            while (interfaces != null && interfaces.hasMoreElements()) {
+                Enumeration<InetAddress> inetAddresses = interfaces.nextElement().getInetAddresses();
+                while (inetAddresses.hasMoreElements()) {
+                    String address = inetAddresses.nextElement().getHostAddress();
+                    // 去掉IPv6的scope id, e.g. fe80::1%lo0
+                    int i = address.indexOf('%');
+                    addresses.add(i < 0 ? address : address.substring(0, i));
+                }
+            }
+        } catch (SocketException e) {
+            logger.warn("Failed to load local addresses: {}.", StackTraceUtil.stackTrace(e));
+        }
+        return Collections.unmodifiableSet(addresses);
+    }
+
+    private NetUtil() {}
+}
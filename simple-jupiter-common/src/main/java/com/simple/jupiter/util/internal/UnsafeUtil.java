@@ -371,16 +371,20 @@ public final class UnsafeUtil {
 
     /**
      * Gets the field with the given name within the class, or
-     * {@code null} if not found. If found, the field is made accessible.
+     * {@code null} if not found. If found, the field is made accessible (if possible).
      */
     private static Field field(Class<?> clazz, String fieldName, Class<?> expectedType) {
         Field field;
         try {
             field = clazz.getDeclaredField(fieldName);
-            field.setAccessible(true);
             if (!field.getType().equals(expectedType)) {
                 return null;
             }
+            try {
+                field.setAccessible(true);
+            } catch (Throwable ignored) {
+                // jdk9+ 上 java.base 没有 open 时会失败, 不影响 Unsafe#objectFieldOffset
+            }
         } catch (Throwable t) {
             // Failed to access the fields.
             field = null;
@@ -20,6 +20,10 @@ public class RegisterMeta {
     private volatile int weight;
     // 建议连接数, jupiter客户端会根据connCount的值去建立对应数量的连接, hashCode() 与 equals() 不把connCount计算在内
     private volatile int connCount;
+    // unix domain socket路径, 与provider同机部署的consumer会优先使用domain socket连接, hashCode() 与 equals() 不把domainPath计算在内
+    private volatile String domainPath;
+    // provider所在JVM的标识, 与provider在同一个JVM内的consumer直接调用, hashCode() 与 equals() 不把injvmId计算在内
+    private volatile String injvmId;
 
     public String getHost() {
         return address.getHost();
@@ -85,6 +89,22 @@ public class RegisterMeta {
         this.connCount = connCount;
     }
 
+    public String getDomainPath() {
+        return domainPath;
+    }
+
+    public void setDomainPath(String domainPath) {
+        this.domainPath = domainPath;
+    }
+
+    public String getInjvmId() {
+        return injvmId;
+    }
+
+    public void setInjvmId(String injvmId) {
+        this.injvmId = injvmId;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -110,6 +130,8 @@ public class RegisterMeta {
             ", serviceMeta=" + serviceMeta +
             ", weight=" + weight +
             ", connCount=" + connCount +
+            ", domainPath='" + domainPath + '\'' +
+            ", injvmId='" + injvmId + '\'' +
             '}';
     }
 
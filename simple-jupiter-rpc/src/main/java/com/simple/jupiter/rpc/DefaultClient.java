@@ -5,8 +5,12 @@ import com.simple.jupiter.rpc.consumer.processor.DefaultConsumerProcessor;
 import com.simple.jupiter.rpc.model.metadata.ServiceMetadata;
 import com.simple.jupiter.transport.*;
 import com.simple.jupiter.transport.channel.JChannelGroup;
+import com.simple.jupiter.transport.injvm.InJvmAcceptor;
+import com.simple.jupiter.transport.injvm.InJvmAddress;
+import com.simple.jupiter.transport.injvm.InJvmConnector;
 import com.simple.jupiter.util.*;
 
+import java.io.File;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ConcurrentMap;
@@ -19,10 +23,20 @@ import java.util.concurrent.locks.ReentrantLock;
 
 public class DefaultClient implements JClient{
 
+    // 没有显式设置domainConnector时, 是否在发现同机部署并且发布了domain socket的provider时自动创建
+    private static final boolean AUTO_DOMAIN_CONNECTOR =
+            SystemPropertyUtil.getBoolean("jupiter.rpc.consumer.domain_connector.auto", true);
+
     // 服务订阅(SPI)
     private final RegistryService registryService;
     private final String appName;
     private JConnector<JConnection> connector;
+    private volatile JConnector<JConnection> domainConnector;
+    // 自动创建的domainConnector由client负责关闭
+    private boolean domainConnectorOwned;
+    // connector不支持创建domainConnector(没有native transport), 不再重复尝试
+    private boolean domainConnectorUnsupported;
+    private JConnector<JConnection> injvmConnector;
 
     private final ConcurrentMap<RegisterMeta.Address, CopyOnWriteArrayList<OfflineListener>> offlineListeners =
             Maps.newConcurrentMap();
@@ -61,6 +75,28 @@ public class DefaultClient implements JClient{
             connector.withProcessor(new DefaultConsumerProcessor());
         }
         this.connector = connector;
+        if (JConstants.INJVM_ENABLED) {
+            injvmConnector = new InJvmConnector();
+            injvmConnector.withProcessor(connector.processor());
+        }
+        return this;
+    }
+
+    @Override
+    public JConnector<JConnection> domainConnector() {
+        return domainConnector;
+    }
+
+    @Override
+    public JClient withDomainConnector(JConnector<JConnection> domainConnector) {
+        if (domainConnector.processor() == null) {
+            domainConnector.withProcessor(connector != null && connector.processor() != null
+                    ? connector.processor() : new DefaultConsumerProcessor());
+        }
+        synchronized (this) {
+            this.domainConnector = domainConnector;
+            domainConnectorOwned = false;
+        }
         return this;
     }
 
@@ -97,10 +133,11 @@ public class DefaultClient implements JClient{
 
         JConnector.ConnectionWatcher manager = new JConnector.ConnectionWatcher() {
 
-            private final JConnectionManager connectionManager = connector.connectionManager();
             private final ReentrantLock lock = new ReentrantLock();
             private final Condition notifyCondition = lock.newCondition();
             private final AtomicBoolean signalNeeded = new AtomicBoolean(false);
+            // provider的socket地址 -> 实际连接的本地地址(injvm/domain socket)
+            private final ConcurrentMap<UnresolvedAddress, UnresolvedAddress> localAddresses = Maps.newConcurrentMap();
 
 
             @Override
@@ -108,17 +145,38 @@ public class DefaultClient implements JClient{
                 subscribe(directory, new NotifyListener() {
                     @Override
                     public void notify(RegisterMeta registerMeta, NotifyEvent event) {
-                        UnresolvedAddress address = new UnresolvedSocketAddress(registerMeta.getHost(), registerMeta.getPort());
-                        final JChannelGroup group = connector.group(address);
+                        UnresolvedAddress socketAddress = new UnresolvedSocketAddress(registerMeta.getHost(), registerMeta.getPort());
+                        UnresolvedAddress localAddress;
+                        if (event == NotifyEvent.CHILD_ADDED) {
+                            localAddress = toLocalAddress(registerMeta);
+                            if (localAddress != null) {
+                                localAddresses.put(socketAddress, localAddress);
+                            } else {
+                                localAddresses.remove(socketAddress);
+                            }
+                        } else {
+                            localAddress = localAddresses.remove(socketAddress);
+                        }
+
+                        // 同进程的provider直接调用, 同机部署的provider走unix domain socket,
+                        // 但是channel group依然注册到connector上, dispatcher无需感知
+                        final JConnector<JConnection> _connector = localAddress == null ? connector
+                                : localAddress instanceof InJvmAddress ? injvmConnector : domainConnector;
+                        final UnresolvedAddress address = localAddress == null ? socketAddress : localAddress;
+                        final JConnectionManager connectionManager = _connector.connectionManager();
+                        final JChannelGroup group = _connector.group(address);
                         if (event == NotifyEvent.CHILD_ADDED) {
                             if (group.isAvailable()) {
                                 onSucceed(group, signalNeeded.getAndSet(false));
                             } else {
                                 if (group.isConnecting()) {
                                     group.onAvailable(() -> onSucceed(group, signalNeeded.getAndSet(false)));
+                                } else if (connectionManager.reconnectNow(address)) {
+                                    // 之前的连接还在自动重连(退避等待中), 服务端已经重新注册, 立即重连而不是再建立一组新连接
+                                    group.onAvailable(() -> onSucceed(group, signalNeeded.getAndSet(false)));
                                 } else {
                                     group.setConnecting(true);
-                                    JConnection[] connections = connectTo(address, group, registerMeta, true);
+                                    JConnection[] connections = connectTo(_connector, address, socketAddress, group, registerMeta, true);
                                     final AtomicInteger countdown = new AtomicInteger(connections.length);
                                     for (JConnection c : connections) {
                                         c.operationComplete(isSuccess -> {
@@ -142,18 +200,31 @@ public class DefaultClient implements JClient{
                         }
                     }
 
-                    private JConnection[] connectTo(UnresolvedAddress address, JChannelGroup group, RegisterMeta registerMeta, boolean async) {
+                    private JConnection[] connectTo(JConnector<JConnection> _connector, UnresolvedAddress address,
+                                                    UnresolvedAddress socketAddress, JChannelGroup group,
+                                                    RegisterMeta registerMeta, boolean async) {
+                        final JConnectionManager connectionManager = _connector.connectionManager();
                         int connCount = registerMeta.getConnCount();
                         connCount = Math.max(connCount, 1);
+                        // 开启了自适应连接数时, 初始连接数限制在 [min, max] 之内, 之后由connector根据负载调整
+                        Integer maxConnections = _connector.config().getOption(JOption.MAX_CONNECTIONS);
+                        if (maxConnections != null && maxConnections > 0) {
+                            Integer minConnections = _connector.config().getOption(JOption.MIN_CONNECTIONS);
+                            connCount = Math.min(Math.max(connCount, minConnections == null ? 1 : minConnections), maxConnections);
+                        }
 
-                        JConnection[] connections = new JConnection[connCount];
+                        // group可能会多保留连接(比如bulk lane), 以group的capacity为准
                         group.setCapacity(connCount);
+                        connCount = Math.max(group.getCapacity(), connCount);
+
+                        JConnection[] connections = new JConnection[connCount];
                         for (int i = 0; i < connCount; i++) {
-                            JConnection connection = connector.connect(address, async);
+                            JConnection connection = _connector.connect(address, async);
                             connections[i] = connection;
                             connectionManager.manage(connection);
                         }
-                        offlineListening(address, () -> {
+                        // 下线通知始终以provider的socket地址为准
+                        offlineListening(socketAddress, () -> {
                             //取消这个地址下的所有的自动连接
                             connectionManager.cancelAutoReconnect(address);
                             if (!group.isAvailable()) {
@@ -179,6 +250,32 @@ public class DefaultClient implements JClient{
                 });
             }
 
+            // provider与当前consumer在同一个JVM内时返回injvm地址;
+            // 同机部署并且发布了domain socket路径时返回domain socket地址, 否则返回null
+            private UnresolvedAddress toLocalAddress(RegisterMeta registerMeta) {
+                if (!NetUtil.isLocalAddress(registerMeta.getHost())) {
+                    return null;
+                }
+                // 端口不能区分进程(SO_REUSEPORT), 以provider发布的JVM标识为准
+                if (injvmConnector != null
+                        && InJvmAcceptor.instanceId().equals(registerMeta.getInjvmId())
+                        && InJvmAcceptor.lookup(registerMeta.getPort()) != null) {
+                    return new InJvmAddress(registerMeta.getPort());
+                }
+                String domainPath = registerMeta.getDomainPath();
+                if (Strings.isBlank(domainPath)) {
+                    return null;
+                }
+                // 同一个ip也可能是不同的容器, 以socket文件是否存在为准
+                if (!new File(domainPath).exists()) {
+                    return null;
+                }
+                if (localDomainConnector() == null) {
+                    return null;
+                }
+                return new UnresolvedDomainAddress(domainPath);
+            }
+
             @Override
             public boolean waitForAvailable(long timeoutMillis) {
                 //判断该服务下面是否有提供者(server)可用(客户端已经跟对应的提供者进行了连接)
@@ -250,7 +347,13 @@ public class DefaultClient implements JClient{
 
     @Override
     public void shutdownGracefully() {
-
+        JConnector<JConnection> _connector;
+        synchronized (this) {
+            _connector = domainConnectorOwned ? domainConnector : null;
+        }
+        if (_connector != null) {
+            _connector.shutdownGracefully();
+        }
     }
 
     @Override
@@ -258,6 +361,26 @@ public class DefaultClient implements JClient{
 
     }
 
+    // 显式设置的domainConnector, 或者第一次需要时由connector创建, 不支持domain socket时返回null
+    private JConnector<JConnection> localDomainConnector() {
+        JConnector<JConnection> _connector = domainConnector;
+        if (_connector != null || !AUTO_DOMAIN_CONNECTOR) {
+            return _connector;
+        }
+        synchronized (this) {
+            if (domainConnector == null && !domainConnectorUnsupported) {
+                _connector = connector.newDomainConnector();
+                if (_connector == null) {
+                    domainConnectorUnsupported = true;
+                } else {
+                    domainConnector = _connector;
+                    domainConnectorOwned = true;
+                }
+            }
+            return domainConnector;
+        }
+    }
+
     private static RegisterMeta.ServiceMeta toServiceMeta(Directory directory) {
         RegisterMeta.ServiceMeta serviceMeta = new RegisterMeta.ServiceMeta();
         serviceMeta.setGroup(Requires.requireNotNull(directory.getGroup(), "group"));
@@ -10,6 +10,8 @@ import com.simple.jupiter.rpc.provider.ProviderInterceptor;
 import com.simple.jupiter.rpc.provider.processor.DefaultProviderProcessor;
 import com.simple.jupiter.transport.Directory;
 import com.simple.jupiter.transport.JAcceptor;
+import com.simple.jupiter.transport.Transporter;
+import com.simple.jupiter.transport.injvm.InJvmAcceptor;
 import com.simple.jupiter.util.*;
 import com.simple.jupiter.util.internal.logging.InternalLogger;
 import com.simple.jupiter.util.internal.logging.InternalLoggerFactory;
@@ -35,6 +37,12 @@ public class DefaultServer implements JServer {
     private FlowController<JRequest> globalFlowController;
     // IO acceptor
     private JAcceptor acceptor;
+    // unix domain socket acceptor
+    private JAcceptor domainAcceptor;
+    // 同一个JVM内的consumer直接调用, 与acceptor绑定同一个端口
+    private JAcceptor injvmAcceptor;
+    // acceptor 与 domainAcceptor 共用
+    private DefaultProviderProcessor processor;
 
     public DefaultServer() {
         this(RegistryService.RegistryType.DEFAULT);
@@ -54,7 +62,29 @@ public class DefaultServer implements JServer {
     @Override
     public JServer withAcceptor(JAcceptor acceptor) {
         if (acceptor.processor() == null) {
-            acceptor.withProcessor(new DefaultProviderProcessor() {
+            acceptor.withProcessor(processor());
+        }
+        this.acceptor = acceptor;
+        return this;
+    }
+
+    @Override
+    public JAcceptor domainAcceptor() {
+        return domainAcceptor;
+    }
+
+    @Override
+    public JServer withDomainAcceptor(JAcceptor domainAcceptor) {
+        if (domainAcceptor.processor() == null) {
+            domainAcceptor.withProcessor(processor());
+        }
+        this.domainAcceptor = domainAcceptor;
+        return this;
+    }
+
+    private synchronized DefaultProviderProcessor processor() {
+        if (processor == null) {
+            processor = new DefaultProviderProcessor() {
 
                 @Override
                 public ServiceWrapper lookupService(Directory directory) {
@@ -69,10 +99,9 @@ public class DefaultServer implements JServer {
                     }
                     return globalFlowController.flowControl(request);
                 }
-            });
+            };
         }
-        this.acceptor = acceptor;
-        return this;
+        return processor;
     }
 
     @Override
@@ -132,6 +161,13 @@ public class DefaultServer implements JServer {
         meta.setVersion(metadata.getVersion());
         meta.setWeight(serviceWrapper.getWeight());
         meta.setConnCount(JConstants.SUGGESTED_CONNECTION_COUNT);
+        if (domainAcceptor != null) {
+            // DomainSocketAddress#toString() 返回的就是socket路径
+            meta.setDomainPath(domainAcceptor.localAddress().toString());
+        }
+        if (isInJvmEnabled()) {
+            meta.setInjvmId(InJvmAcceptor.instanceId());
+        }
 
         registryService.register(meta);
     }
@@ -194,21 +230,39 @@ public class DefaultServer implements JServer {
 
     @Override
     public void start() throws InterruptedException {
-        acceptor.start();
-
+        start(true);
     }
 
     @Override
     public void start(boolean sync) throws InterruptedException {
+        if (domainAcceptor != null) {
+            domainAcceptor.start(false);
+        }
+        if (isInJvmEnabled()) {
+            injvmAcceptor = new InJvmAcceptor(acceptor.boundPort());
+            injvmAcceptor.withProcessor(acceptor.processor());
+            injvmAcceptor.start(false);
+        }
         acceptor.start(sync);
     }
 
     @Override
     public void shutdownGracefully() {
         registryService.shutdownGracefully();
+        if (domainAcceptor != null) {
+            domainAcceptor.shutdownGracefully();
+        }
+        if (injvmAcceptor != null) {
+            injvmAcceptor.shutdownGracefully();
+        }
         acceptor.shutdownGracefully();
     }
 
+    // tcp provider同时在JVM内部发布一个 InJvmAcceptor, 同一个JVM内的consumer直接调用
+    private boolean isInJvmEnabled() {
+        return JConstants.INJVM_ENABLED && acceptor.protocol() == Transporter.Protocol.TCP;
+    }
+
     ServiceWrapper registerService(
             String group,
             String providerName,
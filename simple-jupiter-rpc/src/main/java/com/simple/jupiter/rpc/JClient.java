@@ -50,6 +50,20 @@ public interface JClient extends Registry {
      */
     JClient withConnector(JConnector<JConnection> connector);
 
+    /**
+     * 网络层unix domain socket connector, 可以为null.
+     *
+     * 没有显式设置时, 第一次发现同机部署并且发布了domain socket路径的provider时由 {@link #connector()} 创建
+     * (需要epoll/kqueue native transport), -Djupiter.rpc.consumer.domain_connector.auto=false 可以关闭.
+     */
+    JConnector<JConnection> domainConnector();
+
+    /**
+     * 设置网络层unix domain socket connector, 与provider同机部署时优先通过domain socket连接, 不再走loopback TCP.
+     * 一般不需要设置, 见 {@link #domainConnector()}; 显式设置的connector由调用方负责关闭.
+     */
+    JClient withDomainConnector(JConnector<JConnection> domainConnector);
+
     /**
      * 注册服务实例
      */
@@ -45,6 +45,10 @@ public class JRequest {
         payload.outputBuf(serializerCode, outputBuf);
     }
 
+    public void body(byte serializerCode, Object body) {
+        payload.body(serializerCode, body);
+    }
+
     public MessageWrapper message() {
         return message;
     }
@@ -34,6 +34,7 @@ public class JResponse {
 
     private final JResponsePayload payload;     // 响应bytes/stream
     private ResultWrapper result;               // 响应对象
+    private int size;                           // 反序列化之前的响应大小
 
     public JResponse(long id) {
         payload = new JResponsePayload(id);
@@ -75,6 +76,14 @@ public class JResponse {
         this.result = result;
     }
 
+    public int size() {
+        return size;
+    }
+
+    public void size(int size) {
+        this.size = size;
+    }
+
     @Override
     public String toString() {
         return "JResponse{" +
@@ -108,6 +108,19 @@ public interface JServer extends Registry {
      */
     JServer withAcceptor(JAcceptor acceptor);
 
+    /**
+     * 网络层unix domain socket acceptor, 可以为null.
+     */
+    JAcceptor domainAcceptor();
+
+    /**
+     * 设置网络层unix domain socket acceptor, 发布服务时会把socket路径一起注册,
+     * 同机部署的consumer会优先通过domain socket连接(consumer端不需要额外设置, 见 {@link JClient#domainConnector()}).
+     *
+     * 会在本机创建socket文件, 所以provider端需要显式开启, 不设置时只监听TCP端口.
+     */
+    JServer withDomainAcceptor(JAcceptor domainAcceptor);
+
     /**
      * 注册服务实例
      */
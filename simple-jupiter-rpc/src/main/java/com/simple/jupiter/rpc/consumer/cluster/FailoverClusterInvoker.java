@@ -92,10 +92,16 @@ public class FailoverClusterInvoker implements ClusterInvoker {
                 if (throwable == null) {
                     failOverFuture.complete(result);
                 } else {
+                    JChannel channel = null;
+                    if (future instanceof DefaultInvokeFuture) {
+                        DefaultInvokeFuture<T> f = (DefaultInvokeFuture<T>) future;
+                        channel = f.channel();
+                        // 离开这个provider, 重试之前通知它取消(可能还在排队或执行), 超时的请求已经发送过的不会重复发送
+                        f.cancelOnProvider();
+                    }
+
                     if (logger.isWarnEnabled()) {
                         MessageWrapper message = request.message();
-                        JChannel channel =
-                                future instanceof DefaultInvokeFuture ? ((DefaultInvokeFuture) future).channel() : null;
 
                         logger.warn("[{}]: [Fail-over] retry, [{}] attempts left, [method: {}], [metadata: {}], {}.",
                                 channel,
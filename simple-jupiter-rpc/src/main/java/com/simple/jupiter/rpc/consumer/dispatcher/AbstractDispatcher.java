@@ -1,8 +1,11 @@
 package com.simple.jupiter.rpc.consumer.dispatcher;
 
+import java.util.ArrayList;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.IntConsumer;
 import com.simple.jupiter.rpc.DispatchType;
 import com.simple.jupiter.rpc.JClient;
 import com.simple.jupiter.rpc.JRequest;
@@ -11,6 +14,7 @@ import com.simple.jupiter.rpc.consumer.ConsumerInterceptor;
 import com.simple.jupiter.rpc.consumer.future.DefaultInvokeFuture;
 import com.simple.jupiter.rpc.exception.JupiterRemoteException;
 import com.simple.jupiter.rpc.load.balance.LoadBalancer;
+import com.simple.jupiter.rpc.model.metadata.MessageCodec;
 import com.simple.jupiter.rpc.model.metadata.MessageWrapper;
 import com.simple.jupiter.rpc.model.metadata.MethodSpecialConfig;
 import com.simple.jupiter.rpc.model.metadata.ResultWrapper;
@@ -18,6 +22,9 @@ import com.simple.jupiter.rpc.model.metadata.ServiceMetadata;
 import com.simple.jupiter.serialization.Serializer;
 import com.simple.jupiter.serialization.SerializerFactory;
 import com.simple.jupiter.serialization.SerializerType;
+import com.simple.jupiter.serialization.io.OutputBuf;
+import com.simple.jupiter.transport.JFileRegion;
+import com.simple.jupiter.transport.JProtocolHeader;
 import com.simple.jupiter.transport.Status;
 import com.simple.jupiter.transport.channel.CopyOnWriteGroupList;
 import com.simple.jupiter.transport.channel.JChannel;
@@ -46,6 +53,10 @@ public abstract class AbstractDispatcher implements Dispatcher {
     private long timeoutMillis = JConstants.DEFAULT_TIMEOUT;    // 调用超时时间设置
     // 针对指定方法单独设置的超时时间, 方法名为key, 方法参数类型不做区别对待
     private Map<String, Long> methodSpecialTimeoutMapping = Maps.newHashMap();
+    // 方法名为key, 记录最近一次响应是否超过了bulk lane的阈值
+    private final ConcurrentMap<String, BulkHint> bulkHints = Maps.newConcurrentMap();
+    // 方法名为key, 连接上方法字典使用的方法id, 见 MethodDictionary
+    private final ConcurrentMap<String, Integer> methodIds = Maps.newConcurrentMap();
 
     public AbstractDispatcher(JClient client, SerializerType serializerType) {
         this(client, null, serializerType);
@@ -108,6 +119,109 @@ public abstract class AbstractDispatcher implements Dispatcher {
      * @return
      */
     protected JChannel select(ServiceMetadata metadata) {
+        return selectGroup(metadata).next();
+    }
+
+    /**
+     * group的bulk lane, 没有或者没有开启时返回null; 需要在序列化之前取出, 见 {@link #selectLane}.
+     */
+    protected static JChannel bulkLane(JChannelGroup group) {
+        return JConstants.BULK_LANE_ENABLED ? group.bulkLane() : null;
+    }
+
+    /**
+     * 大消息换到group的bulk lane上发送: 请求本身超过阈值, 或者同一个方法最近一次的响应超过阈值
+     * (响应总是从请求所在的连接返回).
+     *
+     * 没有可用的bulk lane时仍然使用原来的channel.
+     */
+    protected JChannel selectLane(JChannel bulk, JChannel channel, JRequest request) {
+        if (bulk == null) {
+            return channel;
+        }
+        JRequestPayload payload = request.payload();
+        if (payload.size() < JConstants.BULK_LANE_THRESHOLD && payload.fileRegions() == null
+                && !bulkHint(request.message().getMethodName()).bulk) {
+            return channel;
+        }
+        return bulk;
+    }
+
+    /**
+     * 连接上方法字典使用的方法id, 没有开启信封格式或者id已经用完时返回-1.
+     */
+    protected int methodId(String methodName) {
+        if (!MessageCodec.ENVELOPE) {
+            return -1;
+        }
+        Integer methodId = methodIds.get(methodName);
+        if (methodId == null) {
+            methodId = methodIds.computeIfAbsent(methodName, k -> MethodDictionary.nextId());
+        }
+        return methodId;
+    }
+
+    /**
+     * 方法id在所有可能发送请求的连接上都已经登记过时, 请求中只需要带上方法id.
+     */
+    protected static boolean isBound(int methodId, JChannel channel, JChannel bulk) {
+        return MethodDictionary.isBound(channel, methodId) && (bulk == null || MethodDictionary.isBound(bulk, methodId));
+    }
+
+    /**
+     * 参数中的 {@link JFileRegion} 编上序号后挂到请求上, 文件内容不经过序列化, 由transport层单独发送;
+     * 需要在序列化之前调用.
+     */
+    protected static void attachFileRegions(JRequest request) {
+        Object[] args = request.message().getArgs();
+        if (args == null) {
+            return;
+        }
+        List<JFileRegion> regions = null;
+        for (Object arg : args) {
+            if (arg instanceof JFileRegion) {
+                if (regions == null) {
+                    regions = new ArrayList<>(2);
+                }
+                JFileRegion region = (JFileRegion) arg;
+                region.index(regions.size());
+                regions.add(region);
+            }
+        }
+        if (regions != null) {
+            request.payload().fileRegions(regions);
+        }
+    }
+
+    /**
+     * 请求序列化到 outputBuf, 默认使用二进制信封格式, 见 {@link MessageCodec}.
+     *
+     * @param methodId  连接上方法字典使用的方法id, 小于0时发送完整的元数据
+     * @param bound     方法id是否已经在连接上登记过
+     */
+    protected static OutputBuf writeMessage(
+            Serializer serializer, JRequest request, OutputBuf outputBuf, int methodId, boolean bound) {
+        MessageWrapper message = request.message();
+        if (MessageCodec.ENVELOPE) {
+            request.payload().status(JProtocolHeader.ENVELOPE);
+            return MessageCodec.write(serializer, outputBuf, message, methodId, bound);
+        }
+        return serializer.writeObject(outputBuf, message);
+    }
+
+    protected static byte[] writeMessage(Serializer serializer, JRequest request, int methodId, boolean bound) {
+        MessageWrapper message = request.message();
+        if (MessageCodec.ENVELOPE) {
+            request.payload().status(JProtocolHeader.ENVELOPE);
+            return MessageCodec.write(serializer, message, methodId, bound);
+        }
+        return serializer.writeObject(message);
+    }
+
+    /**
+     * 根据元数据和负载均衡策略选择一个服务提供端(group), 由调用方通过 {@link JChannelGroup#next()} 选择channel.
+     */
+    protected JChannelGroup selectGroup(ServiceMetadata metadata) {
         //获取注册了对应的元数据信息的服务器提供端组
         CopyOnWriteGroupList groups = client
             .connector()
@@ -116,7 +230,13 @@ public abstract class AbstractDispatcher implements Dispatcher {
         JChannelGroup group = loadBalancer.select(groups, metadata);
         if (group != null) {
             if (group.isAvailable()) {
-                return group.next();
+                if (group.isWritable()) {
+                    return group;
+                }
+
+                // 选中的服务提供者积压严重(所有channel都超过了高水位线), 优先换一个可写的
+                JChannelGroup writable = selectWritable(groups);
+                return writable == null ? group : writable;
             }
 
             // to the deadline (no available channel), the time exceeded the predetermined limit
@@ -136,16 +256,31 @@ public abstract class AbstractDispatcher implements Dispatcher {
                 throw new IllegalStateException("No connections");
             }
         }
+        JChannelGroup writable = selectWritable(groups);
+        if (writable != null) {
+            return writable;
+        }
         JChannelGroup[] snapshot = groups.getSnapshot();
         for (JChannelGroup g : snapshot) {
             if (g.isAvailable()) {
-                return g.next();
+                // 都不可写, 由 next() 决定等待还是失败
+                return g;
             }
         }
 
         throw new IllegalStateException("No channel");
     }
 
+    private static JChannelGroup selectWritable(CopyOnWriteGroupList groups) {
+        JChannelGroup[] snapshot = groups.getSnapshot();
+        for (JChannelGroup g : snapshot) {
+            if (g.isAvailable() && g.isWritable()) {
+                return g;
+            }
+        }
+        return null;
+    }
+
     protected JChannelGroup[] groups(ServiceMetadata metadata) {
         return client.connector()
             .directory(metadata)
@@ -154,12 +289,26 @@ public abstract class AbstractDispatcher implements Dispatcher {
 
     protected <T> DefaultInvokeFuture<T> write(
         final JChannel channel, final JRequest request, final Class<T> returnType, final DispatchType dispatchType) {
+        return write(channel, request, returnType, dispatchType, -1);
+    }
+
+    /**
+     * @param bindingMethodId 请求中带着方法字典的绑定(BIND)时为方法id, 写出成功后登记到连接上; 否则为-1
+     */
+    protected <T> DefaultInvokeFuture<T> write(
+        final JChannel channel, final JRequest request, final Class<T> returnType, final DispatchType dispatchType,
+        final int bindingMethodId) {
         final MessageWrapper message = request.message();
         final long timeoutMillis = getMethodSpecialTimeoutMillis(message.getMethodName());
         final ConsumerInterceptor[] interceptors = interceptors();
         final DefaultInvokeFuture<T> future = DefaultInvokeFuture
             .with(request.invokeId(), channel, timeoutMillis, returnType, dispatchType)
             .interceptors(interceptors);
+        if (JConstants.BULK_LANE_ENABLED) {
+            future.responseSizeListener(bulkHint(message.getMethodName()));
+        }
+        // future 完成时(无论成功, 失败还是超时)减掉
+        channel.incrementInFlightRequests();
 
         if (interceptors != null) {
             for (int i = 0; i < interceptors.length; i++) {
@@ -175,6 +324,11 @@ public abstract class AbstractDispatcher implements Dispatcher {
                 // 标记已发送
                 future.markSent();
 
+                if (bindingMethodId >= 0) {
+                    // BIND已经先于之后的请求写出, 这个连接上可以只发送方法id了
+                    MethodDictionary.bound(channel, bindingMethodId);
+                }
+
                 if (dispatchType == DispatchType.ROUND) {
                     payload.clear();
                 }
@@ -204,4 +358,28 @@ public abstract class AbstractDispatcher implements Dispatcher {
         return future;
     }
 
+    private BulkHint bulkHint(String methodName) {
+        BulkHint hint = bulkHints.get(methodName);
+        if (hint == null) {
+            BulkHint newHint = new BulkHint();
+            hint = bulkHints.putIfAbsent(methodName, newHint);
+            if (hint == null) {
+                hint = newHint;
+            }
+        }
+        return hint;
+    }
+
+    static final class BulkHint implements IntConsumer {
+
+        volatile boolean bulk;
+
+        @Override
+        public void accept(int responseSize) {
+            boolean b = responseSize >= JConstants.BULK_LANE_THRESHOLD;
+            if (bulk != b) {
+                bulk = b;
+            }
+        }
+    }
 }
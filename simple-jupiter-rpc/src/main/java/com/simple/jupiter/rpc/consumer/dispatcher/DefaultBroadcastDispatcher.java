@@ -13,6 +13,7 @@ import com.simple.jupiter.serialization.io.OutputBuf;
 import com.simple.jupiter.transport.CodecConfig;
 import com.simple.jupiter.transport.channel.JChannel;
 import com.simple.jupiter.transport.channel.JChannelGroup;
+import com.simple.jupiter.transport.payload.JRequestPayload;
 
 public class DefaultBroadcastDispatcher extends AbstractDispatcher{
     public DefaultBroadcastDispatcher(JClient client,
@@ -40,10 +41,21 @@ public class DefaultBroadcastDispatcher extends AbstractDispatcher{
         }
 
         byte s_code = _serializer.code();
+        attachFileRegions(request);
         // 在业务线程中序列化, 减轻IO线程负担
         boolean isLowCopy = CodecConfig.isCodecLowCopy();
-        if (!isLowCopy) {
-            byte[] bytes = _serializer.writeObject(message);
+        boolean needsBytes = false;
+        for (JChannel channel : channels) {
+            if (channel.acceptsBody()) {
+                // 同一个JVM内直接传递对象, 不需要序列化
+                request.body(s_code, message);
+            } else {
+                needsBytes = !isLowCopy;
+            }
+        }
+        if (needsBytes) {
+            // 广播的所有连接共用一份消息体, 不使用方法字典
+            byte[] bytes = writeMessage(_serializer, request, -1, false);
             request.bytes(s_code, bytes);
         }
 
@@ -51,12 +63,17 @@ public class DefaultBroadcastDispatcher extends AbstractDispatcher{
         //像每个服务提供段发送消息
         for (int i = 0; i < channels.length; i++) {
             JChannel channel = channels[i];
-            if (isLowCopy) {
-                OutputBuf outputBuf =
-                    _serializer.writeObject(channel.allocOutputBuf(), message);
-                request.outputBuf(s_code, outputBuf);
+            JRequest channelRequest = request;
+            if (isLowCopy && !channel.acceptsBody()) {
+                // 每个连接有各自的outputBuf, 编码是在各自的IO线程中异步进行的, 不能共用同一个payload
+                channelRequest = new JRequest(new JRequestPayload(request.invokeId()));
+                channelRequest.message(message);
+                channelRequest.payload().fileRegions(request.payload().fileRegions());
+                OutputBuf outputBuf = writeMessage(
+                    _serializer, channelRequest, channel.allocOutputBuf(message.getMetadata(), message.getMethodName()), -1, false);
+                channelRequest.outputBuf(s_code, outputBuf);
             }
-            futures[i] = write(channel, request, returnType, DispatchType.BROADCAST);
+            futures[i] = write(channel, channelRequest, returnType, DispatchType.BROADCAST);
         }
 
         return DefaultInvokeFutureGroup.with(futures);
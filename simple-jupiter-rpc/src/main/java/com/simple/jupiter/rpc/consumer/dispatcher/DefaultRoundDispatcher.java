@@ -11,6 +11,7 @@ import com.simple.jupiter.serialization.SerializerType;
 import com.simple.jupiter.serialization.io.OutputBuf;
 import com.simple.jupiter.transport.CodecConfig;
 import com.simple.jupiter.transport.channel.JChannel;
+import com.simple.jupiter.transport.channel.JChannelGroup;
 
 /**
  * 单播发送消息，根据提供的负载均衡策略，选择一个连接发送消息
@@ -29,20 +30,36 @@ public class DefaultRoundDispatcher extends AbstractDispatcher {
         final MessageWrapper message = request.message();
 
         // 通过软负载均衡选择一个channel
-        JChannel channel = select(message.getMetadata());
+        JChannelGroup group = selectGroup(message.getMetadata());
+        JChannel channel = group.next();
+        // 请求最终可能换到bulk lane上发送, 方法字典需要同时考虑两个连接
+        JChannel bulk = bulkLane(group);
         byte s_code = _serializer.code();
+        attachFileRegions(request);
 
+        int methodId = -1;
+        boolean bound = false;
         // 在业务线程中序列化, 减轻IO线程负担
-        if (CodecConfig.isCodecLowCopy()) {
-            OutputBuf outputBuf =
-                _serializer.writeObject(channel.allocOutputBuf(), message);
-            request.outputBuf(s_code, outputBuf);
+        if (channel.acceptsBody()) {
+            // 同一个JVM内直接传递对象, 不需要序列化
+            request.body(s_code, message);
         } else {
-            byte[] bytes = _serializer.writeObject(message);
-            request.bytes(s_code, bytes);
+            methodId = methodId(message.getMethodName());
+            bound = isBound(methodId, channel, bulk);
+            if (CodecConfig.isCodecLowCopy()) {
+                OutputBuf outputBuf = writeMessage(
+                    _serializer, request, channel.allocOutputBuf(message.getMetadata(), message.getMethodName()), methodId, bound);
+                request.outputBuf(s_code, outputBuf);
+            } else {
+                byte[] bytes = writeMessage(_serializer, request, methodId, bound);
+                request.bytes(s_code, bytes);
+            }
         }
 
-        return write(channel, request, returnType, DispatchType.ROUND);
+        // 大消息走bulk lane, 不阻塞同一个连接上的小消息
+        channel = selectLane(bulk, channel, request);
+
+        return write(channel, request, returnType, DispatchType.ROUND, bound ? -1 : methodId);
 
     }
 }
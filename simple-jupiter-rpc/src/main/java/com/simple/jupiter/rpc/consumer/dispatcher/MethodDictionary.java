@@ -0,0 +1,81 @@
+package com.simple.jupiter.rpc.consumer.dispatcher;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.simple.jupiter.rpc.model.metadata.MessageCodec;
+import com.simple.jupiter.transport.channel.JChannel;
+
+/**
+ * consumer端一个连接上的方法字典: 记录哪些方法id已经在这个连接上登记过(BIND已经写出), 见 {@link MessageCodec}.
+ *
+ * 方法id在进程内全局分配, 同一个 (服务, 方法) 在所有连接上的id相同, 换连接(bulk lane)时不需要重新分配.
+ *
+ * jupiter
+ * org.jupiter.rpc.consumer.dispatcher
+ */
+final class MethodDictionary {
+
+    private static final AtomicInteger idGenerator = new AtomicInteger();
+
+    // 已登记的方法id, 按位记录, 只增不减
+    private volatile long[] bound = new long[1];
+
+    /**
+     * 分配一个新的方法id, 超过 {@link MessageCodec#MAX_METHOD_ID} 时返回-1(不再使用方法字典).
+     */
+    static int nextId() {
+        if (idGenerator.get() > MessageCodec.MAX_METHOD_ID) {
+            return -1;
+        }
+        int id = idGenerator.getAndIncrement();
+        return id > MessageCodec.MAX_METHOD_ID ? -1 : id;
+    }
+
+    static boolean isBound(JChannel channel, int methodId) {
+        if (methodId < 0) {
+            return false;
+        }
+        MethodDictionary dictionary = dictionary(channel);
+        return dictionary != null && dictionary.isBound(methodId);
+    }
+
+    /**
+     * 带着BIND的请求已经写出, 同一个连接上之后的请求只需要发送方法id.
+     */
+    static void bound(JChannel channel, int methodId) {
+        MethodDictionary dictionary = dictionary(channel);
+        if (dictionary != null && !dictionary.isBound(methodId)) {
+            dictionary.bound(methodId);
+        }
+    }
+
+    private boolean isBound(int methodId) {
+        long[] _bound = bound;
+        int index = methodId >>> 6;
+        return index < _bound.length && (_bound[index] & (1L << methodId)) != 0;
+    }
+
+    private synchronized void bound(int methodId) {
+        long[] _bound = bound;
+        int index = methodId >>> 6;
+        if (index >= _bound.length) {
+            _bound = Arrays.copyOf(_bound, index + 1);
+        } else {
+            _bound = _bound.clone();
+        }
+        _bound[index] |= 1L << methodId;
+        bound = _bound; // copy-on-write, 读的时候不加锁
+    }
+
+    private static MethodDictionary dictionary(JChannel channel) {
+        Object attachment = channel.attachment();
+        if (attachment == null) {
+            MethodDictionary newDictionary = new MethodDictionary();
+            attachment = channel.attachIfAbsent(newDictionary);
+            if (attachment == null) {
+                return newDictionary;
+            }
+        }
+        return attachment instanceof MethodDictionary ? (MethodDictionary) attachment : null;
+    }
+}
@@ -5,6 +5,8 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.IntConsumer;
 import java.util.function.Supplier;
 import com.simple.jupiter.concurrent.NamedThreadFactory;
 import com.simple.jupiter.rpc.DispatchType;
@@ -17,6 +19,7 @@ import com.simple.jupiter.rpc.exception.JupiterTimeoutException;
 import com.simple.jupiter.rpc.model.metadata.ResultWrapper;
 import com.simple.jupiter.transport.Status;
 import com.simple.jupiter.transport.channel.JChannel;
+import com.simple.jupiter.transport.payload.JCancelPayload;
 import com.simple.jupiter.util.JConstants;
 import com.simple.jupiter.util.Maps;
 import com.simple.jupiter.util.SystemPropertyUtil;
@@ -38,6 +41,14 @@ public class DefaultInvokeFuture<V> extends CompletableFuture<V> implements Invo
     private static final long TIMEOUT_SCANNER_INTERVAL_MILLIS =
         SystemPropertyUtil.getLong("jupiter.rpc.invoke.timeout_scanner_interval_millis", 50);
 
+    // 放弃一个还在provider上排队或执行的请求时(超时, failover切换到其他provider)通知provider取消(CANCEL),
+    // 不认识CANCEL的旧版本provider会断开连接, 所以默认关闭
+    private static final boolean CANCEL_ABANDONED =
+        SystemPropertyUtil.getBoolean("jupiter.rpc.invoke.cancel_abandoned", false);
+
+    private static final AtomicIntegerFieldUpdater<DefaultInvokeFuture> cancelSentUpdater =
+        AtomicIntegerFieldUpdater.newUpdater(DefaultInvokeFuture.class, "cancelSent");
+
     private static final ConcurrentMap<Long, DefaultInvokeFuture<?>> roundFutures =
         Maps.newConcurrentMapLong(FUTURES_CONTAINER_INITIAL_CAPACITY);
     private static final ConcurrentMap<String, DefaultInvokeFuture<?>> broadcastFutures =
@@ -56,8 +67,12 @@ public class DefaultInvokeFuture<V> extends CompletableFuture<V> implements Invo
     private final long startTime = System.nanoTime();
 
     private volatile boolean sent = false;
+    // 超时和failover都会通知取消, 同一个请求只发送一次CANCEL
+    private volatile int cancelSent = 0; // 0: false, 1: true
 
     private ConsumerInterceptor[] interceptors;
+    // 成功时通知响应的大小, 见 AbstractDispatcher#selectLane
+    private IntConsumer responseSizeListener;
 
     public static <T> DefaultInvokeFuture<T> with(
         long invokeId, JChannel channel, long timeoutMillis, Class<T> returnType, DispatchType dispatchType) {
@@ -95,6 +110,25 @@ public class DefaultInvokeFuture<V> extends CompletableFuture<V> implements Invo
         return channel;
     }
 
+    /**
+     * 通知provider取消这个请求, 没有开启 jupiter.rpc.invoke.cancel_abandoned 时什么都不做.
+     *
+     * 请求可能还在写队列中没有发出, 同一个连接上CANCEL一定在请求之后到达.
+     */
+    public void cancelOnProvider() {
+        if (!CANCEL_ABANDONED || !cancelSentUpdater.compareAndSet(this, 0, 1)) {
+            return;
+        }
+        if (!channel.isActive()) {
+            return;
+        }
+        try {
+            channel.write(new JCancelPayload(invokeId));
+        } catch (Throwable t) {
+            logger.warn("Cancel request failed: {}, channel: {}.", invokeId, channel);
+        }
+    }
+
     @Override
     public Class<V> returnType() {
         return returnType;
@@ -122,10 +156,22 @@ public class DefaultInvokeFuture<V> extends CompletableFuture<V> implements Invo
         return this;
     }
 
+    public DefaultInvokeFuture<V> responseSizeListener(IntConsumer responseSizeListener) {
+        this.responseSizeListener = responseSizeListener;
+        return this;
+    }
+
     private void doReceived(JResponse response) {
+        // 调用方保证只会执行一次(先从 roundFutures/broadcastFutures 中移除)
+        channel.decrementInFlightRequests();
+
         byte status = response.status();
 
         if (status == Status.OK.value()) {
+            IntConsumer listener = responseSizeListener;
+            if (listener != null) {
+                listener.accept(response.size());
+            }
             ResultWrapper wrapper = response.result();
             //  如果任务还没完成，提前手动完成，并返回下面的值
             complete((V) wrapper.getResult());
@@ -169,7 +215,10 @@ public class DefaultInvokeFuture<V> extends CompletableFuture<V> implements Invo
         completeExceptionally(cause);
     }
 
-    public static void received(JChannel channel, JResponse response) {
+    /**
+     * 返回 false 表示响应没有对应的future(已经超时), 被丢弃了.
+     */
+    public static boolean received(JChannel channel, JResponse response) {
         long invokeId = response.id();
 
         DefaultInvokeFuture<?> future = roundFutures.remove(invokeId);
@@ -181,10 +230,11 @@ public class DefaultInvokeFuture<V> extends CompletableFuture<V> implements Invo
 
         if (future == null) {
             logger.warn("A timeout response [{}] finally returned on {}.", response, channel);
-            return;
+            return false;
         }
 
         future.doReceived(response);
+        return true;
     }
 
     public static void fakeReceived(JChannel channel, JResponse response, DispatchType dispatchType) {
@@ -247,6 +297,8 @@ public class DefaultInvokeFuture<V> extends CompletableFuture<V> implements Invo
                 JResponse response = new JResponse(future.invokeId);
                 response.status(future.sent ? Status.SERVER_TIMEOUT : Status.CLIENT_TIMEOUT);
 
+                // 需要在doReceived之前发出, failover可能在doReceived中把同一个invokeId重试到同一个连接上
+                future.cancelOnProvider();
                 future.doReceived(response);
             }
         }
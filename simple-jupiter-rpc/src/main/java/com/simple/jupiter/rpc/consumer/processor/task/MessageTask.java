@@ -1,5 +1,6 @@
 package com.simple.jupiter.rpc.consumer.processor.task;
 
+import java.util.List;
 import com.simple.jupiter.rpc.JResponse;
 import com.simple.jupiter.rpc.consumer.future.DefaultInvokeFuture;
 import com.simple.jupiter.rpc.exception.JupiterSerializationException;
@@ -8,6 +9,7 @@ import com.simple.jupiter.serialization.Serializer;
 import com.simple.jupiter.serialization.SerializerFactory;
 import com.simple.jupiter.serialization.io.InputBuf;
 import com.simple.jupiter.transport.CodecConfig;
+import com.simple.jupiter.transport.JFileRegion;
 import com.simple.jupiter.transport.Status;
 import com.simple.jupiter.transport.channel.JChannel;
 import com.simple.jupiter.transport.payload.JResponsePayload;
@@ -34,11 +36,21 @@ public class MessageTask implements Runnable {
         final JResponse _response = response;
         final JResponsePayload _responsePayload = _response.payload();
         byte s_code = _response.serializerCode();
+        final List<JFileRegion> fileRegions = _responsePayload.fileRegions();
+        // 带文件区段的响应总是当作大消息
+        _response.size(fileRegions == null ? _responsePayload.size() : Integer.MAX_VALUE);
 
         Serializer serializer = SerializerFactory.getSerializer(s_code);
         ResultWrapper wrapper;
         try {
-            if (CodecConfig.isCodecLowCopy()) {
+            // 文件区段在写线程中写入临时文件, 等待全部写完
+            JFileRegion.awaitAll(fileRegions);
+
+            Object body = _responsePayload.body();
+            if (body != null) {
+                // 同一个JVM内直接传递过来的对象
+                wrapper = (ResultWrapper) body;
+            } else if (CodecConfig.isCodecLowCopy()) {
                 InputBuf inputBuf = _responsePayload.inputBuf();
                 wrapper = serializer.readObject(inputBuf, ResultWrapper.class);
             } else {
@@ -46,7 +58,13 @@ public class MessageTask implements Runnable {
                 wrapper = serializer.readObject(bytes, ResultWrapper.class);
             }
             _responsePayload.clear();
+
+            if (fileRegions != null) {
+                wrapper.setResult(JFileRegion.bind(wrapper.getResult(), fileRegions));
+            }
         } catch (Throwable t) {
+            JFileRegion.releaseAll(fileRegions);
+
             logger.error("Deserialize object failed: {}, {}.", channel.remoteAddress(), StackTraceUtil.stackTrace(t));
 
             _response.status(Status.DESERIALIZATION_FAIL);
@@ -55,6 +73,16 @@ public class MessageTask implements Runnable {
         }
         _response.result(wrapper);
 
-        DefaultInvokeFuture.received(channel, _response);
+        boolean delivered = DefaultInvokeFuture.received(channel, _response);
+
+        if (fileRegions != null) {
+            // 只有交给用户的那个区段由用户负责release, 其余的(超时后才到达的响应, 异常响应, 没有绑定到结果上的)在这里删除
+            Object result = delivered && _response.status() == Status.OK.value() ? wrapper.getResult() : null;
+            for (JFileRegion region : fileRegions) {
+                if (region != result) {
+                    region.release();
+                }
+            }
+        }
     }
 }
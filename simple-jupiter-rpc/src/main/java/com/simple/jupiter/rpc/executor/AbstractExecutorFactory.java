@@ -1,5 +1,6 @@
 package com.simple.jupiter.rpc.executor;
 
+import com.simple.jupiter.concurrent.AffinityLayout;
 import com.simple.jupiter.concurrent.AffinityNamedThreadFactory;
 import com.simple.jupiter.concurrent.NamedThreadFactory;
 import com.simple.jupiter.util.JConstants;
@@ -18,6 +19,20 @@ public abstract class AbstractExecutorFactory implements ExecutorFactory {
         }
     }
 
+    /**
+     * 开启业务线程绑核时, 以对应一端的IO线程为基准, 尽量把业务线程放在IO线程所在的socket上,
+     * IO线程没有绑核({@link AffinityLayout#NONE})时与 {@link #threadFactory(String)} 一样.
+     */
+    protected ThreadFactory threadFactory(Target target, String name) {
+        boolean affinity = SystemPropertyUtil.getBoolean(EXECUTOR_AFFINITY_THREAD, false);
+        if (affinity) {
+            String anchor = target == Target.PROVIDER ? AffinityLayout.ACCEPTOR_ANCHOR : AffinityLayout.CONNECTOR_ANCHOR;
+            return new AffinityNamedThreadFactory(name, AffinityLayout.businessStrategies()).followAnchor(anchor);
+        } else {
+            return new NamedThreadFactory(name);
+        }
+    }
+
     protected int coreWorkers(Target target) {
         switch (target) {
             case CONSUMER:
@@ -24,7 +24,7 @@ public class ThreadPoolExecutorFactory extends AbstractExecutorFactory{
                 120L,
                 TimeUnit.SECONDS,
                 workQueue(target),
-                threadFactory(name),
+                threadFactory(target, name),
                 createRejectedPolicy(target, name, new RejectedTaskPolicyWithReport(name, "jupiter")));
 
         return new CloseableExecutor() {
@@ -0,0 +1,28 @@
+package com.simple.jupiter.rpc.model.metadata;
+
+import java.io.Serializable;
+
+/**
+ * 二进制信封中交给 {@link com.simple.jupiter.serialization.Serializer} 的方法参数.
+ *
+ * 参数数组的元素类型不确定, 有的序列化方式(比如protostuff)不能直接处理顶层的 Object[], 所以包一层.
+ *
+ * jupiter
+ * org.jupiter.rpc.model.metadata
+ */
+final class ArgsWrapper implements Serializable {
+
+    private static final long serialVersionUID = -3786271735398157823L;
+
+    private Object[] args;
+
+    ArgsWrapper() {}
+
+    ArgsWrapper(Object[] args) {
+        this.args = args;
+    }
+
+    Object[] getArgs() {
+        return args;
+    }
+}
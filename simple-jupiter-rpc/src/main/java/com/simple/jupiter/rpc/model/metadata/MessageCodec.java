@@ -0,0 +1,473 @@
+package com.simple.jupiter.rpc.model.metadata;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.Function;
+import com.simple.jupiter.serialization.Serializer;
+import com.simple.jupiter.serialization.io.InputBuf;
+import com.simple.jupiter.serialization.io.OutputBuf;
+import com.simple.jupiter.util.SystemPropertyUtil;
+import com.simple.jupiter.util.ThrowUtil;
+import com.simple.jupiter.util.internal.InternalThreadLocal;
+
+import static com.simple.jupiter.serialization.Serializer.DEFAULT_BUF_SIZE;
+import static com.simple.jupiter.serialization.Serializer.MAX_CACHED_BUF_SIZE;
+
+/**
+ * 请求消息 {@link MessageWrapper} 的二进制信封编解码.
+ *
+ * 信封中的元数据按固定布局手工编码, 只有方法参数经过 {@link Serializer}, 省去了通用序列化对元数据
+ * (类描述/字段名/HashMap)的开销. 反序列化分成两步: provider先读出信封({@link #readEnvelope}),
+ * 查找服务和流量控制通过之后才反序列化参数({@link #readArgs}), 被拒绝的请求不需要付出参数的反序列化开销.
+ * 使用信封格式的请求, 协议头状态位带有 {@link com.simple.jupiter.transport.JProtocolHeader#ENVELOPE}.
+ *
+ * 信封布局(FULL):
+ * = 1 // 信封类型
+ * + N // appName
+ * + N // group
+ * + N // providerName
+ * + N // version
+ * + N // methodName
+ * + N // attachments个数(varint), 之后依次是每一对key, value
+ * + M // {@link ArgsWrapper} 经过Serializer序列化后的内容, 直到消息体结束
+ * 字符串: varint(UTF-8字节数 + 1), 0表示null, 之后是UTF-8编码的内容
+ *
+ * 连接上的方法字典({@link MethodBinding}): consumer为每个 (服务, 方法) 分配一个id, 在一个连接上第一次调用时发送BIND,
+ * 确认BIND已经写出之后只发送REF; provider在IO线程中按连接登记绑定, 同一个连接上后面的REF一定能找到它.
+ * = 1 // 信封类型, BIND/REF
+ * + N // 方法id, varint
+ * + N // 只有BIND: group, providerName, version, methodName
+ * + N // appName
+ * + N // attachments, 同FULL
+ * + M // 参数, 同FULL
+ *
+ * 响应消息 {@link ResultWrapper} 中只有结果对象本身, 没有能拆出来的元数据, 仍然整体交给Serializer.
+ *
+ * jupiter
+ * org.jupiter.rpc.model.metadata
+ */
+public final class MessageCodec {
+
+    /**
+     * consumer是否使用二进制信封格式(以及方法字典)发送请求, provider两种格式都能识别;
+     * 不认识信封格式的旧版本provider会以BAD_REQUEST拒绝并关闭连接, 所以默认关闭,
+     * 所有provider都升级之后再在consumer端开启.
+     */
+    public static final boolean ENVELOPE = SystemPropertyUtil.getBoolean("jupiter.message.envelope", false);
+
+    /**
+     * 方法id的上限, 超过之后consumer不再分配新的id(使用FULL), provider也不再登记新的绑定.
+     */
+    public static final int MAX_METHOD_ID = 0xffff;
+
+    // 信封类型
+    private static final byte FULL = 0x01;  // 完整的元数据
+    private static final byte BIND = 0x02;  // 方法id + 完整的元数据, provider登记绑定
+    private static final byte REF = 0x03;   // 只有方法id
+
+    // 第一次预读的长度, 绝大部分信封都不会超过
+    private static final int PEEK_LENGTH = 256;
+
+    private static final InternalThreadLocal<EnvelopeOutput> outputThreadLocal = new InternalThreadLocal<EnvelopeOutput>() {
+
+        @Override
+        protected EnvelopeOutput initialValue() {
+            return new EnvelopeOutput();
+        }
+    };
+
+    // InputBuf 消息体开头的信封先拷贝到这里再解析, 见 #peek(InputBuf, int)
+    private static final InternalThreadLocal<byte[]> bytesThreadLocal = new InternalThreadLocal<byte[]>() {
+
+        @Override
+        protected byte[] initialValue() {
+            return new byte[DEFAULT_BUF_SIZE];
+        }
+    };
+
+    public static OutputBuf write(Serializer serializer, OutputBuf outputBuf, MessageWrapper msg) {
+        return write(serializer, outputBuf, msg, -1, false);
+    }
+
+    /**
+     * 先写信封, 参数由serializer接着写入同一个outputBuf.
+     *
+     * @param methodId  方法id, 小于0时写完整的元数据(FULL)
+     * @param bound     这个连接上的provider是否已经登记了方法id, 是则只写id(REF), 否则带上绑定(BIND)
+     */
+    public static OutputBuf write(
+            Serializer serializer, OutputBuf outputBuf, MessageWrapper msg, int methodId, boolean bound) {
+        EnvelopeOutput output = outputThreadLocal.get();
+        try {
+            writeEnvelope(output, msg, methodId, bound);
+            outputBuf.nioByteBuffer(output.position).put(output.buf, 0, output.position);
+        } finally {
+            output.clear();
+        }
+        return serializer.writeObject(outputBuf, new ArgsWrapper(msg.rawArgs()));
+    }
+
+    public static byte[] write(Serializer serializer, MessageWrapper msg) {
+        return write(serializer, msg, -1, false);
+    }
+
+    /**
+     * 信封和序列化后的参数拼接成一个 byte[], 只有一次拷贝.
+     */
+    public static byte[] write(Serializer serializer, MessageWrapper msg, int methodId, boolean bound) {
+        byte[] args = serializer.writeObject(new ArgsWrapper(msg.rawArgs()));
+
+        EnvelopeOutput output = outputThreadLocal.get();
+        try {
+            writeEnvelope(output, msg, methodId, bound);
+            int envelopeLength = output.position;
+            byte[] bytes = new byte[envelopeLength + args.length];
+            System.arraycopy(output.buf, 0, bytes, 0, envelopeLength);
+            System.arraycopy(args, 0, bytes, envelopeLength, args.length);
+            return bytes;
+        } finally {
+            output.clear();
+        }
+    }
+
+    /**
+     * 返回信封中的方法id, FULL返回-1; 不移动读取位置.
+     */
+    public static int peekMethodId(InputBuf inputBuf) {
+        // 信封类型1个字节 + 最长5个字节的varint
+        return peekMethodId(peek(inputBuf, Math.min(inputBuf.size(), 6)));
+    }
+
+    public static int peekMethodId(byte[] bytes) {
+        return peekMethodId(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * 信封类型是BIND时返回其中的绑定, 否则返回null; 不移动读取位置.
+     */
+    public static MethodBinding peekBinding(InputBuf inputBuf) {
+        return readPrefix(inputBuf, MessageCodec::peekBinding);
+    }
+
+    public static MethodBinding peekBinding(byte[] bytes) {
+        return peekBinding(ByteBuffer.wrap(bytes));
+    }
+
+    public static MessageWrapper read(Serializer serializer, InputBuf inputBuf) {
+        return read(serializer, inputBuf, null);
+    }
+
+    /**
+     * 读出信封和参数, 不论成功与否inputBuf都会被释放.
+     *
+     * @param binding 连接上已经登记的方法绑定, 信封类型是BIND/REF时使用
+     */
+    public static MessageWrapper read(Serializer serializer, InputBuf inputBuf, MethodBinding binding) {
+        return readArgs(serializer, inputBuf, readEnvelope(inputBuf, binding));
+    }
+
+    public static MessageWrapper read(Serializer serializer, byte[] bytes) {
+        return read(serializer, bytes, null);
+    }
+
+    public static MessageWrapper read(Serializer serializer, byte[] bytes, MethodBinding binding) {
+        return readArgs(serializer, bytes, readEnvelope(bytes, binding));
+    }
+
+    /**
+     * 只读出信封, 返回的 {@link MessageWrapper} 中还没有参数, 之后再调用 {@link #readArgs(Serializer, InputBuf, MessageWrapper)};
+     * 请求被拒绝而不再读取参数时由调用方释放inputBuf.
+     *
+     * 只拷贝消息体开头的信封部分解析, 之后通过 {@link InputBuf#inputStream()} 跳过这一段,
+     * 整个消息体只在反序列化参数时访问一次; 读取失败时inputBuf会被释放.
+     */
+    public static MessageWrapper readEnvelope(InputBuf inputBuf, MethodBinding binding) {
+        MessageWrapper msg = null;
+        boolean envelopeRead = false;
+        try {
+            msg = readPrefix(inputBuf, buf -> {
+                MessageWrapper m = readEnvelope(buf, binding);
+                m.argsOffset(buf.position());
+                return m;
+            });
+            inputBuf.inputStream().skip(msg.argsOffset());
+            envelopeRead = true;
+        } catch (IOException e) {
+            ThrowUtil.throwException(e);
+        } finally {
+            if (!envelopeRead) {
+                inputBuf.release();
+            }
+        }
+        return msg;
+    }
+
+    /**
+     * serializer 从信封之后的位置开始反序列化参数, 不论成功与否inputBuf都会被释放.
+     */
+    public static MessageWrapper readArgs(Serializer serializer, InputBuf inputBuf, MessageWrapper msg) {
+        ArgsWrapper args = serializer.readObject(inputBuf, ArgsWrapper.class);
+        msg.rawArgs(args.getArgs());
+        return msg;
+    }
+
+    /**
+     * 只读出信封, 参数的起始位置记录在返回的 {@link MessageWrapper} 中, 之后再调用 {@link #readArgs(Serializer, byte[], MessageWrapper)}.
+     */
+    public static MessageWrapper readEnvelope(byte[] bytes, MethodBinding binding) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        MessageWrapper msg = readEnvelope(buf, binding);
+        msg.argsOffset(buf.position());
+        return msg;
+    }
+
+    /**
+     * @param msg 同一个消息体 {@link #readEnvelope(byte[], MethodBinding)} 的结果
+     */
+    public static MessageWrapper readArgs(Serializer serializer, byte[] bytes, MessageWrapper msg) {
+        int offset = msg.argsOffset();
+        ArgsWrapper args = serializer.readObject(bytes, offset, bytes.length - offset, ArgsWrapper.class);
+        msg.rawArgs(args.getArgs());
+        return msg;
+    }
+
+    private static void writeEnvelope(EnvelopeOutput output, MessageWrapper msg, int methodId, boolean bound) {
+        ServiceMetadata metadata = msg.getMetadata();
+
+        if (methodId < 0) {
+            output.writeByte(FULL);
+            output.writeString(msg.getAppName());
+            output.writeString(metadata.getGroup());
+            output.writeString(metadata.getServiceProviderName());
+            output.writeString(metadata.getVersion());
+            output.writeString(msg.getMethodName());
+        } else if (bound) {
+            output.writeByte(REF);
+            output.writeVarInt(methodId);
+            output.writeString(msg.getAppName());
+        } else {
+            output.writeByte(BIND);
+            output.writeVarInt(methodId);
+            output.writeString(metadata.getGroup());
+            output.writeString(metadata.getServiceProviderName());
+            output.writeString(metadata.getVersion());
+            output.writeString(msg.getMethodName());
+            output.writeString(msg.getAppName());
+        }
+
+        Map<String, String> attachments = msg.getAttachments();
+        if (attachments == null) {
+            output.writeVarInt(0);
+        } else {
+            output.writeVarInt(attachments.size());
+            for (Map.Entry<String, String> entry : attachments.entrySet()) {
+                output.writeString(entry.getKey());
+                output.writeString(entry.getValue());
+            }
+        }
+    }
+
+    private static MessageWrapper readEnvelope(ByteBuffer buf, MethodBinding binding) {
+        MessageWrapper msg;
+        byte type = buf.get();
+        switch (type) {
+            case FULL: {
+                String appName = readString(buf);
+                String group = readString(buf);
+                String providerName = readString(buf);
+                String version = readString(buf);
+
+                msg = new MessageWrapper(new ServiceMetadata(group, providerName, version));
+                msg.setAppName(appName);
+                msg.setMethodName(readString(buf));
+                break;
+            }
+            case BIND: {
+                int methodId = readVarInt(buf);
+                String group = readString(buf);
+                String providerName = readString(buf);
+                String version = readString(buf);
+                String methodName = readString(buf);
+
+                if (binding != null && binding.getId() == methodId) {
+                    // 共用登记时创建的元数据
+                    msg = new MessageWrapper(binding.getMetadata());
+                    msg.setMethodName(binding.getMethodName());
+                } else {
+                    // 没有登记成功(比如超过了 MAX_METHOD_ID)也能按完整的元数据处理
+                    msg = new MessageWrapper(new ServiceMetadata(group, providerName, version));
+                    msg.setMethodName(methodName);
+                }
+                msg.setAppName(readString(buf));
+                break;
+            }
+            case REF: {
+                int methodId = readVarInt(buf);
+                if (binding == null || binding.getId() != methodId) {
+                    throw new IllegalArgumentException("unbound method id: " + methodId);
+                }
+
+                msg = new MessageWrapper(binding.getMetadata());
+                msg.setMethodName(binding.getMethodName());
+                msg.setAppName(readString(buf));
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("unknown envelope type: " + type);
+        }
+
+        int attachmentCount = readVarInt(buf);
+        for (int i = 0; i < attachmentCount; i++) {
+            msg.putAttachment(readString(buf), readString(buf));
+        }
+        return msg;
+    }
+
+    /**
+     * 消息体开头的 length 个字节拷贝到线程内复用的 byte[] 中, 不访问整个消息体
+     * (分片组装的消息体调用 {@link InputBuf#nioByteBuffer()} 需要整体拷贝一次).
+     */
+    private static ByteBuffer peek(InputBuf inputBuf, int length) {
+        byte[] bytes = bytesThreadLocal.get();
+        if (bytes.length < length) {
+            bytes = new byte[length];
+            if (length <= MAX_CACHED_BUF_SIZE) {
+                bytesThreadLocal.set(bytes);
+            }
+        }
+        inputBuf.getBytes(0, bytes, 0, length);
+        return ByteBuffer.wrap(bytes, 0, length);
+    }
+
+    /**
+     * 先预读 PEEK_LENGTH 个字节解析信封, 信封更长(比如attachments很多)时加倍重试.
+     */
+    private static <T> T readPrefix(InputBuf inputBuf, Function<ByteBuffer, T> reader) {
+        int size = inputBuf.size();
+        int length = Math.min(size, PEEK_LENGTH);
+        for (;;) {
+            ByteBuffer buf = peek(inputBuf, length);
+            try {
+                return reader.apply(buf);
+            } catch (BufferUnderflowException e) {
+                if (length == size) {
+                    throw e;
+                }
+                length = (int) Math.min((long) length << 1, size);
+            }
+        }
+    }
+
+    private static int peekMethodId(ByteBuffer buf) {
+        byte type = buf.get();
+        return type == BIND || type == REF ? readVarInt(buf) : -1;
+    }
+
+    private static MethodBinding peekBinding(ByteBuffer buf) {
+        if (buf.get() != BIND) {
+            return null;
+        }
+
+        int methodId = readVarInt(buf);
+        String group = readString(buf);
+        String providerName = readString(buf);
+        String version = readString(buf);
+        String methodName = readString(buf);
+        return new MethodBinding(methodId, new ServiceMetadata(group, providerName, version), methodName);
+    }
+
+    private static int readVarInt(ByteBuffer buf) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buf.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int length = readVarInt(buf) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > buf.remaining()) {
+            throw new BufferUnderflowException();
+        }
+
+        // 信封总是在堆内存中解析(byte[] 消息体, 或者 InputBuf 预读出来的开头部分)
+        String str = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+        return str;
+    }
+
+    private static final class EnvelopeOutput {
+
+        byte[] buf = new byte[DEFAULT_BUF_SIZE];
+        int position;
+
+        void writeByte(byte b) {
+            ensureCapacity(1);
+            buf[position++] = b;
+        }
+
+        void writeVarInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7f) != 0) {
+                buf[position++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buf[position++] = (byte) value;
+        }
+
+        void writeString(String str) {
+            if (str == null) {
+                writeVarInt(0);
+                return;
+            }
+
+            int length = str.length();
+            for (int i = 0; i < length; i++) {
+                if (str.charAt(i) >= 0x80) {
+                    // 非ASCII字符, 交给JDK编码
+                    byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+                    writeVarInt(bytes.length + 1);
+                    ensureCapacity(bytes.length);
+                    System.arraycopy(bytes, 0, buf, position, bytes.length);
+                    position += bytes.length;
+                    return;
+                }
+            }
+
+            // ASCII字符串(服务名/方法名基本都是)直接逐个字符写入, 没有中间的 byte[]
+            writeVarInt(length + 1);
+            ensureCapacity(length);
+            for (int i = 0; i < length; i++) {
+                buf[position++] = (byte) str.charAt(i);
+            }
+        }
+
+        void clear() {
+            position = 0;
+            // 防止hold过大的内存块一直不释放
+            if (buf.length > MAX_CACHED_BUF_SIZE) {
+                buf = new byte[DEFAULT_BUF_SIZE];
+            }
+        }
+
+        private void ensureCapacity(int required) {
+            if (buf.length - position < required) {
+                byte[] newBuf = new byte[Math.max(buf.length << 1, position + required)];
+                System.arraycopy(buf, 0, newBuf, 0, position);
+                buf = newBuf;
+            }
+        }
+    }
+
+    private MessageCodec() {}
+}
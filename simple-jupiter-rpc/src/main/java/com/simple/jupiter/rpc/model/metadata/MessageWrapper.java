@@ -21,6 +21,9 @@ public class MessageWrapper implements Serializable {
     private Object[] args;                  // 目标方法参数
     private Map<String, String> attachments;
 
+    // 信封格式的请求只读出信封时, 参数在 byte[] 消息体中的起始位置, 见 MessageCodec#readArgs
+    private transient int argsOffset;
+
     public MessageWrapper(ServiceMetadata metadata) {
         this.metadata = metadata;
     }
@@ -83,6 +86,23 @@ public class MessageWrapper implements Serializable {
         this.args = args;
     }
 
+    // 不做null元素的转换, 给 MessageCodec 直接读写序列化时的原始参数
+    Object[] rawArgs() {
+        return args;
+    }
+
+    void rawArgs(Object[] args) {
+        this.args = args;
+    }
+
+    int argsOffset() {
+        return argsOffset;
+    }
+
+    void argsOffset(int argsOffset) {
+        this.argsOffset = argsOffset;
+    }
+
     public Map<String, String> getAttachments() {
         return attachments;
     }
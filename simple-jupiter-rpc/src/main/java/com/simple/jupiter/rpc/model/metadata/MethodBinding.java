@@ -0,0 +1,43 @@
+package com.simple.jupiter.rpc.model.metadata;
+
+/**
+ * 一个连接上 (服务, 方法) -> id 的绑定.
+ *
+ * consumer在一个连接上第一次调用某个方法时在信封中带上绑定(BIND), 之后只发送id(REF), 见 {@link MessageCodec}.
+ *
+ * jupiter
+ * org.jupiter.rpc.model.metadata
+ */
+public final class MethodBinding {
+
+    private final int id;
+    private final ServiceMetadata metadata;
+    private final String methodName;
+
+    public MethodBinding(int id, ServiceMetadata metadata, String methodName) {
+        this.id = id;
+        this.metadata = metadata;
+        this.methodName = methodName;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public ServiceMetadata getMetadata() {
+        return metadata;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    @Override
+    public String toString() {
+        return "MethodBinding{" +
+                "id=" + id +
+                ", metadata=" + metadata +
+                ", methodName='" + methodName + '\'' +
+                '}';
+    }
+}
@@ -5,14 +5,18 @@ import com.simple.jupiter.rpc.executor.CloseableExecutor;
 import com.simple.jupiter.rpc.flow.control.FlowController;
 import com.simple.jupiter.rpc.model.metadata.ResultWrapper;
 import com.simple.jupiter.rpc.provider.LookupService;
+import com.simple.jupiter.rpc.provider.processor.task.ChannelState;
 import com.simple.jupiter.rpc.provider.processor.task.MessageTask;
+import com.simple.jupiter.rpc.provider.processor.task.MethodBindings;
 import com.simple.jupiter.serialization.Serializer;
 import com.simple.jupiter.serialization.SerializerFactory;
 import com.simple.jupiter.serialization.io.OutputBuf;
 import com.simple.jupiter.transport.CodecConfig;
+import com.simple.jupiter.transport.JFileRegion;
 import com.simple.jupiter.transport.Status;
 import com.simple.jupiter.transport.channel.JChannel;
 import com.simple.jupiter.transport.channel.JFutureListener;
+import com.simple.jupiter.transport.payload.JCancelPayload;
 import com.simple.jupiter.transport.payload.JRequestPayload;
 import com.simple.jupiter.transport.payload.JResponsePayload;
 import com.simple.jupiter.transport.processor.ProviderProcessor;
@@ -37,17 +41,34 @@ public abstract class DefaultProviderProcessor implements ProviderProcessor, Loo
 
     @Override
     public void handleRequest(JChannel channel, JRequestPayload requestPayload) throws Exception {
-        MessageTask task = new MessageTask(this, channel, new JRequest(requestPayload));
-        //未定义线程池的话，交给Channel对应的EventLoop线程来处理该任务（单线程循环执行，不会有线程安全）
-        if (executor == null) {
-            channel.addTask(task);
-        } else {
-            executor.execute(task);
+        // 方法字典在IO线程中按请求到达的顺序登记和查找
+        MethodBindings.Bound bound = MethodBindings.resolve(channel, requestPayload);
+        MessageTask task = new MessageTask(this, channel, new JRequest(requestPayload), bound);
+        // 用于处理consumer的取消请求(CANCEL)
+        ChannelState.register(channel, requestPayload.invokeId(), task);
+        try {
+            //未定义线程池的话，交给Channel对应的EventLoop线程来处理该任务（单线程循环执行，不会有线程安全）
+            if (executor == null) {
+                channel.addTask(task);
+            } else {
+                executor.execute(task);
+            }
+        } catch (Throwable t) {
+            ChannelState.done(channel, requestPayload.invokeId(), task);
+            throw t;
         }
     }
 
+    @Override
+    public void handleCancel(JChannel channel, JCancelPayload cancel) {
+        ChannelState.cancel(channel, cancel.invokeId());
+    }
+
     @Override
     public void handleException(JChannel channel, JRequestPayload request, Status status, Throwable cause) {
+        // 请求没有进入任务, 收到的文件区段在这里删除
+        JFileRegion.releaseAll(request.fileRegions());
+
         logger.error("An exception was caught while processing request: {}, {}.",
                 channel.remoteAddress(), StackTraceUtil.stackTrace(cause));
 
@@ -90,7 +111,10 @@ public abstract class DefaultProviderProcessor implements ProviderProcessor, Loo
 
         JResponsePayload response = new JResponsePayload(invokeId);
         response.status(status);
-        if (CodecConfig.isCodecLowCopy()) {
+        if (channel.acceptsBody()) {
+            // 同一个JVM内直接传递对象, 不需要序列化
+            response.body(s_code, result);
+        } else if (CodecConfig.isCodecLowCopy()) {
             OutputBuf outputBuf =
                     serializer.writeObject(channel.allocOutputBuf(), result);
             response.outputBuf(s_code, outputBuf);
@@ -119,7 +143,4 @@ public abstract class DefaultProviderProcessor implements ProviderProcessor, Loo
             });
         }
     }
-
-
-
 }
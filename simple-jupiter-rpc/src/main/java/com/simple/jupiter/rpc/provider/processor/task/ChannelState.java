@@ -0,0 +1,114 @@
+package com.simple.jupiter.rpc.provider.processor.task;
+
+import com.simple.jupiter.transport.channel.JChannel;
+import com.simple.jupiter.util.SystemPropertyUtil;
+import com.simple.jupiter.util.collection.LongObjectHashMap;
+import com.simple.jupiter.util.collection.LongObjectMap;
+
+/**
+ * provider端一个连接上的状态, 挂在 {@link JChannel#attachment()} 上, 随连接一起回收:
+ *
+ * 1. 方法字典 {@link MethodBindings}, 收到第一个信封格式的请求时创建, 只在IO线程中访问;
+ * 2. 排队中和执行中的请求(按invoke id索引), 用于处理consumer的取消请求(CANCEL).
+ *
+ * 请求从连接上的第一个请求开始登记, 每个请求多一次(几乎没有竞争的)加锁; 确定不会有consumer发送CANCEL时
+ * 可以用 -Djupiter.rpc.provider.cancellable=false 关闭登记, 关闭之后收到的CANCEL被忽略.
+ *
+ * jupiter
+ * org.jupiter.rpc.provider.processor.task
+ */
+public final class ChannelState {
+
+    // 是否登记请求以支持consumer的取消请求(CANCEL)
+    private static final boolean CANCELLABLE = SystemPropertyUtil.getBoolean("jupiter.rpc.provider.cancellable", true);
+
+    private MethodBindings methodBindings;
+    // 登记和查找在IO线程中, 移除在业务线程中, 用它自身同步
+    private final LongObjectMap<MessageTask> tasks = new LongObjectHashMap<>();
+
+    /**
+     * IO线程中调用, 连接上的方法字典.
+     */
+    static MethodBindings methodBindings(JChannel channel) {
+        ChannelState state = of(channel, true);
+        if (state == null) {
+            return null;
+        }
+        MethodBindings methodBindings = state.methodBindings;
+        if (methodBindings == null) {
+            state.methodBindings = methodBindings = new MethodBindings();
+        }
+        return methodBindings;
+    }
+
+    /**
+     * IO线程中调用, 登记一个还没有开始执行的请求.
+     */
+    public static void register(JChannel channel, long invokeId, MessageTask task) {
+        if (!CANCELLABLE) {
+            return;
+        }
+        ChannelState state = of(channel, true);
+        if (state == null) {
+            return;
+        }
+        LongObjectMap<MessageTask> tasks = state.tasks;
+        synchronized (tasks) {
+            tasks.put(invokeId, task);
+        }
+    }
+
+    /**
+     * IO线程中调用, 取消登记过的请求, 已经结束(或者没有登记)的请求忽略.
+     */
+    public static void cancel(JChannel channel, long invokeId) {
+        ChannelState state = of(channel, false);
+        if (state == null) {
+            return;
+        }
+        LongObjectMap<MessageTask> tasks = state.tasks;
+        MessageTask task;
+        synchronized (tasks) {
+            task = tasks.get(invokeId);
+        }
+        if (task != null) {
+            // 排队中的任务在开始执行时直接丢弃, 执行中的任务只打上标记, 都不会再发送响应
+            task.cancel();
+        }
+    }
+
+    /**
+     * 任务结束(已经写出响应, 被取消后丢弃, 或者没能提交到线程池), 移除登记.
+     */
+    public static void done(JChannel channel, long invokeId, MessageTask task) {
+        if (!CANCELLABLE) {
+            return;
+        }
+        ChannelState state = of(channel, false);
+        if (state == null) {
+            return;
+        }
+        LongObjectMap<MessageTask> tasks = state.tasks;
+        synchronized (tasks) {
+            // failover重试时同一个invoke id可能再次发到同一个连接, 只移除自己
+            if (tasks.get(invokeId) == task) {
+                tasks.remove(invokeId);
+            }
+        }
+    }
+
+    private static ChannelState of(JChannel channel, boolean create) {
+        Object attachment = channel.attachment();
+        if (attachment == null) {
+            if (!create) {
+                return null;
+            }
+            ChannelState newState = new ChannelState();
+            attachment = channel.attachIfAbsent(newState);
+            if (attachment == null) {
+                return newState;
+            }
+        }
+        return attachment instanceof ChannelState ? (ChannelState) attachment : null;
+    }
+}
@@ -5,7 +5,9 @@ import com.simple.jupiter.rpc.*;
 import com.simple.jupiter.rpc.exception.*;
 import com.simple.jupiter.rpc.flow.control.ControlResult;
 import com.simple.jupiter.rpc.flow.control.FlowController;
+import com.simple.jupiter.rpc.model.metadata.MessageCodec;
 import com.simple.jupiter.rpc.model.metadata.MessageWrapper;
+import com.simple.jupiter.rpc.model.metadata.MethodBinding;
 import com.simple.jupiter.rpc.model.metadata.ResultWrapper;
 import com.simple.jupiter.rpc.model.metadata.ServiceWrapper;
 import com.simple.jupiter.rpc.provider.ProviderInterceptor;
@@ -15,6 +17,8 @@ import com.simple.jupiter.serialization.SerializerFactory;
 import com.simple.jupiter.serialization.io.InputBuf;
 import com.simple.jupiter.serialization.io.OutputBuf;
 import com.simple.jupiter.transport.CodecConfig;
+import com.simple.jupiter.transport.JFileRegion;
+import com.simple.jupiter.transport.JProtocolHeader;
 import com.simple.jupiter.transport.Status;
 import com.simple.jupiter.transport.channel.JChannel;
 import com.simple.jupiter.transport.channel.JFutureListener;
@@ -24,9 +28,11 @@ import com.simple.jupiter.util.*;
 import com.simple.jupiter.util.internal.logging.InternalLogger;
 import com.simple.jupiter.util.internal.logging.InternalLoggerFactory;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 public class MessageTask implements RejectedRunnable {
@@ -41,14 +47,40 @@ public class MessageTask implements RejectedRunnable {
     private final DefaultProviderProcessor processor;
     private final JChannel channel;
     private final JRequest request;
+    // 连接上的方法字典中请求对应的绑定, FULL格式的请求为null
+    private final MethodBindings.Bound bound;
+
+    // consumer已经取消了该请求(超时), 见 DefaultProviderProcessor#handleCancel
+    private volatile boolean cancelled;
+    // 请求携带的文件区段(临时文件), 没有交给业务之前被拒绝/取消时删除
+    private List<JFileRegion> fileRegions;
+    // 只读出了信封, 参数还在消息体中, 见 #readArgs()
+    private boolean argsPending;
 
     public MessageTask(DefaultProviderProcessor processor, JChannel channel, JRequest request) {
+        this(processor, channel, request, null);
+    }
+
+    public MessageTask(DefaultProviderProcessor processor, JChannel channel, JRequest request, MethodBindings.Bound bound) {
         this.processor = processor;
         this.channel = channel;
         this.request = request;
+        this.bound = bound;
     }
 
 
+    /**
+     * 还在排队的任务开始执行时直接丢弃; 执行中的任务只打上标记, 业务/filter可以通过
+     * {@link Context#isCancelled()} 提前结束, 执行结果不会再序列化和发送.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
     @Override
     public void rejected() {
         rejected(Status.SERVER_BUSY, new JupiterServerBusyException(String.valueOf(request)));
@@ -59,17 +91,40 @@ public class MessageTask implements RejectedRunnable {
         // 当服务拒绝方法被调用时一般分以下几种情况:
         //  1. 非法请求, close当前连接;
         //  2. 服务端处理能力出现瓶颈, close当前连接, jupiter客户端会自动重连, 在加权负载均衡的情况下权重是一点一点升上来的.
+        releaseFileRegions();
+        done();
         processor.handleRejected(channel, request, status, cause);
     }
 
     @Override
     public void run() {
+        try {
+            doRun();
+        } catch (Throwable t) {
+            // 兜底(比如流量控制/查找服务时抛出异常), 每个请求都要有响应
+            releaseArgs();
+            releaseFileRegions();
+            // 还没有开始读取请求时, 消息体和文件区段都还在payload中
+            releasePayload();
+            done();
+            processor.handleException(channel, request, Status.SERVER_ERROR, t);
+        }
+    }
+
+    private void doRun() {
         // stack copy
         final DefaultProviderProcessor _processor = processor;
         final JRequest _request = request;
+        // 排队期间已经被consumer取消
+        if (cancelled) {
+            releasePayload();
+            dropCancelled();
+            return;
+        }
         // 全局流量控制
         ControlResult ctrl = _processor.flowControl(_request);
         if (!ctrl.isAllowed()) {
+            releasePayload();
             rejected(Status.APP_FLOW_CONTROL, new JupiterFlowControlException(String.valueOf(ctrl)));
             return;
         }
@@ -77,19 +132,39 @@ public class MessageTask implements RejectedRunnable {
         MessageWrapper msg;
         try {
             JRequestPayload _requestPayload = _request.payload();
+            fileRegions = _requestPayload.fileRegions();
+            // 文件区段在写线程中写入临时文件, 等待全部写完
+            JFileRegion.awaitAll(fileRegions);
 
             byte s_code = _requestPayload.serializerCode();
             Serializer serializer = SerializerFactory.getSerializer(s_code);
 
-            // 在业务线程中反序列化, 减轻IO线程负担
-            if (CodecConfig.isCodecLowCopy()) {
+            // 在业务线程中反序列化, 减轻IO线程负担;
+            // 信封格式的请求这里只读出信封, 参数等到请求被接受之后再反序列化, 见 #readArgs()
+            Object body = _requestPayload.body();
+            if (body != null) {
+                // 同一个JVM内直接传递过来的对象
+                msg = (MessageWrapper) body;
+            } else if (CodecConfig.isCodecLowCopy()) {
                 InputBuf inputBuf = _requestPayload.inputBuf();
-                msg = serializer.readObject(inputBuf, MessageWrapper.class);
+                if (isEnvelope(_requestPayload)) {
+                    msg = MessageCodec.readEnvelope(inputBuf, binding());
+                    argsPending = true;
+                } else {
+                    msg = serializer.readObject(inputBuf, MessageWrapper.class);
+                }
             } else {
                 byte[] bytes = _requestPayload.bytes();
-                msg = serializer.readObject(bytes, MessageWrapper.class);
+                if (isEnvelope(_requestPayload)) {
+                    msg = MessageCodec.readEnvelope(bytes, binding());
+                    argsPending = true;
+                } else {
+                    msg = serializer.readObject(bytes, MessageWrapper.class);
+                }
+            }
+            if (!argsPending) {
+                _requestPayload.clear();
             }
-            _requestPayload.clear();
 
             _request.message(msg);
         } catch (Throwable t) {
@@ -100,6 +175,7 @@ public class MessageTask implements RejectedRunnable {
         // 查找服务
         final ServiceWrapper service = _processor.lookupService(msg.getMetadata());
         if (service == null) {
+            releaseArgs();
             rejected(Status.SERVICE_NOT_FOUND, new JupiterServiceNotFoundException(String.valueOf(msg)));
             return;
          }
@@ -109,6 +185,7 @@ public class MessageTask implements RejectedRunnable {
         if (childController != null) {
             ctrl = childController.flowControl(_request);
             if (!ctrl.isAllowed()) {
+                releaseArgs();
                 rejected(Status.PROVIDER_FLOW_CONTROL, new JupiterFlowControlException(String.valueOf(ctrl)));
                 return;
             }
@@ -120,31 +197,48 @@ public class MessageTask implements RejectedRunnable {
             process(service);
         } else {
             // provider私有线程池执行
-            childExecutor.execute(() -> process(service));
+            try {
+                childExecutor.execute(() -> process(service));
+            } catch (RejectedExecutionException e) {
+                releaseArgs();
+                rejected(Status.SERVER_BUSY, new JupiterServerBusyException(String.valueOf(_request)));
+            }
         }
     }
 
     private void process(ServiceWrapper service) {
-        final Context invokeCtx = new Context(service);
+        if (cancelled) {
+            releaseArgs();
+            releaseFileRegions();
+            dropCancelled();
+            return;
+        }
+        if (!readArgs()) {
+            return;
+        }
+        // 之后由业务负责
+        fileRegions = null;
+
+        final Context invokeCtx = new Context(service, this);
         try {
             final Object invokeResult = Chains.invoke(request, invokeCtx)
                     .getResult();
 
             if (!(invokeResult instanceof CompletableFuture)) {
-                doProcess(invokeResult);
+                doProcess(service, invokeResult);
                 return;
             }
 
             CompletableFuture<Object> cf = (CompletableFuture<Object>) invokeResult;
 
             if (cf.isDone()) {
-                doProcess(cf.join());
+                doProcess(service, cf.join());
                 return;
             }
             cf.whenComplete((result, throwable) -> {
                 if (throwable == null) {
                     try {
-                        doProcess(result);
+                        doProcess(service, result);
                     } catch (Throwable t) {
                         handleFail(invokeCtx, t);
                     }
@@ -158,7 +252,13 @@ public class MessageTask implements RejectedRunnable {
 
     }
 
-    private void doProcess(Object realResult) {
+    private void doProcess(ServiceWrapper service, Object realResult) {
+        if (cancelled) {
+            // 结果已经没有人读取了, 不需要序列化
+            dropCancelled();
+            return;
+        }
+
         ResultWrapper result = new ResultWrapper();
         result.setResult(realResult);
         byte s_code = request.serializerCode();
@@ -166,9 +266,20 @@ public class MessageTask implements RejectedRunnable {
 
         JResponsePayload responsePayload = new JResponsePayload(request.invokeId());
 
-        if (CodecConfig.isCodecLowCopy()) {
-            OutputBuf outputBuf =
-                    serializer.writeObject(channel.allocOutputBuf(), result);
+        if (realResult instanceof JFileRegion && !channel.acceptsBody()) {
+            // 文件内容不经过序列化, 由transport层单独发送
+            JFileRegion region = (JFileRegion) realResult;
+            region.index(0);
+            responsePayload.fileRegions(Collections.singletonList(region));
+        }
+
+        if (channel.acceptsBody()) {
+            // 同一个JVM内直接传递对象, 不需要序列化
+            responsePayload.body(s_code, result);
+        } else if (CodecConfig.isCodecLowCopy()) {
+            // 按provider方法预测响应的大小, 用注册时的metadata(directoryString已缓存)而不是每个请求反序列化出来的
+            OutputBuf outputBuf = serializer.writeObject(
+                    channel.allocOutputBuf(service.getMetadata(), request.message().getMethodName()), result);
             responsePayload.outputBuf(s_code, outputBuf);
         } else {
             byte[] bytes = serializer.writeObject(result);
@@ -181,6 +292,12 @@ public class MessageTask implements RejectedRunnable {
     }
 
     private void handleFail(Context invokeCtx, Throwable t) {
+        if (cancelled) {
+            dropCancelled();
+            return;
+        }
+
+        done();
         if (INVOKE_ERROR == t) {
             // handle biz exception
             handleException(invokeCtx.getExpectCauseTypes(), invokeCtx.getCause());
@@ -201,9 +318,12 @@ public class MessageTask implements RejectedRunnable {
                 }
             }
         }
+        // 预期外的异常也要响应, 否则consumer只能等到超时, 服务端的流控credit(见 CreditGrantHandler)也不会归还
+        processor.handleException(channel, request, Status.SERVICE_UNEXPECTED_ERROR, failCause);
     }
 
     private void handleWriteResponse(JResponsePayload response) {
+        done();
         channel.write(response, new JFutureListener<JChannel>() {
 
             @Override
@@ -222,23 +342,134 @@ public class MessageTask implements RejectedRunnable {
         });
     }
 
+    private MethodBinding binding() {
+        return bound == null ? null : bound.binding();
+    }
+
+    // 方法字典中预先绑定的方法调用, 只有方法与绑定一致时才能使用
+    private MethodInvoker invoker(ServiceWrapper service, String methodName) {
+        MethodBindings.Bound _bound = bound;
+        if (_bound == null || !_bound.binding().getMethodName().equals(methodName)) {
+            return null;
+        }
+        return _bound.invoker(service);
+    }
+
+    // 新版本consumer发送的是二进制信封格式, 旧版本是完整序列化的 MessageWrapper
+    private static boolean isEnvelope(JRequestPayload requestPayload) {
+        return (requestPayload.status() & JProtocolHeader.ENVELOPE) != 0;
+    }
+
+    // 消息体还没有反序列化, 释放掉(同时回收InputBuf)
+    private void releasePayload() {
+        JRequestPayload _requestPayload = request.payload();
+        InputBuf inputBuf = _requestPayload.inputBuf();
+        if (inputBuf != null) {
+            inputBuf.release();
+        }
+        JFileRegion.releaseAll(_requestPayload.fileRegions());
+        _requestPayload.clear();
+    }
+
+    /**
+     * 请求已经被接受, 反序列化参数(在provider私有线程池中执行时也在私有线程池中).
+     */
+    private boolean readArgs() {
+        final JRequestPayload _requestPayload = request.payload();
+        final MessageWrapper msg = request.message();
+        try {
+            if (argsPending) {
+                // 不论成功与否inputBuf都已经释放
+                argsPending = false;
+
+                Serializer serializer = SerializerFactory.getSerializer(_requestPayload.serializerCode());
+                InputBuf inputBuf = _requestPayload.inputBuf();
+                if (inputBuf != null) {
+                    MessageCodec.readArgs(serializer, inputBuf, msg);
+                } else {
+                    MessageCodec.readArgs(serializer, _requestPayload.bytes(), msg);
+                }
+            }
+            _requestPayload.clear();
+
+            if (fileRegions != null) {
+                // 参数中只有元数据的 JFileRegion 换成接收到的文件区段
+                Object[] args = msg.getArgs();
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = JFileRegion.bind(args[i], fileRegions);
+                }
+            }
+        } catch (Throwable t) {
+            _requestPayload.clear();
+            rejected(Status.BAD_REQUEST, new JupiterBadRequestException("reading request failed", t));
+            return false;
+        }
+        return true;
+    }
+
+    // 只读出了信封的请求被拒绝或者取消, 参数不再反序列化, 直接释放消息体
+    private void releaseArgs() {
+        if (!argsPending) {
+            return;
+        }
+        argsPending = false;
+
+        JRequestPayload _requestPayload = request.payload();
+        InputBuf inputBuf = _requestPayload.inputBuf();
+        if (inputBuf != null) {
+            inputBuf.release();
+        }
+        _requestPayload.clear();
+    }
+
+    private void releaseFileRegions() {
+        List<JFileRegion> regions = fileRegions;
+        if (regions != null) {
+            fileRegions = null;
+            JFileRegion.releaseAll(regions);
+        }
+    }
+
+    private void dropCancelled() {
+        done();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Request cancelled by consumer: {}, channel: {}.", request.invokeId(), channel);
+        }
+    }
+
+    private void done() {
+        ChannelState.done(channel, request.invokeId(), this);
+    }
 
     public static class Context implements JFilterContext {
 
         private final ServiceWrapper service;
+        private final MessageTask task;
 
         private Object result;                  // 服务调用结果
         private Throwable cause;                // 业务异常
         private Class<?>[] expectCauseTypes;    // 预期内的异常类型
 
         public Context(ServiceWrapper service) {
+            this(service, null);
+        }
+
+        public Context(ServiceWrapper service, MessageTask task) {
             this.service = Requires.requireNotNull(service, "service");
+            this.task = task;
         }
 
         public ServiceWrapper getService() {
             return service;
         }
 
+        /**
+         * consumer是否已经取消了本次调用(超时), 耗时较长的业务/filter可以据此提前结束.
+         */
+        public boolean isCancelled() {
+            return task != null && task.isCancelled();
+        }
+
         public Object getResult() {
             return result;
         }
@@ -324,6 +555,12 @@ public class MessageTask implements RejectedRunnable {
 
         Class<?>[] expectCauseTypes = null;
         try {
+            MethodInvoker invoker = invokeCtx.task == null ? null : invokeCtx.task.invoker(service, methodName);
+            if (invoker != null) {
+                expectCauseTypes = invoker.expectCauseTypes();
+                return invoker.invoke(provider, args);
+            }
+
             List<Pair<Class<?>[], Class<?>[]>> methodExtension = service.getMethodExtension(methodName);
             if (methodExtension == null) {
                 throw new NoSuchMethodException(methodName);
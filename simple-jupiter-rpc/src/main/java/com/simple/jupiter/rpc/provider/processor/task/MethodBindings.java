@@ -0,0 +1,112 @@
+package com.simple.jupiter.rpc.provider.processor.task;
+
+import com.simple.jupiter.rpc.model.metadata.MessageCodec;
+import com.simple.jupiter.rpc.model.metadata.MethodBinding;
+import com.simple.jupiter.rpc.model.metadata.ServiceWrapper;
+import com.simple.jupiter.serialization.io.InputBuf;
+import com.simple.jupiter.transport.JProtocolHeader;
+import com.simple.jupiter.transport.channel.JChannel;
+import com.simple.jupiter.transport.payload.JRequestPayload;
+import com.simple.jupiter.util.collection.IntObjectHashMap;
+import com.simple.jupiter.util.collection.IntObjectMap;
+
+/**
+ * provider端一个连接上登记的方法字典: 方法id -> (服务元数据, 方法), 见 {@link MessageCodec}.
+ *
+ * 挂在连接的 {@link ChannelState} 上, 登记和查找都在IO线程中按请求到达的顺序进行(见 DefaultProviderProcessor#handleRequest),
+ * consumer确认BIND写出之后才会发送REF, 所以REF总能找到之前登记的绑定, 不需要同步.
+ *
+ * jupiter
+ * org.jupiter.rpc.provider.processor.task
+ */
+public final class MethodBindings {
+
+    private final IntObjectMap<Bound> bindings = new IntObjectHashMap<>();
+
+    /**
+     * 在IO线程中调用: 请求是BIND时登记绑定, 返回请求对应的绑定; FULL或者找不到绑定时返回null.
+     *
+     * 绑定中只有方法的元数据, 服务每次调用时仍然通过 {@link com.simple.jupiter.rpc.provider.LookupService} 查找,
+     * 服务被移除/重新发布之后连接上已有的绑定不会继续使用旧的服务.
+     */
+    public static Bound resolve(JChannel channel, JRequestPayload payload) {
+        if ((payload.status() & JProtocolHeader.ENVELOPE) == 0) {
+            return null;
+        }
+
+        MethodBindings methodBindings = ChannelState.methodBindings(channel);
+        if (methodBindings == null) {
+            return null;
+        }
+
+        InputBuf inputBuf = payload.inputBuf();
+        byte[] bytes = payload.bytes();
+        if (inputBuf == null && bytes == null) {
+            return null;
+        }
+
+        try {
+            int methodId = inputBuf != null ? MessageCodec.peekMethodId(inputBuf) : MessageCodec.peekMethodId(bytes);
+            if (methodId < 0) {
+                return null;
+            }
+
+            Bound bound = methodBindings.bindings.get(methodId);
+            if (bound != null) {
+                return bound;
+            }
+
+            MethodBinding binding = inputBuf != null ? MessageCodec.peekBinding(inputBuf) : MessageCodec.peekBinding(bytes);
+            if (binding == null || methodBindings.bindings.size() > MessageCodec.MAX_METHOD_ID) {
+                // 不认识的REF由解码时报告BAD_REQUEST; 绑定过多时不再登记, BIND仍然可以按完整的元数据处理
+                return null;
+            }
+
+            bound = new Bound(binding);
+            methodBindings.bindings.put(methodId, bound);
+            return bound;
+        } catch (Throwable t) {
+            // 消息体格式错误, 解码时再报告BAD_REQUEST
+            return null;
+        }
+    }
+
+    /**
+     * 一个已登记的方法绑定, 以及第一次调用时为它创建的方法调用.
+     */
+    public static final class Bound {
+
+        private final MethodBinding binding;
+
+        // 在业务线程中创建(可能要生成 FastMethodAccessor 类), 按服务实例缓存, 服务换了之后重新创建; 重复创建也没关系
+        private volatile CachedInvoker cachedInvoker;
+
+        Bound(MethodBinding binding) {
+            this.binding = binding;
+        }
+
+        public MethodBinding binding() {
+            return binding;
+        }
+
+        MethodInvoker invoker(ServiceWrapper service) {
+            CachedInvoker cached = cachedInvoker;
+            if (cached == null || cached.service != service) {
+                cached = new CachedInvoker(service, MethodInvoker.create(service, binding.getMethodName()));
+                cachedInvoker = cached;
+            }
+            return cached.invoker;
+        }
+    }
+
+    private static final class CachedInvoker {
+
+        final ServiceWrapper service;
+        final MethodInvoker invoker;    // 方法有重载时为null
+
+        CachedInvoker(ServiceWrapper service, MethodInvoker invoker) {
+            this.service = service;
+            this.invoker = invoker;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.simple.jupiter.rpc.provider.processor.task;
+
+import java.util.List;
+import com.simple.jupiter.rpc.model.metadata.ServiceWrapper;
+import com.simple.jupiter.util.FastMethodAccessor;
+import com.simple.jupiter.util.Pair;
+
+/**
+ * 预先绑定的方法调用: 方法没有重载时参数类型是确定的, 提前找到 {@link FastMethodAccessor} 中的方法下标,
+ * 调用时不需要再按参数匹配方法, 也不需要按方法名和参数类型查找下标.
+ *
+ * jupiter
+ * org.jupiter.rpc.provider.processor.task
+ */
+final class MethodInvoker {
+
+    private final FastMethodAccessor accessor;
+    private final int methodIndex;
+    private final Class<?>[] expectCauseTypes;
+
+    private MethodInvoker(FastMethodAccessor accessor, int methodIndex, Class<?>[] expectCauseTypes) {
+        this.accessor = accessor;
+        this.methodIndex = methodIndex;
+        this.expectCauseTypes = expectCauseTypes;
+    }
+
+    /**
+     * 方法有重载(需要按每次调用的参数匹配)或者找不到时返回null.
+     */
+    static MethodInvoker create(ServiceWrapper service, String methodName) {
+        List<Pair<Class<?>[], Class<?>[]>> methodExtension = service.getMethodExtension(methodName);
+        if (methodExtension == null || methodExtension.size() != 1) {
+            return null;
+        }
+
+        Pair<Class<?>[], Class<?>[]> ext = methodExtension.get(0);
+        try {
+            FastMethodAccessor accessor = FastMethodAccessor.get(service.getServiceProvider().getClass());
+            return new MethodInvoker(accessor, accessor.getIndex(methodName, ext.getFirst()), ext.getSecond());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    Object invoke(Object provider, Object[] args) {
+        return accessor.invoke(provider, methodIndex, args);
+    }
+
+    Class<?>[] expectCauseTypes() {
+        return expectCauseTypes;
+    }
+}
@@ -9,9 +9,27 @@ public interface InputBuf {
 
     ByteBuffer nioByteBuffer();
 
+    /**
+     * 从读取位置之后的 index 处拷贝 length 个字节到 dst, 不移动读取位置;
+     * 只拷贝需要的一小段, 可以在 {@link #nioByteBuffer()} 之前用来查看消息体开头的内容.
+     */
+    void getBytes(int index, byte[] dst, int dstIndex, int length);
+
     int size();
 
+    /**
+     * 消息体是否是一块连续的内存; 分片组装的大消息由多块内存组成, 这时 {@link #nioByteBuffer()} 要把整个消息体拷贝一次,
+     * 应该用 {@link #inputStream()} 流式读取.
+     */
+    boolean isContiguous();
+
     boolean hasMemoryAddress();
 
     boolean release();
+
+    /**
+     * 持有它的payload已经不再引用这个对象(见 PayloadHolder#clear()), 实现可以把它归还到对象池复用, 之后不能再访问;
+     * 还没有 {@link #release()} 的内存一并释放.
+     */
+    void recycle();
 }
@@ -0,0 +1,179 @@
+package com.simple.jupiter.serialization.kryo;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.JavaSerializer;
+import com.simple.jupiter.serialization.Serializer;
+import com.simple.jupiter.serialization.SerializerType;
+import com.simple.jupiter.serialization.io.InputBuf;
+import com.simple.jupiter.serialization.io.OutputBuf;
+import com.simple.jupiter.serialization.kryo.io.Inputs;
+import com.simple.jupiter.serialization.kryo.io.Outputs;
+import com.simple.jupiter.util.Requires;
+import com.simple.jupiter.util.SystemPropertyUtil;
+import com.simple.jupiter.util.internal.InternalThreadLocal;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+/**
+ * Kryo的序列化/反序列化实现.
+ *
+ * 1. {@link Kryo} 不是线程安全的, 每个线程一个实例(InternalThreadLocal), 创建之后一直复用.
+ * 2. 通过 {@link #register(Class, int)} 注册的类型序列化时只写一个数字id, 不写类名;
+ *      consumer 和 provider 两端必须注册相同的类型和id.
+ * 3. writeObject(OutputBuf, T) 先写入线程内复用的 byte[], 再一次性拷贝到 {@link OutputBuf#nioByteBuffer(int)};
+ *      readObject(InputBuf, Class) 对于堆内存直接读取底层的 byte[], 堆外内存一次性拷贝到线程内复用的 byte[].
+ *      不会为每次序列化/反序列化分配新的 byte[].
+ *
+ * jupiter
+ * org.jupiter.serialization.kryo
+ */
+public class KryoSerializer extends Serializer {
+
+    /**
+     * 小于这个值的id保留给kryo内置类型和框架自身.
+     */
+    public static final int MIN_REGISTRATION_ID = 100;
+
+    // 是否支持对象引用(同一个对象出现多次或者循环引用), 关闭时更快, 但是对象图中有环时会栈溢出
+    private static final boolean REFERENCES = SystemPropertyUtil.getBoolean("jupiter.serializer.kryo.references", false);
+
+    private static final List<Registration> registrations = new CopyOnWriteArrayList<>();
+    private static final List<Class<?>> useJavaSerializerTypes = new CopyOnWriteArrayList<>();
+
+    static {
+        useJavaSerializerTypes.add(Throwable.class);
+    }
+
+    private static final InternalThreadLocal<KryoHolder> kryoThreadLocal = new InternalThreadLocal<KryoHolder>() {
+
+        @Override
+        protected KryoHolder initialValue() throws Exception {
+            return newKryoHolder();
+        }
+    };
+
+    /**
+     * 注册一个类型, 序列化时用 id 代替类名.
+     *
+     * 应该在启动时(第一次序列化之前)调用, 两端注册的类型和id必须一致.
+     */
+    public static void register(Class<?> clazz, int id) {
+        Requires.requireNotNull(clazz, "clazz");
+        Requires.requireTrue(id >= MIN_REGISTRATION_ID, "id must be >= " + MIN_REGISTRATION_ID + ": " + id);
+
+        registrations.add(new Registration(clazz, id));
+    }
+
+    /**
+     * Serializes objects using Java's built in serialization mechanism.
+     * Note that this is very inefficient and should be avoided if possible.
+     *
+     * 需要在第一次序列化之前调用.
+     */
+    public static void setJavaSerializer(Class<?> clazz) {
+        useJavaSerializerTypes.add(Requires.requireNotNull(clazz, "clazz"));
+    }
+
+    @Override
+    public byte code() {
+        return SerializerType.KRYO.value();
+    }
+
+    @Override
+    public <T> OutputBuf writeObject(OutputBuf outputBuf, T obj) {
+        Output output = Outputs.getOutput();
+        try {
+            getKryo().writeObject(output, obj);
+            Outputs.writeTo(output, outputBuf);
+            return outputBuf;
+        } finally {
+            Outputs.clearOutput(output);
+        }
+    }
+
+    @Override
+    public <T> byte[] writeObject(T obj) {
+        Output output = Outputs.getOutput();
+        try {
+            getKryo().writeObject(output, obj);
+            return output.toBytes();
+        } finally {
+            Outputs.clearOutput(output);
+        }
+    }
+
+    @Override
+    public <T> T readObject(InputBuf inputBuf, Class<T> clazz) {
+        Input input = Inputs.getInput(inputBuf);
+        try {
+            return getKryo().readObject(input, clazz);
+        } finally {
+            Inputs.clearInput(input);
+            inputBuf.release();
+        }
+    }
+
+    @Override
+    public <T> T readObject(byte[] bytes, int offset, int length, Class<T> clazz) {
+        Input input = Inputs.getInput(bytes, offset, length);
+        return getKryo().readObject(input, clazz);
+    }
+
+    @Override
+    public String toString() {
+        return "kryo:(code=" + code() + ")";
+    }
+
+    private static Kryo getKryo() {
+        KryoHolder holder = kryoThreadLocal.get();
+        if (holder.registered != registrations.size()) {
+            // 线程内的Kryo创建之后又有新注册的类型, Kryo已经缓存了之前的(隐式)注册信息, 直接换一个新的
+            holder = newKryoHolder();
+            kryoThreadLocal.set(holder);
+        }
+        return holder.kryo;
+    }
+
+    private static KryoHolder newKryoHolder() {
+        Kryo kryo = new Kryo();
+        for (Class<?> type : useJavaSerializerTypes) {
+            kryo.addDefaultSerializer(type, JavaSerializer.class);
+        }
+        // 不调用构造方法直接创建对象, 没有无参构造方法的类也可以反序列化
+        kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+        kryo.setRegistrationRequired(false);
+        kryo.setReferences(REFERENCES);
+
+        int registered = 0;
+        for (Registration r : registrations) {
+            kryo.register(r.clazz, r.id);
+            registered++;
+        }
+        return new KryoHolder(kryo, registered);
+    }
+
+    private static final class KryoHolder {
+
+        final Kryo kryo;
+        final int registered;
+
+        KryoHolder(Kryo kryo, int registered) {
+            this.kryo = kryo;
+            this.registered = registered;
+        }
+    }
+
+    private static final class Registration {
+
+        final Class<?> clazz;
+        final int id;
+
+        Registration(Class<?> clazz, int id) {
+            this.clazz = clazz;
+            this.id = id;
+        }
+    }
+}
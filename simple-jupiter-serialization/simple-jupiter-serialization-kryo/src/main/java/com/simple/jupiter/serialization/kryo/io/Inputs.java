@@ -0,0 +1,62 @@
+package com.simple.jupiter.serialization.kryo.io;
+
+import java.nio.ByteBuffer;
+import static com.simple.jupiter.serialization.Serializer.DEFAULT_BUF_SIZE;
+import static com.simple.jupiter.serialization.Serializer.MAX_CACHED_BUF_SIZE;
+import com.esotericsoftware.kryo.io.Input;
+import com.simple.jupiter.serialization.io.InputBuf;
+import com.simple.jupiter.util.internal.InternalThreadLocal;
+
+public final class Inputs {
+
+    // 复用堆外内存拷贝到堆内时的 byte[]
+    private static final InternalThreadLocal<Input> inputThreadLocal = new InternalThreadLocal<Input>() {
+
+        @Override
+        protected Input initialValue() {
+            return new Input(DEFAULT_BUF_SIZE);
+        }
+    };
+
+    /**
+     * 堆内存直接读取底层的 byte[], 堆外内存一次性拷贝到线程内复用的 byte[].
+     *
+     * kryo 的 ByteBufferInput 逐字节读取堆外内存比拷贝一次再读 byte[] 还慢,
+     * UnsafeMemoryInput 使用本地字节序, 与 {@link com.esotericsoftware.kryo.io.Output} 的格式不兼容.
+     *
+     * 分片组装的大消息不是连续的内存, 流式读取, 不拷贝整个消息体.
+     */
+    public static Input getInput(InputBuf inputBuf) {
+        if (!inputBuf.isContiguous()) {
+            return new Input(inputBuf.inputStream(), DEFAULT_BUF_SIZE);
+        }
+
+        ByteBuffer nioBuffer = inputBuf.nioByteBuffer();
+        int length = nioBuffer.remaining();
+        if (nioBuffer.hasArray()) {
+            return new Input(nioBuffer.array(), nioBuffer.arrayOffset() + nioBuffer.position(), length);
+        }
+
+        Input input = inputThreadLocal.get();
+        byte[] bytes = input.getBuffer();
+        if (bytes.length < length) {
+            bytes = new byte[length];
+        }
+        nioBuffer.get(bytes, 0, length);
+        input.setBuffer(bytes, 0, length);
+        return input;
+    }
+
+    public static Input getInput(byte[] bytes, int offset, int length) {
+        return new Input(bytes, offset, length);
+    }
+
+    public static void clearInput(Input input) {
+        // 防止hold过大的内存块一直不释放
+        if (input.getBuffer().length > MAX_CACHED_BUF_SIZE) {
+            input.setBuffer(new byte[DEFAULT_BUF_SIZE]);
+        }
+    }
+
+    private Inputs() {}
+}
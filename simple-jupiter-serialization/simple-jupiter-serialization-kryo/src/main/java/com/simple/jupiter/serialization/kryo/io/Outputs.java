@@ -0,0 +1,47 @@
+package com.simple.jupiter.serialization.kryo.io;
+
+import java.nio.ByteBuffer;
+import static com.simple.jupiter.serialization.Serializer.DEFAULT_BUF_SIZE;
+import static com.simple.jupiter.serialization.Serializer.MAX_CACHED_BUF_SIZE;
+import com.esotericsoftware.kryo.io.Output;
+import com.simple.jupiter.serialization.io.OutputBuf;
+import com.simple.jupiter.util.internal.InternalThreadLocal;
+
+public final class Outputs {
+
+    // 复用 Output 中的 byte[]
+    private static final InternalThreadLocal<Output> outputThreadLocal = new InternalThreadLocal<Output>() {
+
+        @Override
+        protected Output initialValue() {
+            return new Output(DEFAULT_BUF_SIZE, -1);
+        }
+    };
+
+    public static Output getOutput() {
+        return outputThreadLocal.get();
+    }
+
+    /**
+     * 把 output 中的内容一次性拷贝到 outputBuf.
+     *
+     * kryo 的 ByteBufferOutput 每个字节都要经过 ByteBuffer 的边界检查, 直接写堆外内存比写 byte[] 再整体拷贝一次还慢;
+     * UnsafeMemoryOutput 使用本地字节序, 与 {@link Output} 的格式不兼容.
+     */
+    public static void writeTo(Output output, OutputBuf outputBuf) {
+        int length = output.position();
+        ByteBuffer nioBuffer = outputBuf.nioByteBuffer(length);
+        nioBuffer.put(output.getBuffer(), 0, length);
+    }
+
+    public static void clearOutput(Output output) {
+        output.clear(); // for reuse
+
+        // 防止hold过大的内存块一直不释放
+        if (output.getBuffer().length > MAX_CACHED_BUF_SIZE) {
+            output.setBuffer(new byte[DEFAULT_BUF_SIZE], -1);
+        }
+    }
+
+    private Outputs() {}
+}
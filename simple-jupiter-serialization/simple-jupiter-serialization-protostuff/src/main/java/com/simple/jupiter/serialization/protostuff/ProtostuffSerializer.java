@@ -0,0 +1,131 @@
+package com.simple.jupiter.serialization.protostuff;
+
+import java.io.IOException;
+import com.simple.jupiter.serialization.Serializer;
+import com.simple.jupiter.serialization.SerializerType;
+import com.simple.jupiter.serialization.io.InputBuf;
+import com.simple.jupiter.serialization.io.OutputBuf;
+import com.simple.jupiter.serialization.protostuff.io.Inputs;
+import com.simple.jupiter.serialization.protostuff.io.LinkedBuffers;
+import com.simple.jupiter.serialization.protostuff.io.Outputs;
+import com.simple.jupiter.util.SystemPropertyUtil;
+import com.simple.jupiter.util.ThrowUtil;
+import io.protostuff.Input;
+import io.protostuff.LinkedBuffer;
+import io.protostuff.Output;
+import io.protostuff.ProtostuffIOUtil;
+import io.protostuff.Schema;
+import io.protostuff.runtime.RuntimeSchema;
+
+/**
+ * Protostuff的序列化/反序列化实现.
+ *
+ * 1. schema 由 {@link RuntimeSchema#getSchema(Class)} 按类型缓存(IdStrategy中每个类型只生成一次).
+ * 2. writeObject(OutputBuf, T) 直接写入 {@link OutputBuf#nioByteBuffer(int)}, 有内存地址时用unsafe按地址写,
+ *      没有中间的 byte[], 也不经过 LinkedBuffer 的拷贝.
+ * 3. writeObject(T) 复用线程内的 {@link LinkedBuffer}.
+ *
+ * jupiter
+ * org.jupiter.serialization.protostuff
+ */
+public class ProtostuffSerializer extends Serializer {
+
+    static {
+        // 详见 io.protostuff.runtime.RuntimeEnv
+
+        // 元素类型确定的数组(比如String[])中为null的元素保留它的位置
+        String allow_null_array_element = SystemPropertyUtil
+                .get("jupiter.serializer.protostuff.allow_null_array_element", "true");
+        SystemPropertyUtil.setProperty("protostuff.runtime.allow_null_array_element", allow_null_array_element);
+
+        // 为 true 时反序列化总是通过 sun.reflect.ReflectionFactory 创建对象, 不调用无参构造方法
+        String always_use_sun_reflection_factory = SystemPropertyUtil
+                .get("jupiter.serializer.protostuff.always_use_sun_reflection_factory", "false");
+        SystemPropertyUtil.setProperty("protostuff.runtime.always_use_sun_reflection_factory", always_use_sun_reflection_factory);
+
+        // 集合/Map/非final的POJO字段是否写入具体类型, 默认不写
+        String morph_collection_interfaces = SystemPropertyUtil
+                .get("jupiter.serializer.protostuff.morph_collection_interfaces", "false");
+        SystemPropertyUtil.setProperty("protostuff.runtime.morph_collection_interfaces", morph_collection_interfaces);
+
+        String morph_map_interfaces = SystemPropertyUtil
+                .get("jupiter.serializer.protostuff.morph_map_interfaces", "false");
+        SystemPropertyUtil.setProperty("protostuff.runtime.morph_map_interfaces", morph_map_interfaces);
+
+        String morph_non_final_pojos = SystemPropertyUtil
+                .get("jupiter.serializer.protostuff.morph_non_final_pojos", "false");
+        SystemPropertyUtil.setProperty("protostuff.runtime.morph_non_final_pojos", morph_non_final_pojos);
+    }
+
+    @Override
+    public byte code() {
+        return SerializerType.PROTO_STUFF.value();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> OutputBuf writeObject(OutputBuf outputBuf, T obj) {
+        Schema<T> schema = RuntimeSchema.getSchema((Class<T>) obj.getClass());
+
+        Output output = Outputs.getOutput(outputBuf);
+        try {
+            schema.writeTo(output, obj);
+        } catch (IOException e) {
+            ThrowUtil.throwException(e);
+        }
+
+        return outputBuf;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> byte[] writeObject(T obj) {
+        Schema<T> schema = RuntimeSchema.getSchema((Class<T>) obj.getClass());
+
+        LinkedBuffer buf = LinkedBuffers.getLinkedBuffer();
+        try {
+            return ProtostuffIOUtil.toByteArray(obj, schema, buf);
+        } finally {
+            LinkedBuffers.resetBuf(buf);
+        }
+    }
+
+    @Override
+    public <T> T readObject(InputBuf inputBuf, Class<T> clazz) {
+        Schema<T> schema = RuntimeSchema.getSchema(clazz);
+        T msg = schema.newMessage();
+
+        Input input = Inputs.getInput(inputBuf);
+        try {
+            schema.mergeFrom(input, msg);
+            Inputs.checkLastTagWas(input, 0);
+        } catch (IOException e) {
+            ThrowUtil.throwException(e);
+        } finally {
+            inputBuf.release();
+        }
+
+        return msg;
+    }
+
+    @Override
+    public <T> T readObject(byte[] bytes, int offset, int length, Class<T> clazz) {
+        Schema<T> schema = RuntimeSchema.getSchema(clazz);
+        T msg = schema.newMessage();
+
+        Input input = Inputs.getInput(bytes, offset, length);
+        try {
+            schema.mergeFrom(input, msg);
+            Inputs.checkLastTagWas(input, 0);
+        } catch (IOException e) {
+            ThrowUtil.throwException(e);
+        }
+
+        return msg;
+    }
+
+    @Override
+    public String toString() {
+        return "proto_stuff:(code=" + code() + ")";
+    }
+}
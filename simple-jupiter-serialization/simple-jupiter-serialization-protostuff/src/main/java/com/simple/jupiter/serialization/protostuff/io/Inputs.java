@@ -0,0 +1,38 @@
+package com.simple.jupiter.serialization.protostuff.io;
+
+import com.simple.jupiter.serialization.io.InputBuf;
+import io.protostuff.ByteArrayInput;
+import io.protostuff.ByteBufferInput;
+import io.protostuff.CodedInput;
+import io.protostuff.Input;
+import io.protostuff.ProtobufException;
+
+public final class Inputs {
+
+    public static Input getInput(InputBuf inputBuf) {
+        if (!inputBuf.isContiguous()) {
+            // 分片组装的大消息流式读取, 不拷贝成一整块内存; CodedInput默认限制64M, 以消息体的实际长度为准
+            CodedInput input = new CodedInput(inputBuf.inputStream(), true);
+            input.setSizeLimit(inputBuf.size());
+            return input;
+        }
+        // protostuff格式, 嵌套的对象以group的方式编码
+        return new ByteBufferInput(inputBuf.nioByteBuffer(), true);
+    }
+
+    public static Input getInput(byte[] bytes, int offset, int length) {
+        return new ByteArrayInput(bytes, offset, length, true);
+    }
+
+    public static void checkLastTagWas(Input input, final int value) throws ProtobufException {
+        if (input instanceof ByteBufferInput) {
+            ((ByteBufferInput) input).checkLastTagWas(value);
+        } else if (input instanceof ByteArrayInput) {
+            ((ByteArrayInput) input).checkLastTagWas(value);
+        } else if (input instanceof CodedInput) {
+            ((CodedInput) input).checkLastTagWas(value);
+        }
+    }
+
+    private Inputs() {}
+}
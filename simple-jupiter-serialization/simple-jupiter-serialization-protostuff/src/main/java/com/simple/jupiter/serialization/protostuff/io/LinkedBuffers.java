@@ -0,0 +1,28 @@
+package com.simple.jupiter.serialization.protostuff.io;
+
+import static com.simple.jupiter.serialization.Serializer.DEFAULT_BUF_SIZE;
+import com.simple.jupiter.util.internal.InternalThreadLocal;
+import io.protostuff.LinkedBuffer;
+
+public final class LinkedBuffers {
+
+    // 复用 LinkedBuffer 中链表头结点 byte[]
+    private static final InternalThreadLocal<LinkedBuffer> bufThreadLocal = new InternalThreadLocal<LinkedBuffer>() {
+
+        @Override
+        protected LinkedBuffer initialValue() {
+            return LinkedBuffer.allocate(DEFAULT_BUF_SIZE);
+        }
+    };
+
+    public static LinkedBuffer getLinkedBuffer() {
+        return bufThreadLocal.get();
+    }
+
+    public static void resetBuf(LinkedBuffer buf) {
+        // 只保留头结点, 后面扩容出来的结点交给GC, 不会一直hold过大的内存
+        buf.clear();
+    }
+
+    private LinkedBuffers() {}
+}
@@ -0,0 +1,283 @@
+package com.simple.jupiter.serialization.protostuff.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import com.simple.jupiter.serialization.io.OutputBuf;
+import io.protostuff.ByteString;
+import io.protostuff.Output;
+import io.protostuff.Schema;
+import static io.protostuff.WireFormat.WIRETYPE_END_GROUP;
+import static io.protostuff.WireFormat.WIRETYPE_FIXED32;
+import static io.protostuff.WireFormat.WIRETYPE_FIXED64;
+import static io.protostuff.WireFormat.WIRETYPE_LENGTH_DELIMITED;
+import static io.protostuff.WireFormat.WIRETYPE_START_GROUP;
+import static io.protostuff.WireFormat.WIRETYPE_VARINT;
+import static io.protostuff.WireFormat.makeTag;
+
+/**
+ * 直接写入 {@link OutputBuf#nioByteBuffer(int)} 的 protostuff 格式输出(与 {@code io.protostuff.ProtostuffOutput} 一致,
+ * 嵌套的对象以 group 的方式编码, 不需要提前计算长度), 空间不够时由 {@link OutputBuf} 扩容.
+ *
+ * jupiter
+ * org.jupiter.serialization.protostuff.io
+ */
+public class NioBufOutput implements Output {
+
+    protected final OutputBuf outputBuf;
+    protected ByteBuffer nioBuffer;
+
+    public NioBufOutput(OutputBuf outputBuf) {
+        this.outputBuf = outputBuf;
+        updateBuffer(outputBuf.nioByteBuffer(0));
+    }
+
+    @Override
+    public void writeInt32(int fieldNumber, int value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+        if (value < 0) {
+            writeVarInt64(value);
+        } else {
+            writeVarInt32(value);
+        }
+    }
+
+    @Override
+    public void writeUInt32(int fieldNumber, int value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+        writeVarInt32(value);
+    }
+
+    @Override
+    public void writeSInt32(int fieldNumber, int value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+        writeVarInt32(encodeZigZag32(value));
+    }
+
+    @Override
+    public void writeFixed32(int fieldNumber, int value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_FIXED32));
+        writeInt32LE(value);
+    }
+
+    @Override
+    public void writeSFixed32(int fieldNumber, int value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_FIXED32));
+        writeInt32LE(value);
+    }
+
+    @Override
+    public void writeInt64(int fieldNumber, long value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+        writeVarInt64(value);
+    }
+
+    @Override
+    public void writeUInt64(int fieldNumber, long value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+        writeVarInt64(value);
+    }
+
+    @Override
+    public void writeSInt64(int fieldNumber, long value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+        writeVarInt64(encodeZigZag64(value));
+    }
+
+    @Override
+    public void writeFixed64(int fieldNumber, long value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_FIXED64));
+        writeInt64LE(value);
+    }
+
+    @Override
+    public void writeSFixed64(int fieldNumber, long value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_FIXED64));
+        writeInt64LE(value);
+    }
+
+    @Override
+    public void writeFloat(int fieldNumber, float value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_FIXED32));
+        writeInt32LE(Float.floatToRawIntBits(value));
+    }
+
+    @Override
+    public void writeDouble(int fieldNumber, double value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_FIXED64));
+        writeInt64LE(Double.doubleToRawLongBits(value));
+    }
+
+    @Override
+    public void writeBool(int fieldNumber, boolean value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+        writeByte(value ? (byte) 0x01 : 0x00);
+    }
+
+    @Override
+    public void writeEnum(int fieldNumber, int value, boolean repeated) throws IOException {
+        writeInt32(fieldNumber, value, repeated);
+    }
+
+    @Override
+    public void writeString(int fieldNumber, CharSequence value, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED));
+        int utf8Length = utf8Length(value);
+        writeVarInt32(utf8Length);
+        ensureCapacity(utf8Length);
+        writeUtf8(value, utf8Length);
+    }
+
+    @Override
+    public void writeBytes(int fieldNumber, ByteString value, boolean repeated) throws IOException {
+        writeByteArray(fieldNumber, value.toByteArray(), repeated);
+    }
+
+    @Override
+    public void writeByteArray(int fieldNumber, byte[] value, boolean repeated) throws IOException {
+        writeByteRange(false, fieldNumber, value, 0, value.length, repeated);
+    }
+
+    @Override
+    public void writeByteRange(
+            boolean utf8String, int fieldNumber, byte[] value, int offset, int length, boolean repeated) throws IOException {
+
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED));
+        writeVarInt32(length);
+        writeRawBytes(value, offset, length);
+    }
+
+    @Override
+    public <T> void writeObject(int fieldNumber, T value, Schema<T> schema, boolean repeated) throws IOException {
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_START_GROUP));
+        schema.writeTo(this, value);
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_END_GROUP));
+    }
+
+    @Override
+    public void writeBytes(int fieldNumber, ByteBuffer value, boolean repeated) throws IOException {
+        int length = value.remaining();
+        writeVarInt32(makeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED));
+        writeVarInt32(length);
+        ensureCapacity(length);
+        nioBuffer.put(value.duplicate());
+    }
+
+    protected void writeVarInt32(int value) throws IOException {
+        ensureCapacity(5);
+        while ((value & ~0x7f) != 0) {
+            nioBuffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        nioBuffer.put((byte) value);
+    }
+
+    protected void writeVarInt64(long value) throws IOException {
+        ensureCapacity(10);
+        while ((value & ~0x7fL) != 0) {
+            nioBuffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        nioBuffer.put((byte) value);
+    }
+
+    protected void writeInt32LE(int value) throws IOException {
+        ensureCapacity(4);
+        nioBuffer.putInt(value);
+    }
+
+    protected void writeInt64LE(long value) throws IOException {
+        ensureCapacity(8);
+        nioBuffer.putLong(value);
+    }
+
+    protected void writeByte(byte value) throws IOException {
+        ensureCapacity(1);
+        nioBuffer.put(value);
+    }
+
+    protected void writeRawBytes(byte[] value, int offset, int length) throws IOException {
+        ensureCapacity(length);
+        nioBuffer.put(value, offset, length);
+    }
+
+    /**
+     * 调用前已经确保有 utf8Length 个字节的空间, 编码方式与 {@code io.protostuff.StringSerializer} 一致:
+     * 合法的代理对编码为4个字节, 单独的代理字符按普通字符编码为3个字节.
+     */
+    protected void writeUtf8(CharSequence value, int utf8Length) throws IOException {
+        ByteBuffer buf = nioBuffer;
+        int length = value.length();
+        if (utf8Length == length) {
+            for (int i = 0; i < length; i++) {
+                buf.put((byte) value.charAt(i));
+            }
+            return;
+        }
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buf.put((byte) c);
+            } else if (c < 0x800) {
+                buf.put((byte) (0xc0 | (c >>> 6)));
+                buf.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buf.put((byte) (0xf0 | (codePoint >>> 18)));
+                buf.put((byte) (0x80 | ((codePoint >>> 12) & 0x3f)));
+                buf.put((byte) (0x80 | ((codePoint >>> 6) & 0x3f)));
+                buf.put((byte) (0x80 | (codePoint & 0x3f)));
+            } else {
+                buf.put((byte) (0xe0 | (c >>> 12)));
+                buf.put((byte) (0x80 | ((c >>> 6) & 0x3f)));
+                buf.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    protected final void ensureCapacity(int required) {
+        if (nioBuffer.remaining() < required) {
+            // OutputBuf 扩容之后返回新的 ByteBuffer, position 保持不变
+            updateBuffer(outputBuf.nioByteBuffer(required));
+        }
+    }
+
+    protected void updateBuffer(ByteBuffer nioBuffer) {
+        // protobuf 的定长整数是小端序
+        this.nioBuffer = nioBuffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static int utf8Length(CharSequence value) {
+        int length = value.length();
+        int utf8Length = length;
+        int i = 0;
+        // 先跳过ASCII
+        while (i < length && value.charAt(i) < 0x80) {
+            i++;
+        }
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                utf8Length += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                utf8Length += 2; // 两个字符共4个字节
+                i++;
+            } else {
+                utf8Length += 2;
+            }
+        }
+        return utf8Length;
+    }
+
+    static int encodeZigZag32(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    static long encodeZigZag64(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+}
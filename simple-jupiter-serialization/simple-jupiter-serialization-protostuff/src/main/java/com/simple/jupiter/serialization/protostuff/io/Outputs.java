@@ -0,0 +1,17 @@
+package com.simple.jupiter.serialization.protostuff.io;
+
+import com.simple.jupiter.serialization.io.OutputBuf;
+import com.simple.jupiter.util.internal.UnsafeUtil;
+import io.protostuff.Output;
+
+public final class Outputs {
+
+    public static Output getOutput(OutputBuf outputBuf) {
+        if (outputBuf.hasMemoryAddress() && UnsafeUtil.hasUnsafe()) {
+            return new UnsafeNioBufOutput(outputBuf);
+        }
+        return new NioBufOutput(outputBuf);
+    }
+
+    private Outputs() {}
+}
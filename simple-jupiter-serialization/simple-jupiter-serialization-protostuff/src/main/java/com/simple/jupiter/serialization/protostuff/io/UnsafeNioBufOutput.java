@@ -0,0 +1,97 @@
+package com.simple.jupiter.serialization.protostuff.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import com.simple.jupiter.serialization.io.OutputBuf;
+import com.simple.jupiter.util.internal.UnsafeUtil;
+
+/**
+ * {@link OutputBuf} 有内存地址(堆外内存)时, 按地址直接写入, 省掉 {@link ByteBuffer} 每次写入时的边界检查.
+ *
+ * jupiter
+ * org.jupiter.serialization.protostuff.io
+ */
+class UnsafeNioBufOutput extends NioBufOutput {
+
+    private static final boolean NATIVE_LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private long memoryAddress;
+
+    UnsafeNioBufOutput(OutputBuf outputBuf) {
+        super(outputBuf);
+    }
+
+    @Override
+    protected void writeVarInt32(int value) throws IOException {
+        ensureCapacity(5);
+        int position = nioBuffer.position();
+        long address = memoryAddress + position;
+        while ((value & ~0x7f) != 0) {
+            UnsafeUtil.putByte(address++, (byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        UnsafeUtil.putByte(address++, (byte) value);
+        nioBuffer.position((int) (address - memoryAddress));
+    }
+
+    @Override
+    protected void writeVarInt64(long value) throws IOException {
+        ensureCapacity(10);
+        int position = nioBuffer.position();
+        long address = memoryAddress + position;
+        while ((value & ~0x7fL) != 0) {
+            UnsafeUtil.putByte(address++, (byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        UnsafeUtil.putByte(address++, (byte) value);
+        nioBuffer.position((int) (address - memoryAddress));
+    }
+
+    @Override
+    protected void writeInt32LE(int value) throws IOException {
+        ensureCapacity(4);
+        int position = nioBuffer.position();
+        UnsafeUtil.putInt(memoryAddress + position, NATIVE_LITTLE_ENDIAN ? value : Integer.reverseBytes(value));
+        nioBuffer.position(position + 4);
+    }
+
+    @Override
+    protected void writeInt64LE(long value) throws IOException {
+        ensureCapacity(8);
+        int position = nioBuffer.position();
+        UnsafeUtil.putLong(memoryAddress + position, NATIVE_LITTLE_ENDIAN ? value : Long.reverseBytes(value));
+        nioBuffer.position(position + 8);
+    }
+
+    @Override
+    protected void writeByte(byte value) throws IOException {
+        ensureCapacity(1);
+        int position = nioBuffer.position();
+        UnsafeUtil.putByte(memoryAddress + position, value);
+        nioBuffer.position(position + 1);
+    }
+
+    @Override
+    protected void writeUtf8(CharSequence value, int utf8Length) throws IOException {
+        int length = value.length();
+        if (utf8Length != length) {
+            super.writeUtf8(value, utf8Length);
+            return;
+        }
+
+        // 全部是ASCII
+        int position = nioBuffer.position();
+        long address = memoryAddress + position;
+        for (int i = 0; i < length; i++) {
+            UnsafeUtil.putByte(address + i, (byte) value.charAt(i));
+        }
+        nioBuffer.position(position + length);
+    }
+
+    @Override
+    protected void updateBuffer(ByteBuffer nioBuffer) {
+        super.updateBuffer(nioBuffer);
+        memoryAddress = UnsafeUtil.addressOffset(nioBuffer);
+    }
+}
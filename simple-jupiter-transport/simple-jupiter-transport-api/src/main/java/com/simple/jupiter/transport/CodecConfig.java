@@ -16,7 +16,11 @@
 package com.simple.jupiter.transport;
 
 
+import com.simple.jupiter.transport.compress.Compressor;
+import com.simple.jupiter.transport.compress.CompressorFactory;
+import com.simple.jupiter.transport.compress.CompressorType;
 import com.simple.jupiter.util.JConstants;
+import com.simple.jupiter.util.Strings;
 
 /**
  * jupiter
@@ -26,9 +30,43 @@ import com.simple.jupiter.util.JConstants;
  */
 public final class CodecConfig {
 
+    private static final Compressor COMPRESSOR;
+
+    static {
+        String name = JConstants.CODEC_COMPRESSOR;
+        if (Strings.isBlank(name)) {
+            COMPRESSOR = null;
+        } else {
+            CompressorType type = CompressorType.parse(name);
+            if (type == null) {
+                throw new IllegalArgumentException("Unsupported compressor type: " + name);
+            }
+            COMPRESSOR = CompressorFactory.getCompressor(type.value());
+        }
+    }
+
     public static boolean isCodecLowCopy() {
         return JConstants.CODEC_LOW_COPY;
     }
 
+    public static boolean isCodecBatch() {
+        return JConstants.CODEC_LOW_COPY && JConstants.CODEC_BATCH;
+    }
+
+    public static boolean isDecoderCumulative() {
+        return JConstants.CODEC_DECODER_CUMULATIVE;
+    }
+
+    /**
+     * 发送端使用的压缩实现, 返回 null 表示不压缩.
+     */
+    public static Compressor compressor() {
+        return COMPRESSOR;
+    }
+
+    public static int compressThreshold() {
+        return JConstants.CODEC_COMPRESS_THRESHOLD;
+    }
+
     private CodecConfig() {}
 }
@@ -18,6 +18,14 @@ public abstract class JConnection {
 
     public abstract void setReconnect(boolean reconnect);
 
+    /**
+     * 对端已经恢复, 正在等待的自动重连立即发起, 没有正在等待的重连时返回false
+     */
+    public boolean reconnectNow() {
+        // the default implementation does nothing
+        return false;
+    }
+
     public interface OperationListener {
 
         void complete(boolean isSuccess);
@@ -1,5 +1,7 @@
 package com.simple.jupiter.transport;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import com.simple.jupiter.util.Maps;
@@ -33,6 +35,40 @@ public class JConnectionManager {
         list.add(connection);
     }
 
+    /**
+     * 不再管理这个连接(比如连接数收缩时主动关闭的连接), 调用方负责取消它的自动重连
+     */
+    public boolean remove(JConnection connection) {
+        CopyOnWriteArrayList<JConnection> list = connections.get(connection.getAddress());
+        return list != null && list.remove(connection);
+    }
+
+    /**
+     * 指定地址下被管理的所有连接, 取消自动重连之后返回空列表
+     */
+    public List<JConnection> connections(UnresolvedAddress address) {
+        CopyOnWriteArrayList<JConnection> list = connections.get(address);
+        return list == null ? Collections.<JConnection>emptyList() : list;
+    }
+
+
+    /**
+     * 指定地址已经恢复(比如注册中心重新推送), 正在等待的自动重连立即发起, 没有任何正在等待的重连时返回false
+     */
+    public boolean reconnectNow(UnresolvedAddress address) {
+        CopyOnWriteArrayList<JConnection> list = connections.get(address);
+        if (list == null) {
+            return false;
+        }
+        boolean reconnected = false;
+        for (JConnection c : list) {
+            reconnected |= c.reconnectNow();
+        }
+        if (reconnected) {
+            logger.info("Reconnect now to: {}.", address);
+        }
+        return reconnected;
+    }
 
     /**
      * 取消对指定地址的自动重连
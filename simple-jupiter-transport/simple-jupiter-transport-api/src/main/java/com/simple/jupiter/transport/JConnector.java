@@ -50,6 +50,11 @@ public interface JConnector<C> extends Transporter {
 
     JConnectionManager connectionManager();
 
+    /**
+     * 创建一个同机部署时通过unix domain socket连接provider的connector, 当前平台或者当前connector不支持时返回null.
+     */
+    JConnector<C> newDomainConnector();
+
     void shutdownGracefully();
 
     interface ConnectionWatcher {
@@ -0,0 +1,168 @@
+package com.simple.jupiter.transport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import com.simple.jupiter.util.Requires;
+
+/**
+ * 文件的一个区段, 可以直接作为服务方法的参数或者返回值.
+ *
+ * 序列化时只包含元数据(序号和长度), 文件内容不经过序列化, 而是在消息体之前以 FILE 帧的方式发送
+ * (netty的 {@code DefaultFileRegion}, epoll/nio 下是 sendfile/transferTo), 没有堆内存拷贝.
+ *
+ * 接收端在IO线程之外把内容写入临时文件, 拿到的是指向临时文件的 {@code JFileRegion}(交给用户之前用 {@link #awaitAll(List)}
+ * 等待写入完成), 可以用 {@link #openChannel()} 流式读取,
+ * 或者用 {@link #map()} 映射到内存; 使用完之后调用 {@link #release()} 删除临时文件.
+ *
+ * 只支持直接作为参数或者返回值, 嵌套在其他对象(集合)中时不会传输文件内容.
+ *
+ * jupiter
+ * org.jupiter.transport
+ */
+public class JFileRegion implements Serializable {
+
+    private static final long serialVersionUID = -6372531863262014316L;
+
+    private int index = -1;                 // 在所属消息中的序号
+    private long count;                     // 区段长度
+
+    private transient File file;
+    private transient long position;
+    private transient boolean temporary;    // 接收端的临时文件
+    private transient CompletableFuture<?> written; // 接收端临时文件的写入
+
+    public JFileRegion(File file) {
+        this(file, 0, Requires.requireNotNull(file, "file").length());
+    }
+
+    public JFileRegion(File file, long position, long count) {
+        Requires.requireNotNull(file, "file");
+        Requires.requireTrue(position >= 0 && count >= 0, "illegal position or count");
+
+        this.file = file;
+        this.position = position;
+        this.count = count;
+    }
+
+    // for serialization
+    private JFileRegion() {}
+
+    /**
+     * 接收端收到的临时文件, 内容在 written 完成之后才全部写入.
+     */
+    public static JFileRegion temporary(File file, long count, CompletableFuture<?> written) {
+        JFileRegion region = new JFileRegion(file, 0, count);
+        region.temporary = true;
+        region.written = written;
+        return region;
+    }
+
+    /**
+     * 等待一组接收到的文件区段全部写入临时文件, 任何一个写入失败时抛出 {@link IOException}.
+     */
+    public static void awaitAll(List<JFileRegion> regions) throws IOException {
+        if (regions == null) {
+            return;
+        }
+        for (JFileRegion region : regions) {
+            if (region.written == null) {
+                continue;
+            }
+            try {
+                region.written.join();
+            } catch (CompletionException e) {
+                throw new IOException("write file region failed: " + region.file, e.getCause());
+            }
+        }
+    }
+
+    /**
+     * 如果 obj 是接收到的 {@code JFileRegion}(只有元数据), 返回按序号对应的已接收的文件区段, 否则原样返回.
+     */
+    public static Object bind(Object obj, List<JFileRegion> received) {
+        if (obj instanceof JFileRegion && received != null) {
+            int index = ((JFileRegion) obj).index;
+            if (index >= 0 && index < received.size()) {
+                return received.get(index);
+            }
+        }
+        return obj;
+    }
+
+    /**
+     * 删除一组接收到的文件区段的临时文件, 用于消息被丢弃(没有交给用户)的情况.
+     */
+    public static void releaseAll(List<JFileRegion> regions) {
+        if (regions != null) {
+            for (JFileRegion region : regions) {
+                region.release();
+            }
+        }
+    }
+
+    public File file() {
+        return file;
+    }
+
+    public long position() {
+        return position;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public int index() {
+        return index;
+    }
+
+    public void index(int index) {
+        this.index = index;
+    }
+
+    public boolean isTemporary() {
+        return temporary;
+    }
+
+    /**
+     * 以只读方式打开文件, position 已经移到区段的开始, 由调用方负责关闭.
+     */
+    public FileChannel openChannel() throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        channel.position(position);
+        return channel;
+    }
+
+    /**
+     * 把区段映射到内存(只读), 区段不能超过 {@link Integer#MAX_VALUE}.
+     */
+    public MappedByteBuffer map() throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, count);
+        }
+    }
+
+    /**
+     * 删除接收端的临时文件, 发送端的文件不受影响.
+     */
+    public boolean release() {
+        return temporary && file != null && file.delete();
+    }
+
+    @Override
+    public String toString() {
+        return "JFileRegion{" +
+                "index=" + index +
+                ", file=" + file +
+                ", position=" + position +
+                ", count=" + count +
+                '}';
+    }
+}
@@ -18,6 +18,7 @@ package com.simple.jupiter.transport;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import com.simple.jupiter.concurrent.AffinityLayout;
 ;import com.simple.jupiter.util.AbstractConstant;
 import com.simple.jupiter.util.ConstantPool;
 
@@ -183,6 +184,37 @@ public final class JOption<T> extends AbstractConstant<JOption<T>> {
      */
     public static final JOption<Integer> IO_RATIO = valueOf("IO_RATIO");
 
+    /**
+     * IO线程(event loop)的绑核布局, 默认 {@link AffinityLayout#NONE}, 可以传入 {@link AffinityLayout} 或它的名字.
+     *
+     * 只对child(worker)线程有效, 并且需要在IO线程启动之前(bind/connect之前)设置.
+     */
+    public static final JOption<AffinityLayout> AFFINITY_LAYOUT = valueOf("AFFINITY_LAYOUT");
+
+    /**
+     * 服务端为每个连接授予的流控窗口(未完成的请求个数), 客户端发出的请求超出窗口时channel不可写,
+     * 每处理完一个请求归还一个credit. 默认 0, 不开启流控.
+     *
+     * 只对服务端的child配置有效; 旧版本的客户端不认识CREDIT消息, 开启之前要确保客户端都已经升级.
+     */
+    public static final JOption<Integer> FLOW_CONTROL_WINDOW = valueOf("FLOW_CONTROL_WINDOW");
+
+    /**
+     * 与对端协商使用v2(紧凑)协议头, 消息id和消息体长度用varint表示, 小消息的协议头从16个字节减少到5~8个字节.
+     * 默认 false; 客户端(connector)和服务端(child)都开启时才会生效, 对端是旧版本时继续使用v1协议头.
+     */
+    public static final JOption<Boolean> COMPACT_HEADER = valueOf("COMPACT_HEADER");
+
+    /**
+     * 客户端到每个服务端地址的最少/最多连接数, MAX_CONNECTIONS 大于0时开启自适应连接数:
+     * 连接上未完成的请求数或者写缓冲区积压持续偏高时增加连接, 流量持续偏低时关闭多余的连接,
+     * 连接数始终在 [MIN_CONNECTIONS, MAX_CONNECTIONS] 之内. 默认都是0, 使用服务端发布的连接数且不再调整.
+     *
+     * 只对客户端(connector)有效.
+     */
+    public static final JOption<Integer> MIN_CONNECTIONS = valueOf("MIN_CONNECTIONS");
+    public static final JOption<Integer> MAX_CONNECTIONS = valueOf("MAX_CONNECTIONS");
+
     public static final JOption<Integer> CONNECT_TIMEOUT_MILLIS = valueOf("CONNECT_TIMEOUT_MILLIS");
 
     /** ==== Netty native epoll options ============================================================================ */
@@ -337,6 +369,11 @@ public final class JOption<T> extends AbstractConstant<JOption<T>> {
         options.add(WRITE_BUFFER_HIGH_WATER_MARK);
         options.add(WRITE_BUFFER_LOW_WATER_MARK);
         options.add(IO_RATIO);
+        options.add(AFFINITY_LAYOUT);
+        options.add(FLOW_CONTROL_WINDOW);
+        options.add(COMPACT_HEADER);
+        options.add(MIN_CONNECTIONS);
+        options.add(MAX_CONNECTIONS);
         options.add(CONNECT_TIMEOUT_MILLIS);
         options.add(SO_REUSEPORT);
         options.add(TCP_CORK);
@@ -31,10 +31,36 @@ package com.simple.jupiter.transport;
  * 消息头16个字节定长
  * = 2 // magic = (short) 0xbabe
  * + 1 // 消息标志位, 低地址4位用来表示消息类型request/response/heartbeat等, 高地址4位用来表示序列化类型
- * + 1 // 状态位, 设置请求响应状态
+ * + 1 // 状态位, 设置请求响应状态, 最高位用来标识消息体是否被压缩
  * + 8 // 消息 id, long 类型, 未来jupiter可能将id限制在48位, 留出高地址的16位作为扩展字段
  * + 4 // 消息体 body 长度, int 类型
  *
+ * 压缩的消息体: 1个字节的压缩类型 + 4个字节的原始消息体长度 + 压缩后的数据
+ *
+ * 批量消息(BATCH): 协议头中的 Invoke Id 表示子消息个数, Body Size 为所有子消息的总长度,
+ * 消息体由N个子消息顺序组成, 子消息头14个字节定长(相比协议头省去了magic)
+ * = 1 // 子消息标志位
+ * + 1 // 子消息状态位
+ * + 8 // 子消息 id
+ * + 4 // 子消息体 body 长度
+ *
+ * v2(紧凑)协议头, 用于小消息, 长度不固定
+ * = 1 // magic = (byte) 0xbb, 与v1的magic首字节不同, 解码时据此区分两种协议头
+ * + 1 // 消息标志位, 同v1
+ * + 1 // 状态位, 同v1
+ * + N // 消息 id, varint(每个字节低7位有效, 最高位表示后面还有字节), 非负数
+ * + M // 消息体 body 长度, varint
+ * 只有在连接建立时协商成功之后才会发送v2协议头: 客户端发出状态位为 VERSION_2 的心跳包, 服务端回复同样的心跳包,
+ * 收到对方回复(或请求)的一端才开始使用v2编码; 旧版本会把它们当作普通心跳忽略, 所以仍然使用v1互通.
+ * 解码端随时都能同时识别v1/v2两种协议头.
+ *
+ * 分片消息(CHUNK): 超大的消息体被拆成多个帧连续发送, 除最后一帧外都是CHUNK帧, 最后一帧是普通的Request/Response,
+ * 所有帧的 Sign(序列化类型)/Status/Invoke Id 都相同, Body Size 为本帧分片的长度;
+ * 一个消息的所有分片在连接上是连续的, 中间不会夹杂其他消息.
+ *
+ * 文件区段(FILE): 参数/返回值中的 JFileRegion 不经过序列化, 其内容拆成多个FILE帧在所属的Request/Response之前连续发送,
+ * Invoke Id 与所属消息相同, Status 为 FILE_LAST 时表示一个区段的最后一帧, 区段按序号依次发送.
+ *
  * jupiter
  * org.jupiter.transport
  *
@@ -44,8 +70,17 @@ public class JProtocolHeader {
 
     /** 协议头长度 */
     public static final int HEADER_SIZE = 16;
+    /** 批量消息中子消息头长度 */
+    public static final int BATCH_SUB_HEADER_SIZE = 14;
     /** Magic */
     public static final short MAGIC = (short) 0xbabe;
+    /** v2协议头的 Magic */
+    public static final byte MAGIC_V2 = (byte) 0xbb;
+    /** v2协议头的最大长度: magic + sign + status + 9个字节的id + 5个字节的body长度 */
+    public static final int MAX_HEADER_SIZE_V2 = 17;
+
+    /** 协议版本, 通过心跳包的状态位协商, 普通心跳包的状态位是0 */
+    public static final byte VERSION_2 = 0x02;
 
     /** Message Code: 0x01 ~ 0x0f =================================================================================== */
     public static final byte REQUEST                    = 0x01;     // Request
@@ -55,10 +90,22 @@ public class JProtocolHeader {
     public static final byte SUBSCRIBE_SERVICE          = 0x05;     // 订阅服务
     public static final byte OFFLINE_NOTICE             = 0x06;     // 通知下线
     public static final byte ACK                        = 0x07;     // Acknowledge
+    public static final byte BATCH                      = 0x08;     // 批量的Request/Response
+    public static final byte CREDIT                     = 0x09;     // 流控窗口credit, Invoke Id 表示授予的credit数量
+    public static final byte CHUNK                      = 0x0a;     // 超大消息体的分片(最后一片除外)
+    public static final byte CANCEL                     = 0x0b;     // 取消请求, Invoke Id 表示被取消的请求, 没有消息体
+    public static final byte FILE                       = 0x0c;     // 文件区段(JFileRegion)的原始内容, 在所属的Request/Response之前发送
     public static final byte HEARTBEAT                  = 0x0f;     // Heartbeat
 
     private byte messageCode;       // sign 低地址4位
 
+    /** Status: 最高位标识消息体被压缩, 响应状态码 {@link Status} 都小于 0x80 ============================================== */
+    public static final byte COMPRESSED                 = (byte) 0x80;
+    /** FILE帧的状态位: 文件区段的最后一帧 */
+    public static final byte FILE_LAST                  = 0x01;
+    /** REQUEST帧的状态位: 消息体是rpc层的二进制信封格式(元数据按固定布局编码, 只有参数经过序列化), 没有这一位时是完整序列化的请求对象 */
+    public static final byte ENVELOPE                   = 0x01;
+
     /** Serializer Code: 0x01 ~ 0x0f ================================================================================ */
     // 位数限制最多支持15种不同的序列化/反序列化方式
     // protostuff   = 0x01
@@ -77,6 +124,18 @@ public class JProtocolHeader {
         return (byte) ((serializerCode << 4) | (messageCode & 0x0f));
     }
 
+    public static byte toStatus(byte status, boolean compressed) {
+        return compressed ? (byte) (status | COMPRESSED) : status;
+    }
+
+    public static boolean isCompressed(byte status) {
+        return (status & COMPRESSED) != 0;
+    }
+
+    public static byte unmaskStatus(byte status) {
+        return (byte) (status & ~COMPRESSED);
+    }
+
     public void sign(byte sign) {
         // sign 低地址4位
         this.messageCode = (byte) (sign & 0x0f);
@@ -9,7 +9,8 @@ public interface Transporter {
      */
     enum Protocol {
         TCP,
-        DOMAIN
+        DOMAIN,
+        INJVM
     }
 
 }
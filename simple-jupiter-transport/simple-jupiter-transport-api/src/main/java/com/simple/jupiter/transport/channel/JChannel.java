@@ -2,6 +2,7 @@ package com.simple.jupiter.transport.channel;
 
 import java.net.SocketAddress;
 import com.simple.jupiter.serialization.io.OutputBuf;
+import com.simple.jupiter.transport.Directory;
 
 public interface JChannel {
 
@@ -71,6 +72,36 @@ public interface JChannel {
      */
     void setAutoRead(boolean autoRead);
 
+    /**
+     * Returns the number of requests that have been written on this channel
+     * and are still waiting for their responses.
+     */
+    int inFlightRequests();
+
+    /**
+     * Increments the number of in-flight requests, called before a request is written.
+     */
+    void incrementInFlightRequests();
+
+    /**
+     * Decrements the number of in-flight requests, called when the request completes
+     * (response received, write failure or timeout).
+     */
+    void decrementInFlightRequests();
+
+    /**
+     * Returns the object attached to this channel by the upper layer
+     * (e.g. the per-connection method dictionary of rpc), or {@code null}
+     * if nothing has been attached.
+     */
+    Object attachment();
+
+    /**
+     * Attaches the given object if nothing has been attached yet.
+     * Returns the existing attachment, or {@code null} if the given one was attached.
+     */
+    Object attachIfAbsent(Object attachment);
+
     /**
      * Requests to close this {@link JChannel}.
      */
@@ -100,4 +131,21 @@ public interface JChannel {
      * Allocate a {@link OutputBuf}.
      */
     OutputBuf allocOutputBuf();
+
+    /**
+     * Allocate a {@link OutputBuf} whose capacity is predicted by the previous
+     * messages of the same service method.
+     *
+     * The {@code directory} is used as a lookup key on every call, pass a long-lived
+     * instance (whose {@link Directory#directoryString()} is cached) rather than one
+     * deserialized per message.
+     */
+    OutputBuf allocOutputBuf(Directory directory, String methodName);
+
+    /**
+     * Returns {@code true} if messages written on this channel may carry an
+     * unserialized body (see {@code PayloadHolder#body()}), which is handed
+     * to the peer by reference, e.g. a channel within the same JVM.
+     */
+    boolean acceptsBody();
 }
@@ -40,6 +40,12 @@ public interface JChannelGroup {
      */
     JChannel next();
 
+    /**
+     * Returns the {@link JChannel} reserved for large messages (the bulk lane),
+     * or {@code null} if this group has no writable bulk lane.
+     */
+    JChannel bulkLane();
+
     /**
      * Returns all {@link JChannel}s in the group.
      */
@@ -90,6 +96,12 @@ public interface JChannelGroup {
      */
     boolean isAvailable();
 
+    /**
+     * Returns true if at least one {@link JChannel} in this group is writable
+     * (its pending outbound bytes are below the high water mark).
+     */
+    boolean isWritable();
+
     /**
      * Wait until the {@link JChannel}s are available or timeout,
      * if available return true, otherwise return false.
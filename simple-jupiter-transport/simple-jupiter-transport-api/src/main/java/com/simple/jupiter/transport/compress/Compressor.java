@@ -0,0 +1,34 @@
+package com.simple.jupiter.transport.compress;
+
+/**
+ * 消息体压缩/解压缩 SPI, 通过 {@link com.simple.jupiter.util.JServiceLoader} 加载.
+ *
+ * 压缩后的消息体格式:
+ * = 1 // 压缩类型 {@link #code()}
+ * + 4 // 原始消息体长度
+ * + N // 压缩后的数据
+ *
+ * 实现类必须是线程安全的.
+ *
+ * jupiter
+ * org.jupiter.transport.compress
+ */
+public abstract class Compressor {
+
+    public abstract byte code();
+
+    /**
+     * 长度为 length 的数据压缩后可能的最大长度, dst 至少需要预留这么多的空间.
+     */
+    public abstract int maxCompressedLength(int length);
+
+    /**
+     * 压缩 src 写入 dst, 返回压缩后的长度.
+     */
+    public abstract int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset);
+
+    /**
+     * 解压 src 写入 dst, 解压后的长度必须刚好是 dstLength.
+     */
+    public abstract void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength);
+}
@@ -0,0 +1,39 @@
+package com.simple.jupiter.transport.compress;
+
+import com.simple.jupiter.util.JServiceLoader;
+import com.simple.jupiter.util.collection.ByteObjectHashMap;
+import com.simple.jupiter.util.collection.ByteObjectMap;
+import com.simple.jupiter.util.internal.logging.InternalLogger;
+import com.simple.jupiter.util.internal.logging.InternalLoggerFactory;
+
+public final class CompressorFactory {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(CompressorFactory.class);
+
+    private static final ByteObjectMap<Compressor> compressors = new ByteObjectHashMap<>();
+
+    static {
+        Iterable<Compressor> all = JServiceLoader.load(Compressor.class);
+        for (Compressor c : all) {
+            compressors.put(c.code(), c);
+        }
+        logger.info("Supported compressors: {}.", compressors);
+    }
+
+    public static Compressor getCompressor(byte code) {
+        Compressor compressor = compressors.get(code);
+
+        if (compressor == null) {
+            CompressorType type = CompressorType.parse(code);
+            if (type != null) {
+                throw new IllegalArgumentException("Compressor implementation [" + type.name() + "] not found");
+            } else {
+                throw new IllegalArgumentException("Unsupported compressor type with code: " + code);
+            }
+        }
+
+        return compressor;
+    }
+
+    private CompressorFactory() {}
+}
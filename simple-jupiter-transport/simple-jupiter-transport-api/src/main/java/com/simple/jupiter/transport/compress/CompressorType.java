@@ -0,0 +1,46 @@
+package com.simple.jupiter.transport.compress;
+
+/**
+ * 压缩类型, 取值范围为: 0x01 ~ 0x7f.
+ *
+ * jupiter
+ * org.jupiter.transport.compress
+ */
+public enum CompressorType {
+    DEFLATE     ((byte) 0x01),      // JDK Deflater, 压缩率高
+    LZ          ((byte) 0x02)       // 纯java实现的LZ77, 速度快
+    // ...
+    ;
+
+    private final byte value;
+
+    CompressorType(byte value) {
+        if (0x00 < value) {
+            this.value = value;
+        } else {
+            throw new IllegalArgumentException("Out of range(0x01 ~ 0x7f): " + value);
+        }
+    }
+
+    public byte value() {
+        return value;
+    }
+
+    public static CompressorType parse(String name) {
+        for (CompressorType c : values()) {
+            if (c.name().equalsIgnoreCase(name)) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    public static CompressorType parse(byte value) {
+        for (CompressorType c : values()) {
+            if (c.value() == value) {
+                return c;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,94 @@
+package com.simple.jupiter.transport.compress;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import com.simple.jupiter.util.SystemPropertyUtil;
+import com.simple.jupiter.util.internal.InternalThreadLocal;
+
+/**
+ * 基于JDK {@link Deflater} 的压缩实现, Deflater/Inflater 线程内复用.
+ *
+ * jupiter
+ * org.jupiter.transport.compress
+ */
+public class DeflateCompressor extends Compressor {
+
+    // 压缩级别 0 ~ 9
+    private static final int LEVEL = SystemPropertyUtil.getInt("jupiter.io.compress.deflate.level", Deflater.BEST_SPEED);
+
+    private static final InternalThreadLocal<Deflater> deflaterThreadLocal = new InternalThreadLocal<Deflater>() {
+
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(LEVEL);
+        }
+    };
+
+    private static final InternalThreadLocal<Inflater> inflaterThreadLocal = new InternalThreadLocal<Inflater>() {
+
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    @Override
+    public byte code() {
+        return CompressorType.DEFLATE.value();
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        // zlib compressBound()
+        return length + (length >>> 12) + (length >>> 14) + (length >>> 25) + 13;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset) {
+        Deflater deflater = deflaterThreadLocal.get();
+        try {
+            deflater.setInput(src, srcOffset, srcLength);
+            deflater.finish();
+            int n = 0;
+            while (!deflater.finished()) {
+                int remaining = dst.length - dstOffset - n;
+                if (remaining <= 0) {
+                    throw new IllegalStateException("Insufficient space in destination buffer");
+                }
+                n += deflater.deflate(dst, dstOffset + n, remaining);
+            }
+            return n;
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+        Inflater inflater = inflaterThreadLocal.get();
+        try {
+            inflater.setInput(src, srcOffset, srcLength);
+            int n = 0;
+            while (n < dstLength && !inflater.finished()) {
+                int r = inflater.inflate(dst, dstOffset + n, dstLength - n);
+                if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += r;
+            }
+            if (n != dstLength) {
+                throw new IllegalArgumentException("Malformed deflate input, expected length: " + dstLength);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException(e);
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DeflateCompressor{level=" + LEVEL + '}';
+    }
+}
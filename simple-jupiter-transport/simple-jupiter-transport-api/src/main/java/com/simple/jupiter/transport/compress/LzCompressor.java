@@ -0,0 +1,227 @@
+package com.simple.jupiter.transport.compress;
+
+import com.simple.jupiter.util.internal.InternalThreadLocal;
+
+/**
+ * 纯java实现的LZ77压缩, 块格式与 LZ4 block format 一致:
+ *
+ * <pre>
+ * sequence = token(1) + [literal length(0~n)] + literals + offset(2, little-endian) + [match length(0~n)]
+ * token    = 高4位 literal length, 低4位 match length - 4, 值为15时后面跟随扩展长度字节(每个字节累加, 直到不是255)
+ * </pre>
+ *
+ * 最后一个 sequence 只有 literals, 没有 offset 和 match length.
+ *
+ * 只做单遍 hash 查找, 不追求压缩率, 速度远快于 {@link DeflateCompressor}.
+ *
+ * jupiter
+ * org.jupiter.transport.compress
+ */
+public class LzCompressor extends Compressor {
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_DISTANCE = 0xffff;
+    private static final int LAST_LITERALS = 5;     // 最后5个字节必须是literals
+    private static final int MF_LIMIT = 12;         // 最后一个match必须在结尾12个字节之前开始
+    private static final int HASH_LOG = 14;
+    private static final int ML_MASK = 0x0f;
+    private static final int RUN_MASK = 0x0f;
+
+    // hash table 线程内复用, 表中残留的旧数据不影响正确性, 每次命中都会重新校验
+    private static final InternalThreadLocal<int[]> hashTableThreadLocal = new InternalThreadLocal<int[]>() {
+
+        @Override
+        protected int[] initialValue() {
+            return new int[1 << HASH_LOG];
+        }
+    };
+
+    @Override
+    public byte code() {
+        return CompressorType.LZ.value();
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset) {
+        final int srcEnd = srcOffset + srcLength;
+        int dOff = dstOffset;
+        int anchor = srcOffset;
+
+        if (srcLength > MF_LIMIT) {
+            final int[] hashTable = hashTableThreadLocal.get();
+            final int mfLimit = srcEnd - MF_LIMIT;
+            final int matchLimit = srcEnd - LAST_LITERALS;
+
+            hashTable[hash(readInt(src, srcOffset))] = srcOffset;
+            int sOff = srcOffset + 1;
+            while (sOff < mfLimit) {
+                int sequence = readInt(src, sOff);
+                int h = hash(sequence);
+                int ref = hashTable[h];
+                hashTable[h] = sOff;
+
+                if (ref < srcOffset || ref >= sOff || sOff - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                    sOff++;
+                    continue;
+                }
+
+                // 向前扩展
+                while (sOff > anchor && ref > srcOffset && src[sOff - 1] == src[ref - 1]) {
+                    sOff--;
+                    ref--;
+                }
+
+                // 向后扩展
+                int matchLength = MIN_MATCH;
+                while (sOff + matchLength < matchLimit && src[sOff + matchLength] == src[ref + matchLength]) {
+                    matchLength++;
+                }
+
+                dOff = writeSequence(src, anchor, sOff - anchor, sOff - ref, matchLength, dst, dOff);
+
+                sOff += matchLength;
+                anchor = sOff;
+
+                if (sOff < mfLimit) {
+                    hashTable[hash(readInt(src, sOff - 2))] = sOff - 2;
+                }
+            }
+        }
+
+        dOff = writeLastLiterals(src, anchor, srcEnd - anchor, dst, dOff);
+
+        return dOff - dstOffset;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+        final int srcEnd = srcOffset + srcLength;
+        final int dstEnd = dstOffset + dstLength;
+        int sOff = srcOffset;
+        int dOff = dstOffset;
+
+        try {
+            while (sOff < srcEnd) {
+                int token = src[sOff++] & 0xff;
+
+                // literals
+                int literalLength = token >>> 4;
+                if (literalLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[sOff++] & 0xff;
+                        literalLength += b;
+                    } while (b == 0xff);
+                }
+                if (sOff + literalLength > srcEnd || dOff + literalLength > dstEnd) {
+                    throw malformed(sOff);
+                }
+                System.arraycopy(src, sOff, dst, dOff, literalLength);
+                sOff += literalLength;
+                dOff += literalLength;
+
+                if (sOff == srcEnd) {
+                    break; // last literals
+                }
+
+                // match
+                int offset = (src[sOff++] & 0xff) | ((src[sOff++] & 0xff) << 8);
+                int matchLength = token & ML_MASK;
+                if (matchLength == ML_MASK) {
+                    int b;
+                    do {
+                        b = src[sOff++] & 0xff;
+                        matchLength += b;
+                    } while (b == 0xff);
+                }
+                matchLength += MIN_MATCH;
+
+                int ref = dOff - offset;
+                if (offset == 0 || ref < dstOffset || dOff + matchLength > dstEnd) {
+                    throw malformed(sOff);
+                }
+                // 可能重叠, 只能逐字节拷贝
+                for (int i = 0; i < matchLength; i++) {
+                    dst[dOff + i] = dst[ref + i];
+                }
+                dOff += matchLength;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw malformed(sOff);
+        }
+
+        if (dOff != dstEnd) {
+            throw new IllegalArgumentException("Malformed lz input, expected length: " + dstLength + ", actual: " + (dOff - dstOffset));
+        }
+    }
+
+    private static int writeSequence(byte[] src, int literalOffset, int literalLength, int offset, int matchLength, byte[] dst, int dOff) {
+        int tokenOff = dOff++;
+        int token;
+
+        if (literalLength >= RUN_MASK) {
+            token = RUN_MASK << 4;
+            dOff = writeLength(literalLength - RUN_MASK, dst, dOff);
+        } else {
+            token = literalLength << 4;
+        }
+        System.arraycopy(src, literalOffset, dst, dOff, literalLength);
+        dOff += literalLength;
+
+        dst[dOff++] = (byte) offset;
+        dst[dOff++] = (byte) (offset >>> 8);
+
+        int ml = matchLength - MIN_MATCH;
+        if (ml >= ML_MASK) {
+            token |= ML_MASK;
+            dOff = writeLength(ml - ML_MASK, dst, dOff);
+        } else {
+            token |= ml;
+        }
+        dst[tokenOff] = (byte) token;
+
+        return dOff;
+    }
+
+    private static int writeLastLiterals(byte[] src, int literalOffset, int literalLength, byte[] dst, int dOff) {
+        if (literalLength >= RUN_MASK) {
+            dst[dOff++] = (byte) (RUN_MASK << 4);
+            dOff = writeLength(literalLength - RUN_MASK, dst, dOff);
+        } else {
+            dst[dOff++] = (byte) (literalLength << 4);
+        }
+        System.arraycopy(src, literalOffset, dst, dOff, literalLength);
+        return dOff + literalLength;
+    }
+
+    private static int writeLength(int length, byte[] dst, int dOff) {
+        while (length >= 0xff) {
+            dst[dOff++] = (byte) 0xff;
+            length -= 0xff;
+        }
+        dst[dOff++] = (byte) length;
+        return dOff;
+    }
+
+    private static int readInt(byte[] buf, int i) {
+        return (buf[i] & 0xff) | ((buf[i + 1] & 0xff) << 8) | ((buf[i + 2] & 0xff) << 16) | (buf[i + 3] << 24);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static IllegalArgumentException malformed(int offset) {
+        return new IllegalArgumentException("Malformed lz input at: " + offset);
+    }
+
+    @Override
+    public String toString() {
+        return "LzCompressor";
+    }
+}
@@ -38,4 +38,12 @@ public class IoSignals {
     public static final Signal READER_IDLE      = Signal.valueOf(IoSignals.class, "READER_IDLE");
     /** Protocol body 太大 */
     public static final Signal BODY_TOO_LARGE   = Signal.valueOf(IoSignals.class, "BODY_TOO_LARGE");
+    /** 错误的v2协议头 */
+    public static final Signal ILLEGAL_HEADER   = Signal.valueOf(IoSignals.class, "ILLEGAL_HEADER");
+    /** 分片消息不连续 */
+    public static final Signal ILLEGAL_CHUNK    = Signal.valueOf(IoSignals.class, "ILLEGAL_CHUNK");
+    /** 进程内正在组装的分片消息总量超过限制 */
+    public static final Signal TOO_MANY_CHUNKS  = Signal.valueOf(IoSignals.class, "TOO_MANY_CHUNKS");
+    /** 文件区段不连续, 或者写入临时文件失败 */
+    public static final Signal ILLEGAL_FILE     = Signal.valueOf(IoSignals.class, "ILLEGAL_FILE");
 }
@@ -0,0 +1,59 @@
+package com.simple.jupiter.transport.injvm;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import com.simple.jupiter.serialization.io.InputBuf;
+
+/**
+ * {@link InJvmChannel} 交给对端的 {@link InputBuf}, 用于上层已经序列化过的消息体.
+ *
+ * jupiter
+ * org.jupiter.transport.injvm
+ */
+final class HeapInputBuf implements InputBuf {
+
+    private final byte[] bytes;
+
+    HeapInputBuf(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public InputStream inputStream() {
+        return new ByteArrayInputStream(bytes);
+    }
+
+    @Override
+    public ByteBuffer nioByteBuffer() {
+        return ByteBuffer.wrap(bytes);
+    }
+
+    @Override
+    public void getBytes(int index, byte[] dst, int dstIndex, int length) {
+        System.arraycopy(bytes, index, dst, dstIndex, length);
+    }
+
+    @Override
+    public int size() {
+        return bytes.length;
+    }
+
+    @Override
+    public boolean isContiguous() {
+        return true;
+    }
+
+    @Override
+    public boolean hasMemoryAddress() {
+        return false;
+    }
+
+    @Override
+    public boolean release() {
+        return true;
+    }
+
+    @Override
+    public void recycle() {}
+}
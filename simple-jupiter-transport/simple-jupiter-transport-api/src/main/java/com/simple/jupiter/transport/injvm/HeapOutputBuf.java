@@ -0,0 +1,94 @@
+package com.simple.jupiter.transport.injvm;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import com.simple.jupiter.serialization.io.OutputBuf;
+
+/**
+ * {@link InJvmChannel} 分配的 {@link OutputBuf}, 底层是一个按需扩容的 byte[].
+ *
+ * 通过 {@link #nioByteBuffer(int)} 写入的内容在下一次 {@link #outputStream()} 或者 {@link #toByteArray()} 时提交.
+ *
+ * jupiter
+ * org.jupiter.transport.injvm
+ */
+final class HeapOutputBuf implements OutputBuf {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private byte[] buf = new byte[INITIAL_CAPACITY];
+    private int count;                  // 已经提交的长度
+    private ByteBuffer nioByteBuffer;   // 从 count 开始的视图, position 是还没有提交的长度
+
+    @Override
+    public OutputStream outputStream() {
+        commit();
+        return new OutputStream() {
+
+            @Override
+            public void write(int b) {
+                ensureCapacity(count + 1);
+                buf[count++] = (byte) b;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                ensureCapacity(count + len);
+                System.arraycopy(b, off, buf, count, len);
+                count += len;
+            }
+        };
+    }
+
+    @Override
+    public ByteBuffer nioByteBuffer(int minWritableBytes) {
+        if (minWritableBytes < 0) {
+            minWritableBytes = buf.length - count;
+        }
+
+        int position = nioByteBuffer == null ? 0 : nioByteBuffer.position();
+        if (nioByteBuffer != null && nioByteBuffer.remaining() >= minWritableBytes) {
+            return nioByteBuffer;
+        }
+
+        // 扩容时还没有提交的内容一起拷贝
+        ensureCapacity(count + position + minWritableBytes);
+        nioByteBuffer = ByteBuffer.wrap(buf, count, buf.length - count).slice();
+        nioByteBuffer.position(position);
+        return nioByteBuffer;
+    }
+
+    @Override
+    public int size() {
+        return nioByteBuffer == null ? count : count + nioByteBuffer.position();
+    }
+
+    @Override
+    public boolean hasMemoryAddress() {
+        return false;
+    }
+
+    @Override
+    public Object backingObject() {
+        return toByteArray();
+    }
+
+    byte[] toByteArray() {
+        commit();
+        return Arrays.copyOf(buf, count);
+    }
+
+    private void commit() {
+        if (nioByteBuffer != null) {
+            count += nioByteBuffer.position();
+            nioByteBuffer = null;
+        }
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(minCapacity, buf.length << 1));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.simple.jupiter.transport.injvm;
+
+import java.net.SocketAddress;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import com.simple.jupiter.transport.JAcceptor;
+import com.simple.jupiter.transport.JConfigGroup;
+import com.simple.jupiter.transport.processor.ProviderProcessor;
+import com.simple.jupiter.util.Maps;
+import com.simple.jupiter.util.internal.logging.InternalLogger;
+import com.simple.jupiter.util.internal.logging.InternalLoggerFactory;
+
+/**
+ * 同一个JVM内的 acceptor, 不监听任何socket, start之后把自己注册到进程内的全局表中,
+ * {@link InJvmConnector} 通过端口找到它并直接把请求交给 {@link ProviderProcessor}.
+ *
+ * 端口不能区分进程(SO_REUSEPORT 时多个进程可以绑定同一个端口), provider发布服务时同时发布 {@link #instanceId()},
+ * consumer只有在标识与自己相同时才认为provider在当前JVM内.
+ *
+ * jupiter
+ * org.jupiter.transport.injvm
+ */
+public class InJvmAcceptor implements JAcceptor {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(InJvmAcceptor.class);
+
+    // 当前JVM(准确的说是加载这个类的ClassLoader, 与 acceptors 的范围相同)的标识
+    private static final String INSTANCE_ID = UUID.randomUUID().toString();
+
+    // port -> acceptor
+    private static final ConcurrentMap<Integer, InJvmAcceptor> acceptors = Maps.newConcurrentMap();
+
+    private final InJvmAddress localAddress;
+
+    private ProviderProcessor processor;
+
+    public InJvmAcceptor(int port) {
+        this.localAddress = new InJvmAddress(port);
+    }
+
+    /**
+     * 当前JVM的标识, 每次启动都不同.
+     */
+    public static String instanceId() {
+        return INSTANCE_ID;
+    }
+
+    /**
+     * 查找当前JVM内绑定在指定端口上的 acceptor, 不存在时返回null.
+     */
+    public static InJvmAcceptor lookup(int port) {
+        return acceptors.get(port);
+    }
+
+    @Override
+    public Protocol protocol() {
+        return Protocol.INJVM;
+    }
+
+    @Override
+    public SocketAddress localAddress() {
+        return localAddress;
+    }
+
+    @Override
+    public int boundPort() {
+        return localAddress.getPort();
+    }
+
+    @Override
+    public JConfigGroup configGroup() {
+        return InJvmConfig.INSTANCE;
+    }
+
+    @Override
+    public ProviderProcessor processor() {
+        return processor;
+    }
+
+    @Override
+    public void withProcessor(ProviderProcessor processor) {
+        this.processor = processor;
+    }
+
+    @Override
+    public void start() throws InterruptedException {
+        start(false);
+    }
+
+    @Override
+    public void start(boolean sync) throws InterruptedException {
+        InJvmAcceptor old = acceptors.putIfAbsent(localAddress.getPort(), this);
+        if (old != null && old != this) {
+            throw new IllegalStateException("Address already in use: " + localAddress);
+        }
+
+        logger.info("Jupiter injvm server start on: {}.", localAddress);
+
+        // 没有需要等待关闭的socket, sync 参数被忽略
+    }
+
+    @Override
+    public void shutdownGracefully() {
+        acceptors.remove(localAddress.getPort(), this);
+    }
+
+    @Override
+    public String toString() {
+        return "InJvmAcceptor{" +
+                "localAddress=" + localAddress +
+                '}';
+    }
+}
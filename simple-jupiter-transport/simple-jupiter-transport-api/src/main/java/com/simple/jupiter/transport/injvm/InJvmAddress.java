@@ -0,0 +1,51 @@
+package com.simple.jupiter.transport.injvm;
+
+import java.net.SocketAddress;
+import com.simple.jupiter.transport.UnresolvedAddress;
+
+/**
+ * 同一个JVM内的地址, 以provider绑定的tcp端口作为标识(同一个JVM内一个端口只有一个 {@link InJvmAcceptor}).
+ *
+ * jupiter
+ * org.jupiter.transport.injvm
+ */
+public class InJvmAddress extends SocketAddress implements UnresolvedAddress {
+
+    private static final long serialVersionUID = -6143402938432416571L;
+
+    private final int port;
+
+    public InJvmAddress(int port) {
+        this.port = port;
+    }
+
+    @Override
+    public String getHost() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public String getPath() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof InJvmAddress && ((InJvmAddress) o).port == port;
+    }
+
+    @Override
+    public int hashCode() {
+        return port;
+    }
+
+    @Override
+    public String toString() {
+        return "injvm:" + port;
+    }
+}
@@ -0,0 +1,322 @@
+package com.simple.jupiter.transport.injvm;
+
+import java.net.SocketAddress;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import com.simple.jupiter.serialization.Serializer;
+import com.simple.jupiter.serialization.SerializerFactory;
+import com.simple.jupiter.serialization.io.OutputBuf;
+import com.simple.jupiter.transport.CodecConfig;
+import com.simple.jupiter.transport.Directory;
+import com.simple.jupiter.transport.channel.JChannel;
+import com.simple.jupiter.transport.channel.JFutureListener;
+import com.simple.jupiter.transport.payload.JCancelPayload;
+import com.simple.jupiter.transport.payload.JRequestPayload;
+import com.simple.jupiter.transport.payload.JResponsePayload;
+import com.simple.jupiter.transport.payload.PayloadHolder;
+import com.simple.jupiter.transport.processor.ConsumerProcessor;
+import com.simple.jupiter.transport.processor.ProviderProcessor;
+import com.simple.jupiter.util.StackTraceUtil;
+import com.simple.jupiter.util.SystemClock;
+import com.simple.jupiter.util.SystemPropertyUtil;
+import com.simple.jupiter.util.internal.logging.InternalLogger;
+import com.simple.jupiter.util.internal.logging.InternalLoggerFactory;
+
+/**
+ * 同一个JVM内的 {@link JChannel}, 总是成对创建(consumer端/provider端), 写入一端的消息直接交给另一端的 processor 处理,
+ * 不经过任何编解码和IO线程.
+ *
+ * {@link #acceptsBody()} 返回true, 上层不做序列化, 消息携带 {@link PayloadHolder#body()} 直接传递对象引用;
+ * 设置 -Djupiter.rpc.injvm.copy=true 时会通过序列化/反序列化做一次深拷贝, 避免调用双方共享可变对象.
+ * 上层已经序列化过的消息(bytes, 或者 {@link #allocOutputBuf()} 分配的 outputBuf)按字节交给对端.
+ *
+ * jupiter
+ * org.jupiter.transport.injvm
+ */
+public class InJvmChannel implements JChannel {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(InJvmChannel.class);
+
+    private static final boolean COPY = SystemPropertyUtil.getBoolean("jupiter.rpc.injvm.copy", false);
+
+    private static final AtomicInteger idGenerator = new AtomicInteger();
+
+    /**
+     * 创建一对相连的channel, [0]为consumer端, [1]为provider端.
+     */
+    static InJvmChannel[] newPair(InJvmAddress address, ConsumerProcessor consumerProcessor, ProviderProcessor providerProcessor) {
+        String id = "injvm-" + Integer.toHexString(idGenerator.getAndIncrement());
+        InJvmChannel consumerSide = new InJvmChannel(id, address, consumerProcessor, null);
+        InJvmChannel providerSide = new InJvmChannel(id, address, null, providerProcessor);
+        consumerSide.peer = providerSide;
+        providerSide.peer = consumerSide;
+        return new InJvmChannel[] { consumerSide, providerSide };
+    }
+
+    private final String id;
+    private final InJvmAddress address;
+    // 二者只有一个不为null, 处理从peer端写过来的消息
+    private final ConsumerProcessor consumerProcessor;
+    private final ProviderProcessor providerProcessor;
+
+    private final CopyOnWriteArrayList<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+
+    private InJvmChannel peer;
+
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+
+    private final AtomicReference<Object> attachment = new AtomicReference<>();
+
+    private volatile boolean active = true;
+    private volatile boolean autoRead = true;
+
+    private InJvmChannel(String id, InJvmAddress address,
+                         ConsumerProcessor consumerProcessor, ProviderProcessor providerProcessor) {
+        this.id = id;
+        this.address = address;
+        this.consumerProcessor = consumerProcessor;
+        this.providerProcessor = providerProcessor;
+    }
+
+    @Override
+    public String id() {
+        return id;
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public boolean inIoThread() {
+        return false;
+    }
+
+    @Override
+    public SocketAddress localAddress() {
+        return address;
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+        return address;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return active;
+    }
+
+    @Override
+    public boolean isMarkedReconnect() {
+        return false;
+    }
+
+    @Override
+    public boolean isAutoRead() {
+        return autoRead;
+    }
+
+    @Override
+    public void setAutoRead(boolean autoRead) {
+        this.autoRead = autoRead;
+    }
+
+    @Override
+    public int inFlightRequests() {
+        return inFlightRequests.get();
+    }
+
+    @Override
+    public void incrementInFlightRequests() {
+        inFlightRequests.getAndIncrement();
+    }
+
+    @Override
+    public void decrementInFlightRequests() {
+        inFlightRequests.getAndDecrement();
+    }
+
+    @Override
+    public Object attachment() {
+        return attachment.get();
+    }
+
+    @Override
+    public Object attachIfAbsent(Object attachment) {
+        if (this.attachment.compareAndSet(null, attachment)) {
+            return null;
+        }
+        return this.attachment.get();
+    }
+
+    @Override
+    public JChannel close() {
+        // provider端拒绝服务时会主动关闭连接促使consumer重连到别的机器, 对injvm来说没有意义, 只有consumer端可以关闭
+        if (consumerProcessor != null && active) {
+            active = false;
+            peer.active = false;
+            for (Runnable listener : closeListeners) {
+                listener.run();
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public JChannel close(JFutureListener<JChannel> listener) {
+        close();
+        notifySuccess(listener);
+        return this;
+    }
+
+    @Override
+    public JChannel write(Object msg) {
+        return write(msg, null);
+    }
+
+    @Override
+    public JChannel write(Object msg, JFutureListener<JChannel> listener) {
+        PayloadHolder payload;
+        try {
+            if (!active) {
+                throw new IllegalStateException("Channel closed: " + this);
+            }
+
+            if (msg instanceof JRequestPayload) {
+                JRequestPayload request = (JRequestPayload) msg;
+                JRequestPayload newRequest = new JRequestPayload(request.invokeId());
+                newRequest.status(request.status());
+                newRequest.timestamp(SystemClock.millisClock().now());
+                payload = newRequest;
+            } else if (msg instanceof JResponsePayload) {
+                JResponsePayload response = (JResponsePayload) msg;
+                JResponsePayload newResponse = new JResponsePayload(response.id());
+                newResponse.status(response.status());
+                payload = newResponse;
+            } else if (msg instanceof JCancelPayload) {
+                // 没有消息体
+                payload = new JCancelPayload(((JCancelPayload) msg).invokeId());
+            } else {
+                throw new IllegalArgumentException("Unsupported message type: " + msg.getClass().getName());
+            }
+            if (!(payload instanceof JCancelPayload)) {
+                transfer((PayloadHolder) msg, payload);
+            }
+        } catch (Throwable t) {
+            notifyFailure(listener, t);
+            return this;
+        }
+
+        // 消息已经交到对端, 之后处理过程中的异常与写无关
+        notifySuccess(listener);
+
+        try {
+            if (payload instanceof JRequestPayload) {
+                peer.providerProcessor.handleRequest(peer, (JRequestPayload) payload);
+            } else if (payload instanceof JCancelPayload) {
+                peer.providerProcessor.handleCancel(peer, (JCancelPayload) payload);
+            } else {
+                peer.consumerProcessor.handleResponse(peer, (JResponsePayload) payload);
+            }
+        } catch (Throwable t) {
+            logger.error("Handle message failed on {}, {}.", peer, StackTraceUtil.stackTrace(t));
+        }
+        return this;
+    }
+
+    /**
+     * 没有IO线程, 直接在当前线程执行.
+     */
+    @Override
+    public void addTask(Runnable task) {
+        task.run();
+    }
+
+    /**
+     * 消息体不需要序列化, 只有上层没有判断 {@link #acceptsBody()} 时才会用到, 分配一个普通的堆内存buf.
+     */
+    @Override
+    public OutputBuf allocOutputBuf() {
+        return new HeapOutputBuf();
+    }
+
+    @Override
+    public OutputBuf allocOutputBuf(Directory directory, String methodName) {
+        return new HeapOutputBuf();
+    }
+
+    @Override
+    public boolean acceptsBody() {
+        return true;
+    }
+
+    void addCloseListener(Runnable listener) {
+        closeListeners.add(listener);
+    }
+
+    @Override
+    public String toString() {
+        return "InJvmChannel{" +
+                "id=" + id +
+                ", address=" + address +
+                ", side=" + (consumerProcessor != null ? "consumer" : "provider") +
+                ", active=" + active +
+                '}';
+    }
+
+    private static void transfer(PayloadHolder src, PayloadHolder dst) {
+        byte s_code = src.serializerCode();
+        Object body = src.body();
+        if (body != null) {
+            dst.body(s_code, COPY ? deepCopy(s_code, body) : body);
+            return;
+        }
+
+        byte[] bytes = src.bytes();
+        if (bytes == null) {
+            OutputBuf outputBuf = src.outputBuf();
+            if (!(outputBuf instanceof HeapOutputBuf)) {
+                throw new UnsupportedOperationException("outputBuf not allocated by injvm channel: " + outputBuf);
+            }
+            bytes = ((HeapOutputBuf) outputBuf).toByteArray();
+        }
+        if (CodecConfig.isCodecLowCopy()) {
+            dst.inputBuf(s_code, new HeapInputBuf(bytes));
+        } else {
+            dst.bytes(s_code, bytes);
+        }
+        // 对端收到的是发送端的文件区段本身, 不是临时文件
+        dst.fileRegions(src.fileRegions());
+    }
+
+    private static Object deepCopy(byte s_code, Object body) {
+        Serializer serializer = SerializerFactory.getSerializer(s_code);
+        return serializer.readObject(serializer.writeObject(body), body.getClass());
+    }
+
+    private void notifySuccess(JFutureListener<JChannel> listener) {
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.operationSuccess(this);
+        } catch (Throwable t) {
+            logger.warn("An exception was thrown by {}#operationSuccess.", listener.getClass().getName(), t);
+        }
+    }
+
+    private void notifyFailure(JFutureListener<JChannel> listener, Throwable cause) {
+        if (listener == null) {
+            logger.warn("Writes fail on {}, {}.", this, cause);
+            return;
+        }
+        try {
+            listener.operationFailure(this, cause);
+        } catch (Throwable t) {
+            logger.warn("An exception was thrown by {}#operationFailure.", listener.getClass().getName(), t);
+        }
+    }
+}
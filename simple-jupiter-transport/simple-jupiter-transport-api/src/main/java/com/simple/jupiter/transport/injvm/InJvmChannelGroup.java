@@ -0,0 +1,246 @@
+package com.simple.jupiter.transport.injvm;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import com.simple.jupiter.transport.Directory;
+import com.simple.jupiter.transport.UnresolvedAddress;
+import com.simple.jupiter.transport.channel.JChannel;
+import com.simple.jupiter.transport.channel.JChannelGroup;
+import com.simple.jupiter.util.IntSequence;
+import com.simple.jupiter.util.JConstants;
+import com.simple.jupiter.util.Lists;
+import com.simple.jupiter.util.Maps;
+import com.simple.jupiter.util.Requires;
+import com.simple.jupiter.util.SystemClock;
+
+/**
+ * {@link InJvmChannel} 的 group, injvm 的连接是同步建立的, 不需要等待.
+ *
+ * jupiter
+ * org.jupiter.transport.injvm
+ */
+public class InJvmChannelGroup implements JChannelGroup {
+
+    private final ConcurrentLinkedQueue<Runnable> waitAvailableListeners = new ConcurrentLinkedQueue<>();
+
+    private final UnresolvedAddress address;
+
+    private final CopyOnWriteArrayList<InJvmChannel> channels = new CopyOnWriteArrayList<>();
+
+    private final IntSequence sequence = new IntSequence();
+
+    private final ConcurrentMap<String, Integer> weights = Maps.newConcurrentMap();
+
+    private volatile boolean connecting = false;
+
+    private volatile int capacity = Integer.MAX_VALUE;
+    private volatile int warmUp = JConstants.DEFAULT_WARM_UP; // warm-up time
+    private volatile long timestamp = SystemClock.millisClock().now();
+    private volatile long deadlineMillis = -1;
+
+    public InJvmChannelGroup(UnresolvedAddress address) {
+        this.address = address;
+    }
+
+    @Override
+    public UnresolvedAddress remoteAddress() {
+        return address;
+    }
+
+    @Override
+    public JChannel next() {
+        Object[] elements = channels.toArray();
+        int length = elements.length;
+        if (length == 0) {
+            throw new IllegalStateException("No channel");
+        }
+        if (length == 1) {
+            return (JChannel) elements[0];
+        }
+        int index = sequence.next() & Integer.MAX_VALUE;
+        return (JChannel) elements[index % length];
+    }
+
+    /**
+     * 没有网络传输, 不存在队头阻塞.
+     */
+    @Override
+    public JChannel bulkLane() {
+        return null;
+    }
+
+    @Override
+    public List<? extends JChannel> channels() {
+        return Lists.newArrayList(channels);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return channels.isEmpty();
+    }
+
+    @Override
+    public boolean add(JChannel channel) {
+        boolean added = channel instanceof InJvmChannel && channels.add((InJvmChannel) channel);
+        if (added) {
+            timestamp = SystemClock.millisClock().now(); // reset timestamp
+            deadlineMillis = -1;
+
+            ((InJvmChannel) channel).addCloseListener(() -> remove(channel));
+
+            notifyListeners();
+        }
+        return added;
+    }
+
+    @Override
+    public boolean remove(JChannel channel) {
+        boolean removed = channel instanceof InJvmChannel && channels.remove(channel);
+        if (removed) {
+            timestamp = SystemClock.millisClock().now(); // reset timestamp
+
+            if (channels.isEmpty()) {
+                deadlineMillis = SystemClock.millisClock().now();
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public int size() {
+        return channels.size();
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public boolean isConnecting() {
+        return connecting;
+    }
+
+    @Override
+    public void setConnecting(boolean connecting) {
+        this.connecting = connecting;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return !channels.isEmpty();
+    }
+
+    @Override
+    public boolean isWritable() {
+        // 没有发送缓冲区
+        return isAvailable();
+    }
+
+    @Override
+    public boolean waitForAvailable(long timeoutMillis) {
+        // 连接是同步建立的, 等待没有意义
+        return isAvailable();
+    }
+
+    @Override
+    public void onAvailable(Runnable listener) {
+        waitAvailableListeners.add(listener);
+        if (isAvailable()) {
+            notifyListeners();
+        }
+    }
+
+    @Override
+    public int getWeight(Directory directory) {
+        Requires.requireNotNull(directory, "directory");
+
+        Integer weight = weights.get(directory.directoryString());
+        return weight == null ? JConstants.DEFAULT_WEIGHT : weight;
+    }
+
+    @Override
+    public void putWeight(Directory directory, int weight) {
+        Requires.requireNotNull(directory, "directory");
+
+        if (weight == JConstants.DEFAULT_WEIGHT) {
+            // the default value does not need to be stored
+            return;
+        }
+        weights.put(directory.directoryString(), weight > JConstants.MAX_WEIGHT ? JConstants.MAX_WEIGHT : weight);
+    }
+
+    @Override
+    public void removeWeight(Directory directory) {
+        Requires.requireNotNull(directory, "directory");
+
+        weights.remove(directory.directoryString());
+    }
+
+    @Override
+    public int getWarmUp() {
+        return warmUp > 0 ? warmUp : 0;
+    }
+
+    @Override
+    public void setWarmUp(int warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    @Override
+    public boolean isWarmUpComplete() {
+        return SystemClock.millisClock().now() - timestamp > warmUp;
+    }
+
+    @Override
+    public long timestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public long deadlineMillis() {
+        return deadlineMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        InJvmChannelGroup that = (InJvmChannelGroup) o;
+
+        return address.equals(that.address);
+    }
+
+    @Override
+    public int hashCode() {
+        return address.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "InJvmChannelGroup{" +
+                "address=" + address +
+                ", channels=" + channels +
+                ", weights=" + weights +
+                ", warmUp=" + warmUp +
+                '}';
+    }
+
+    void notifyListeners() {
+        for (;;) {
+            Runnable listener = waitAvailableListeners.poll();
+            if (listener == null) {
+                break;
+            }
+            listener.run();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.simple.jupiter.transport.injvm;
+
+import java.util.Collections;
+import java.util.List;
+import com.simple.jupiter.transport.JConfig;
+import com.simple.jupiter.transport.JConfigGroup;
+import com.simple.jupiter.transport.JOption;
+
+/**
+ * injvm 没有socket, 所有的 {@link JOption} 都不适用.
+ *
+ * jupiter
+ * org.jupiter.transport.injvm
+ */
+final class InJvmConfig implements JConfig, JConfigGroup {
+
+    static final InJvmConfig INSTANCE = new InJvmConfig();
+
+    @Override
+    public JConfig parent() {
+        return this;
+    }
+
+    @Override
+    public JConfig child() {
+        return this;
+    }
+
+    @Override
+    public List<JOption<?>> getOptions() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public <T> T getOption(JOption<T> option) {
+        return null;
+    }
+
+    @Override
+    public <T> boolean setOption(JOption<T> option, T value) {
+        return false;
+    }
+
+    private InJvmConfig() {}
+}
@@ -0,0 +1,174 @@
+package com.simple.jupiter.transport.injvm;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentMap;
+import com.simple.jupiter.transport.Directory;
+import com.simple.jupiter.transport.JConfig;
+import com.simple.jupiter.transport.JConnection;
+import com.simple.jupiter.transport.JConnectionManager;
+import com.simple.jupiter.transport.JConnector;
+import com.simple.jupiter.transport.UnresolvedAddress;
+import com.simple.jupiter.transport.channel.CopyOnWriteGroupList;
+import com.simple.jupiter.transport.channel.DirectoryJChannelGroup;
+import com.simple.jupiter.transport.channel.JChannel;
+import com.simple.jupiter.transport.channel.JChannelGroup;
+import com.simple.jupiter.transport.exception.ConnectFailedException;
+import com.simple.jupiter.transport.processor.ConsumerProcessor;
+import com.simple.jupiter.util.Maps;
+import com.simple.jupiter.util.Requires;
+import com.simple.jupiter.util.internal.logging.InternalLogger;
+import com.simple.jupiter.util.internal.logging.InternalLoggerFactory;
+
+/**
+ * 同一个JVM内的 connector, 通过端口找到 {@link InJvmAcceptor}, 创建一对 {@link InJvmChannel},
+ * 连接是同步建立的, 也不需要重连.
+ *
+ * jupiter
+ * org.jupiter.transport.injvm
+ */
+public class InJvmConnector implements JConnector<JConnection> {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(InJvmConnector.class);
+
+    private final ConcurrentMap<UnresolvedAddress, JChannelGroup> addressGroups = Maps.newConcurrentMap();
+    private final DirectoryJChannelGroup directoryGroup = new DirectoryJChannelGroup();
+    private final JConnectionManager connectionManager = new JConnectionManager();
+
+    private ConsumerProcessor processor;
+
+    @Override
+    public Protocol protocol() {
+        return Protocol.INJVM;
+    }
+
+    @Override
+    public JConfig config() {
+        return InJvmConfig.INSTANCE;
+    }
+
+    @Override
+    public ConsumerProcessor processor() {
+        return processor;
+    }
+
+    @Override
+    public void withProcessor(ConsumerProcessor processor) {
+        this.processor = processor;
+    }
+
+    @Override
+    public JConnection connect(UnresolvedAddress address) {
+        return connect(address, false);
+    }
+
+    @Override
+    public JConnection connect(UnresolvedAddress address, boolean async) {
+        InJvmAcceptor acceptor = InJvmAcceptor.lookup(address.getPort());
+        if (acceptor == null || acceptor.processor() == null) {
+            throw new ConnectFailedException("No injvm acceptor on: " + address);
+        }
+
+        InJvmChannel[] pair = InJvmChannel.newPair(new InJvmAddress(address.getPort()), processor, acceptor.processor());
+        final InJvmChannel channel = pair[0];
+        group(address).add(channel);
+
+        return new JConnection(address) {
+
+            @Override
+            public void setReconnect(boolean reconnect) {
+                // injvm 没有重连
+            }
+
+            @Override
+            public void operationComplete(OperationListener operationListener) {
+                operationListener.complete(channel.isActive());
+            }
+        };
+    }
+
+    @Override
+    public JChannelGroup group(UnresolvedAddress address) {
+        Requires.requireNotNull(address, "address");
+
+        JChannelGroup group = addressGroups.get(address);
+        if (group == null) {
+            JChannelGroup newGroup = new InJvmChannelGroup(address);
+            group = addressGroups.putIfAbsent(address, newGroup);
+            if (group == null) {
+                group = newGroup;
+            }
+        }
+        return group;
+    }
+
+    @Override
+    public Collection<JChannelGroup> groups() {
+        return addressGroups.values();
+    }
+
+    @Override
+    public boolean addChannelGroup(Directory directory, JChannelGroup group) {
+        CopyOnWriteGroupList groups = directory(directory);
+        boolean added = groups.addIfAbsent(group);
+        if (added) {
+            if (logger.isInfoEnabled()) {
+                logger.info("Added channel group: {} to {}.", group, directory.directoryString());
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public boolean removeChannelGroup(Directory directory, JChannelGroup group) {
+        CopyOnWriteGroupList groups = directory(directory);
+        boolean removed = groups.remove(group);
+        if (removed) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Removed channel group: {} in directory: {}.", group, directory.directoryString());
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public CopyOnWriteGroupList directory(Directory directory) {
+        return directoryGroup.find(directory);
+    }
+
+    @Override
+    public boolean isDirectoryAvailable(Directory directory) {
+        CopyOnWriteGroupList groups = directory(directory);
+        JChannelGroup[] snapshot = groups.getSnapshot();
+        for (JChannelGroup g : snapshot) {
+            if (g.isAvailable()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public DirectoryJChannelGroup directoryGroup() {
+        return directoryGroup;
+    }
+
+    @Override
+    public JConnectionManager connectionManager() {
+        return connectionManager;
+    }
+
+    @Override
+    public JConnector<JConnection> newDomainConnector() {
+        return null;
+    }
+
+    @Override
+    public void shutdownGracefully() {
+        for (JChannelGroup group : addressGroups.values()) {
+            for (JChannel channel : group.channels()) {
+                channel.close();
+            }
+        }
+        // processor 与 tcp connector 共用, 由 tcp connector 负责关闭
+    }
+}
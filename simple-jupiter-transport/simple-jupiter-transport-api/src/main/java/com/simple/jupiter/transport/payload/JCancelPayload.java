@@ -0,0 +1,31 @@
+package com.simple.jupiter.transport.payload;
+
+/**
+ * 取消请求(CANCEL), consumer放弃等待某个请求的响应(超时)时发给provider, 只有invoke id, 没有消息体.
+ *
+ * provider收到后丢弃还在排队的请求, 正在执行的请求只打上取消标记, 由业务/filter决定是否提前结束,
+ * 见 ProviderProcessor#handleCancel.
+ *
+ * jupiter
+ * org.jupiter.transport.payload
+ */
+public class JCancelPayload extends PayloadHolder {
+
+    // 被取消的请求id
+    private final long invokeId;
+
+    public JCancelPayload(long invokeId) {
+        this.invokeId = invokeId;
+    }
+
+    public long invokeId() {
+        return invokeId;
+    }
+
+    @Override
+    public String toString() {
+        return "JCancelPayload{" +
+                "invokeId=" + invokeId +
+                '}';
+    }
+}
@@ -15,6 +15,8 @@ public class JRequestPayload extends PayloadHolder{
 
     // 用于映射 <id, request, response> 三元组
     private final long invokeId;
+    // 请求的状态位(不含压缩标志), 目前只用来标识消息体的格式, 见 JProtocolHeader#ENVELOPE
+    private byte status;
     // jupiter-transport层会在协议解析完成后打上一个时间戳, 用于后续监控对该请求的处理时间
     private transient long timestamp;
 
@@ -30,6 +32,14 @@ public class JRequestPayload extends PayloadHolder{
         return invokeId;
     }
 
+    public byte status() {
+        return status;
+    }
+
+    public void status(byte status) {
+        this.status = status;
+    }
+
     public long timestamp() {
         return timestamp;
     }
@@ -1,8 +1,9 @@
 package com.simple.jupiter.transport.payload;
 
-
+import java.util.List;
 import com.simple.jupiter.serialization.io.InputBuf;
 import com.simple.jupiter.serialization.io.OutputBuf;
+import com.simple.jupiter.transport.JFileRegion;
 
 /**
  * 消息体bytes/stream载体, 避免在IO线程中序列化/反序列化, jupiter-transport这一层不关注消息体的对象结构.
@@ -27,6 +28,10 @@ public abstract class PayloadHolder {
     private byte[] bytes;
     private InputBuf inputBuf;
     private OutputBuf outputBuf;
+    // 同一个JVM内(injvm)传递的未经序列化的对象
+    private Object body;
+    // 消息体之外单独发送的文件区段, 按序号排列
+    private List<JFileRegion> fileRegions;
 
     public byte serializerCode() {
         return serializerCode;
@@ -54,16 +59,49 @@ public abstract class PayloadHolder {
         return outputBuf;
     }
 
+    /**
+     * 取走 outputBuf, 之后payload不再引用它; 由encoder调用, outputBuf交出 {@link OutputBuf#backingObject()} 之后会被回收复用.
+     */
+    public OutputBuf detachOutputBuf() {
+        OutputBuf buf = outputBuf;
+        outputBuf = null;
+        return buf;
+    }
+
     public void outputBuf(byte serializerCode, OutputBuf outputBuf) {
         this.serializerCode = serializerCode;
         this.outputBuf = outputBuf;
     }
 
+    public Object body() {
+        return body;
+    }
+
+    public void body(byte serializerCode, Object body) {
+        this.serializerCode = serializerCode;
+        this.body = body;
+    }
+
+    public List<JFileRegion> fileRegions() {
+        return fileRegions;
+    }
+
+    public void fileRegions(List<JFileRegion> fileRegions) {
+        this.fileRegions = fileRegions;
+    }
+
     // help gc
     public void clear() {
         bytes = null;
-        inputBuf = null;
+        InputBuf buf = inputBuf;
+        if (buf != null) {
+            // 先断开引用再回收, 回收之后payload不会再访问到被复用的对象
+            inputBuf = null;
+            buf.recycle();
+        }
         outputBuf = null;
+        body = null;
+        fileRegions = null;
     }
 
     public int size() {
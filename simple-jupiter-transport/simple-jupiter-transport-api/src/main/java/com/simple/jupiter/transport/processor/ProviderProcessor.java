@@ -2,6 +2,7 @@ package com.simple.jupiter.transport.processor;
 
 import com.simple.jupiter.transport.Status;
 import com.simple.jupiter.transport.channel.JChannel;
+import com.simple.jupiter.transport.payload.JCancelPayload;
 import com.simple.jupiter.transport.payload.JRequestPayload;
 
 public interface ProviderProcessor {
@@ -11,6 +12,11 @@ public interface ProviderProcessor {
      */
     void handleRequest(JChannel channel, JRequestPayload request) throws Exception;
 
+    /**
+     * 处理取消请求, consumer已经不再等待该请求的响应
+     */
+    void handleCancel(JChannel channel, JCancelPayload cancel);
+
     /**
      * 处理异常
      */
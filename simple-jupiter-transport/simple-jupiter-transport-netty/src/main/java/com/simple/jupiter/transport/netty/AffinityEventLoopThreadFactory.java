@@ -0,0 +1,59 @@
+package com.simple.jupiter.transport.netty;
+
+import java.util.concurrent.ThreadFactory;
+import com.simple.jupiter.concurrent.AffinityLayout;
+import com.simple.jupiter.concurrent.AffinityNamedThreadFactory;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.FastThreadLocalThread;
+
+/**
+ * IO线程(event loop)的 {@link ThreadFactory}, 根据 {@link AffinityLayout} 决定是否绑核.
+ *
+ * EventLoopGroup 在 acceptor/connector 构造时就创建了, 那时用户还没有机会设置 {@link com.simple.jupiter.transport.JOption},
+ * 但 event loop 线程是在第一次提交任务(register channel)时才创建的, 所以在 bind/connect 之前设置的布局仍然有效.
+ *
+ * jupiter
+ * org.jupiter.transport.netty
+ */
+final class AffinityEventLoopThreadFactory implements ThreadFactory {
+
+    private final String name;
+    private final String anchor;
+    private final int priority;
+    private final ThreadFactory defaultFactory;
+
+    private volatile AffinityLayout layout = AffinityLayout.NONE;
+    private volatile ThreadFactory affinityFactory;
+
+    AffinityEventLoopThreadFactory(String name, String anchor, int priority) {
+        this.name = name;
+        this.anchor = anchor;
+        this.priority = priority;
+        this.defaultFactory = new DefaultThreadFactory(name, priority);
+    }
+
+    synchronized void layout(AffinityLayout layout) {
+        if (layout == null || layout == this.layout) {
+            return;
+        }
+        this.layout = layout;
+        if (layout == AffinityLayout.NONE) {
+            affinityFactory = null;
+        } else {
+            affinityFactory = new AffinityNamedThreadFactory(name, priority, layout.ioStrategies()) {
+
+                @Override
+                protected Thread wrapThread(ThreadGroup group, Runnable r, String name) {
+                    // 与 DefaultThreadFactory 一样使用 FastThreadLocalThread
+                    return new FastThreadLocalThread(group, r, name);
+                }
+            }.publishAnchor(anchor);
+        }
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        ThreadFactory f = affinityFactory;
+        return f == null ? defaultFactory.newThread(r) : f.newThread(r);
+    }
+}
@@ -0,0 +1,128 @@
+package com.simple.jupiter.transport.netty;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import com.simple.jupiter.transport.JConfig;
+import com.simple.jupiter.transport.JConnection;
+import com.simple.jupiter.transport.JConnectionManager;
+import com.simple.jupiter.transport.JOption;
+import com.simple.jupiter.transport.UnresolvedAddress;
+import com.simple.jupiter.transport.channel.JChannelGroup;
+import com.simple.jupiter.transport.netty.channel.NettyChannel;
+import com.simple.jupiter.transport.netty.channel.NettyChannelGroup;
+import com.simple.jupiter.transport.netty.handler.connector.ConnectionWatchdog;
+import com.simple.jupiter.util.StackTraceUtil;
+import com.simple.jupiter.util.SystemPropertyUtil;
+import com.simple.jupiter.util.internal.logging.InternalLogger;
+import com.simple.jupiter.util.internal.logging.InternalLoggerFactory;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+/**
+ * 自适应连接数({@link JOption#MIN_CONNECTIONS}, {@link JOption#MAX_CONNECTIONS}),
+ * 在connector的timer中周期性地检查每个 {@link NettyChannelGroup} 的负载, 增加或者关闭连接, 具体策略见
+ * {@link NettyChannelGroup#scale(int, int)}.
+ *
+ * 关闭的连接先从group中移除, 等上面已经发出的请求都完成之后再真正关闭; 请求最终总会完成(响应, 写失败或者超时),
+ * 所以不会一直等下去.
+ *
+ * jupiter
+ * org.jupiter.transport.netty
+ */
+final class ConnectionScaler implements TimerTask {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(ConnectionScaler.class);
+
+    // 采样周期
+    private static final long INTERVAL_MILLIS = SystemPropertyUtil.getLong("jupiter.io.connection.scale.interval.millis", 5000);
+    private final NettyConnector connector;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    // 已经从group中移除, 等待关闭的连接, 只在timer线程中访问
+    private final List<NettyChannel> drainings = new ArrayList<>();
+
+    ConnectionScaler(NettyConnector connector) {
+        this.connector = connector;
+    }
+
+    void start() {
+        if (started.compareAndSet(false, true)) {
+            connector.timer.newTimeout(this, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void run(Timeout timeout) throws Exception {
+        try {
+            closeDrained();
+
+            JConfig config = connector.config();
+            int max = config.getOption(JOption.MAX_CONNECTIONS);
+            if (max > 0) {
+                int min = Math.min(Math.max(config.getOption(JOption.MIN_CONNECTIONS), 1), max);
+                for (JChannelGroup group : connector.groups()) {
+                    if (group instanceof NettyChannelGroup && !group.isConnecting()) {
+                        scale((NettyChannelGroup) group, min, max);
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            logger.error("Scale connections failed: {}.", StackTraceUtil.stackTrace(t));
+        } finally {
+            timeout.timer().newTimeout(this, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void scale(NettyChannelGroup group, int min, int max) {
+        UnresolvedAddress address = group.remoteAddress();
+        JConnectionManager connectionManager = connector.connectionManager();
+        List<JConnection> connections = connectionManager.connections(address);
+        if (connections.isEmpty()) {
+            // 已经取消了自动重连(服务端下线或者不再订阅)
+            return;
+        }
+
+        int hint = group.scale(min, max);
+        if (hint > 0) {
+            JConnection connection = connector.connect(address, true);
+            connectionManager.manage(connection);
+
+            logger.info("Scale up connections to {}, capacity: {}.", address, group.getCapacity());
+        } else if (hint < 0) {
+            NettyChannel channel = group.detachIdlest();
+            if (channel == null) {
+                return;
+            }
+            // 先取消自动重连, 关闭时不再补回来
+            ConnectionWatchdog watchdog = channel.channel().pipeline().get(ConnectionWatchdog.class);
+            if (watchdog != null) {
+                watchdog.stop();
+            }
+            for (JConnection connection : connections) {
+                if (connection instanceof JNettyConnection
+                        && ((JNettyConnection) connection).getFuture().channel() == channel.channel()) {
+                    connectionManager.remove(connection);
+                    break;
+                }
+            }
+            drainings.add(channel);
+
+            logger.info("Scale down connections to {}, capacity: {}.", address, group.getCapacity());
+        }
+    }
+
+    private void closeDrained() {
+        for (Iterator<NettyChannel> it = drainings.iterator(); it.hasNext(); ) {
+            NettyChannel channel = it.next();
+            if (!channel.isActive()) {
+                // 已经被对端或者其他原因关闭
+                it.remove();
+            } else if (channel.inFlightRequests() <= 0) {
+                it.remove();
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.simple.jupiter.transport.netty;
+
+import com.simple.jupiter.transport.JProtocolHeader;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * 基于credit的流控消息(CREDIT), 由服务端发给客户端, 没有消息体,
+ * 协议头中的 Invoke Id 表示本次授予的credit数量(请求个数).
+ *
+ * 服务端在连接建立时授予初始窗口(JOption.FLOW_CONTROL_WINDOW), 之后每处理完一个请求(写出响应)归还一个credit;
+ * 客户端每发出一个请求消耗一个credit, credit用完时channel不可写, 见 NettyChannel#isWritable().
+ *
+ * 客户端在收到第一个CREDIT之前不做限制(但会计入已经发出的请求), 所以没有开启流控的服务端不受影响;
+ * 但旧版本的客户端不认识CREDIT消息, 服务端开启流控之前要确保客户端都已经升级.
+ *
+ * jupiter
+ * org.jupiter.transport.netty
+ */
+public class Credits {
+
+    public static ByteBuf creditContent(ByteBufAllocator alloc, int credits) {
+        ByteBuf buf = alloc.buffer(JProtocolHeader.HEADER_SIZE);
+        buf.writeShort(JProtocolHeader.MAGIC);
+        buf.writeByte(JProtocolHeader.CREDIT); // 忽略高地址的4位序列化/反序列化标志
+        buf.writeByte(0);
+        buf.writeLong(credits);
+        buf.writeInt(0);
+        return buf;
+    }
+
+    /**
+     * 解码后的CREDIT消息.
+     */
+    public static final class Grant {
+
+        private final int credits;
+
+        public Grant(int credits) {
+            this.credits = credits;
+        }
+
+        public int credits() {
+            return credits;
+        }
+
+        @Override
+        public String toString() {
+            return "Grant{" +
+                    "credits=" + credits +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.simple.jupiter.transport.netty;
+
+import com.simple.jupiter.transport.JProtocolHeader;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+/**
+ * 协议版本协商, 借用心跳包(HEARTBEAT)实现: 状态位表示发送方支持的最高协议版本, 普通心跳包的状态位是0.
+ *
+ * 旧版本会把它当作普通心跳包忽略, 所以协商失败时双方继续使用v1协议头, 见 {@link JProtocolHeader}.
+ *
+ * jupiter
+ * org.jupiter.transport.netty
+ */
+public class Handshakes {
+
+    /** channel可以使用v2(紧凑)协议头编码, 由 HandshakeHandler 在协商成功后设置, encoder读取 */
+    public static final AttributeKey<Boolean> COMPACT_HEADER = AttributeKey.valueOf("jupiter.compact.header");
+
+    private static final ByteBuf HELLO_V2_BUF;
+
+    static {
+        ByteBuf buf = Unpooled.buffer(JProtocolHeader.HEADER_SIZE);
+        buf.writeShort(JProtocolHeader.MAGIC);
+        buf.writeByte(JProtocolHeader.HEARTBEAT);
+        buf.writeByte(JProtocolHeader.VERSION_2);
+        buf.writeLong(0);
+        buf.writeInt(0);
+        HELLO_V2_BUF = Unpooled.unreleasableBuffer(buf).asReadOnly();
+    }
+
+    public static ByteBuf helloContent() {
+        return HELLO_V2_BUF.duplicate();
+    }
+
+    public static boolean isCompactHeader(Channel ch) {
+        Boolean compact = ch.attr(COMPACT_HEADER).get();
+        return compact != null && compact;
+    }
+
+    /**
+     * 解码后的协商消息(状态位不为0的心跳包).
+     */
+    public static final class Hello {
+
+        private final byte version;
+
+        public Hello(byte version) {
+            this.version = version;
+        }
+
+        public byte version() {
+            return version;
+        }
+
+        @Override
+        public String toString() {
+            return "Hello{" +
+                    "version=" + version +
+                    '}';
+        }
+    }
+}
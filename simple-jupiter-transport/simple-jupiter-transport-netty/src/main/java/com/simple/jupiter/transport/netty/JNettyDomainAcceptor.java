@@ -16,8 +16,10 @@
 package com.simple.jupiter.transport.netty;
 
 import com.simple.jupiter.transport.CodecConfig;
+import com.simple.jupiter.transport.JOption;
 import com.simple.jupiter.transport.netty.handler.*;
 import com.simple.jupiter.transport.netty.handler.acceptor.AcceptorHandler;
+import com.simple.jupiter.transport.netty.handler.acceptor.CreditGrantHandler;
 import com.simple.jupiter.transport.netty.handler.acceptor.AcceptorIdleStateTrigger;
 import com.simple.jupiter.transport.processor.ProviderProcessor;
 import com.simple.jupiter.util.JConstants;
@@ -108,11 +110,18 @@ public class JNettyDomainAcceptor extends NettyDomainAcceptor {
             protected void initChannel(Channel ch) throws Exception {
                 ch.pipeline().addLast(
                         new FlushConsolidationHandler(JConstants.EXPLICIT_FLUSH_AFTER_FLUSHES, true),
-                        new IdleStateChecker(timer, JConstants.READER_IDLE_TIME_SECONDS, 0, 0),
+                        new IdleStateChecker(JConstants.READER_IDLE_TIME_SECONDS, 0, 0),
                         idleStateTrigger,
-                        CodecConfig.isCodecLowCopy() ? new LowCopyProtocolDecoder() : new ProtocolDecoder(),
-                        encoder,
+                        ProtocolDecoders.newDecoder(),
+                        CodecConfig.isCodecBatch() ? new LowCopyBatchProtocolEncoder((LowCopyProtocolEncoder) encoder) : encoder,
+                        new HandshakeHandler(false, configGroup().child().getOption(JOption.COMPACT_HEADER)),
                         handler);
+
+                int window = configGroup().child().getOption(JOption.FLOW_CONTROL_WINDOW);
+                if (window > 0) {
+                    // 在encoder之后, 才能看到业务写出的响应
+                    ch.pipeline().addBefore(ch.pipeline().context(handler).name(), null, new CreditGrantHandler(window));
+                }
             }
         });
 
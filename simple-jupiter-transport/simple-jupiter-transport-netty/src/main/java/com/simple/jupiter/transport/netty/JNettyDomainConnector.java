@@ -23,10 +23,11 @@ import com.simple.jupiter.transport.JOption;
 import com.simple.jupiter.transport.UnresolvedAddress;
 import com.simple.jupiter.transport.channel.JChannelGroup;
 import com.simple.jupiter.transport.exception.ConnectFailedException;
+import com.simple.jupiter.transport.netty.handler.HandshakeHandler;
 import com.simple.jupiter.transport.netty.handler.IdleStateChecker;
-import com.simple.jupiter.transport.netty.handler.LowCopyProtocolDecoder;
+import com.simple.jupiter.transport.netty.handler.LowCopyBatchProtocolEncoder;
 import com.simple.jupiter.transport.netty.handler.LowCopyProtocolEncoder;
-import com.simple.jupiter.transport.netty.handler.ProtocolDecoder;
+import com.simple.jupiter.transport.netty.handler.ProtocolDecoders;
 import com.simple.jupiter.transport.netty.handler.ProtocolEncoder;
 import com.simple.jupiter.transport.netty.handler.connector.ConnectionWatchdog;
 import com.simple.jupiter.transport.netty.handler.connector.ConnectorHandler;
@@ -139,19 +140,21 @@ public class JNettyDomainConnector extends NettyDomainConnector {
         final Bootstrap boot = bootstrap();
         final SocketAddress socketAddress = new DomainSocketAddress(address.getPath());
         final JChannelGroup group = group(address);
+        final HandshakeHandler handshakeHandler = new HandshakeHandler(true, config().getOption(JOption.COMPACT_HEADER));
 
         // 重连watchdog
-        final ConnectionWatchdog watchdog = new ConnectionWatchdog(boot, timer, socketAddress, group) {
+        final ConnectionWatchdog watchdog = new ConnectionWatchdog(boot, reconnectScheduler, socketAddress, group) {
 
             @Override
             public ChannelHandler[] handlers() {
                 return new ChannelHandler[] {
                         new FlushConsolidationHandler(JConstants.EXPLICIT_FLUSH_AFTER_FLUSHES, true),
                         this,
-                        new IdleStateChecker(timer, 0, JConstants.WRITER_IDLE_TIME_SECONDS, 0),
+                        new IdleStateChecker(0, JConstants.WRITER_IDLE_TIME_SECONDS, 0),
                         idleStateTrigger,
-                        CodecConfig.isCodecLowCopy() ? new LowCopyProtocolDecoder() : new ProtocolDecoder(),
-                        encoder,
+                        ProtocolDecoders.newDecoder(),
+                        CodecConfig.isCodecBatch() ? new LowCopyBatchProtocolEncoder((LowCopyProtocolEncoder) encoder) : encoder,
+                        handshakeHandler,
                         handler
                 };
             }
@@ -189,6 +192,11 @@ public class JNettyDomainConnector extends NettyDomainConnector {
                     watchdog.stop();
                 }
             }
+
+            @Override
+            public boolean reconnectNow() {
+                return watchdog.reconnectNow();
+            }
         };
     }
 }
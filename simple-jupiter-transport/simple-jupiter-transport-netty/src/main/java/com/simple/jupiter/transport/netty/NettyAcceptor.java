@@ -3,6 +3,7 @@ package com.simple.jupiter.transport.netty;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.concurrent.ThreadFactory;
+import com.simple.jupiter.concurrent.AffinityLayout;
 import com.simple.jupiter.concurrent.NamedThreadFactory;
 import com.simple.jupiter.transport.JAcceptor;
 import com.simple.jupiter.transport.JConfig;
@@ -36,6 +37,8 @@ public abstract class NettyAcceptor implements JAcceptor {
 
     private EventLoopGroup worker;
 
+    private ThreadFactory workerFactory;
+
     private ProviderProcessor processor;
 
     public NettyAcceptor(Protocol protocol, SocketAddress localAddress) {
@@ -55,7 +58,7 @@ public abstract class NettyAcceptor implements JAcceptor {
 
     protected void init() {
         ThreadFactory bossFactory = bossThreadFactory("jupiter.acceptor.boss");
-        ThreadFactory workerFactory = workerThreadFactory("jupiter.acceptor.worker");
+        workerFactory = workerThreadFactory("jupiter.acceptor.worker");
         boss = initEventLoopGroup(nBosses, bossFactory);
         worker = initEventLoopGroup(nWorkers, workerFactory);
 
@@ -77,6 +80,10 @@ public abstract class NettyAcceptor implements JAcceptor {
 
         setIoRatio(parent.getOption(JOption.IO_RATIO), child.getOption(JOption.IO_RATIO));
 
+        if (workerFactory instanceof AffinityEventLoopThreadFactory) {
+            ((AffinityEventLoopThreadFactory) workerFactory).layout(child.getOption(JOption.AFFINITY_LAYOUT));
+        }
+
         bootstrap.childOption(ChannelOption.MESSAGE_SIZE_ESTIMATOR, JMessageSizeEstimator.DEFAULT);
     }
 
@@ -147,9 +154,12 @@ public abstract class NettyAcceptor implements JAcceptor {
         return new DefaultThreadFactory(name, Thread.MAX_PRIORITY);
     }
 
+    /**
+     * worker线程可以通过 {@link JOption#AFFINITY_LAYOUT} 绑核, 并作为provider业务线程的绑核基准.
+     */
     @SuppressWarnings("SameParameterValue")
     protected ThreadFactory workerThreadFactory(String name) {
-        return new DefaultThreadFactory(name, Thread.MAX_PRIORITY);
+        return new AffinityEventLoopThreadFactory(name, AffinityLayout.ACCEPTOR_ANCHOR, Thread.MAX_PRIORITY);
     }
 
     public abstract void setIoRatio(int bossIoRatio, int workerIoRatio);
@@ -17,6 +17,7 @@ package com.simple.jupiter.transport.netty;
 
 import java.util.Collections;
 import java.util.List;
+import com.simple.jupiter.concurrent.AffinityLayout;
 import com.simple.jupiter.transport.JConfig;
 import com.simple.jupiter.transport.JConfigGroup;
 import com.simple.jupiter.transport.JOption;
@@ -34,12 +35,18 @@ import com.simple.jupiter.util.Requires;
 public class NettyConfig implements JConfig {
 
     private volatile int ioRatio = 99;
+    private volatile AffinityLayout affinityLayout = AffinityLayout.NONE;
+    private volatile int flowControlWindow = 0;
+    private volatile boolean compactHeader = false;
+    private volatile int minConnections = 0;
+    private volatile int maxConnections = 0;
     private volatile boolean preferDirect = true;
     private volatile boolean usePooledAllocator = true;
 
     @Override
     public List<JOption<?>> getOptions() {
-        return getOptions(null, JOption.IO_RATIO);
+        return getOptions(null, JOption.IO_RATIO, JOption.AFFINITY_LAYOUT, JOption.FLOW_CONTROL_WINDOW, JOption.COMPACT_HEADER,
+                JOption.MIN_CONNECTIONS, JOption.MAX_CONNECTIONS);
     }
 
     protected List<JOption<?>> getOptions(List<JOption<?>> result, JOption<?>... options) {
@@ -58,6 +65,21 @@ public class NettyConfig implements JConfig {
         if (option == JOption.IO_RATIO) {
             return (T) Integer.valueOf(getIoRatio());
         }
+        if (option == JOption.AFFINITY_LAYOUT) {
+            return (T) getAffinityLayout();
+        }
+        if (option == JOption.FLOW_CONTROL_WINDOW) {
+            return (T) Integer.valueOf(getFlowControlWindow());
+        }
+        if (option == JOption.COMPACT_HEADER) {
+            return (T) Boolean.valueOf(isCompactHeader());
+        }
+        if (option == JOption.MIN_CONNECTIONS) {
+            return (T) Integer.valueOf(getMinConnections());
+        }
+        if (option == JOption.MAX_CONNECTIONS) {
+            return (T) Integer.valueOf(getMaxConnections());
+        }
         return null;
     }
 
@@ -67,6 +89,16 @@ public class NettyConfig implements JConfig {
 
         if (option == JOption.IO_RATIO) {
             setIoRatio(castToInteger(value));
+        } else if (option == JOption.AFFINITY_LAYOUT) {
+            setAffinityLayout(castToAffinityLayout(value));
+        } else if (option == JOption.FLOW_CONTROL_WINDOW) {
+            setFlowControlWindow(castToInteger(value));
+        } else if (option == JOption.COMPACT_HEADER) {
+            setCompactHeader(castToBoolean(value));
+        } else if (option == JOption.MIN_CONNECTIONS) {
+            setMinConnections(castToInteger(value));
+        } else if (option == JOption.MAX_CONNECTIONS) {
+            setMaxConnections(castToInteger(value));
         } else {
             return false;
         }
@@ -87,6 +119,46 @@ public class NettyConfig implements JConfig {
         this.ioRatio = ioRatio;
     }
 
+    public AffinityLayout getAffinityLayout() {
+        return affinityLayout;
+    }
+
+    public void setAffinityLayout(AffinityLayout affinityLayout) {
+        this.affinityLayout = affinityLayout;
+    }
+
+    public int getFlowControlWindow() {
+        return flowControlWindow;
+    }
+
+    public void setFlowControlWindow(int flowControlWindow) {
+        this.flowControlWindow = Math.max(flowControlWindow, 0);
+    }
+
+    public boolean isCompactHeader() {
+        return compactHeader;
+    }
+
+    public void setCompactHeader(boolean compactHeader) {
+        this.compactHeader = compactHeader;
+    }
+
+    public int getMinConnections() {
+        return minConnections;
+    }
+
+    public void setMinConnections(int minConnections) {
+        this.minConnections = Math.max(minConnections, 0);
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = Math.max(maxConnections, 0);
+    }
+
     public boolean isPreferDirect() {
         return preferDirect;
     }
@@ -120,6 +192,21 @@ public class NettyConfig implements JConfig {
         throw new IllegalArgumentException(value.getClass().toString());
     }
 
+    private static AffinityLayout castToAffinityLayout(Object value) {
+        if (value instanceof AffinityLayout) {
+            return (AffinityLayout) value;
+        }
+
+        if (value instanceof String) {
+            AffinityLayout layout = AffinityLayout.parse((String) value);
+            if (layout != null) {
+                return layout;
+            }
+        }
+
+        throw new IllegalArgumentException(String.valueOf(value));
+    }
+
     private static Long castToLong(Object value) {
         if (value instanceof Long) {
             return (Long) value;
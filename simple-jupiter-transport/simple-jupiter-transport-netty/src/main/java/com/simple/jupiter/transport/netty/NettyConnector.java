@@ -1,5 +1,6 @@
 package com.simple.jupiter.transport.netty;
 
+import com.simple.jupiter.concurrent.AffinityLayout;
 import com.simple.jupiter.concurrent.NamedThreadFactory;
 import com.simple.jupiter.transport.*;
 import com.simple.jupiter.transport.channel.CopyOnWriteGroupList;
@@ -7,6 +8,7 @@ import com.simple.jupiter.transport.channel.DirectoryJChannelGroup;
 import com.simple.jupiter.transport.channel.JChannelGroup;
 import com.simple.jupiter.transport.netty.channel.NettyChannelGroup;
 import com.simple.jupiter.transport.netty.estimator.JMessageSizeEstimator;
+import com.simple.jupiter.transport.netty.handler.connector.ReconnectScheduler;
 import com.simple.jupiter.transport.processor.ConsumerProcessor;
 import com.simple.jupiter.util.ClassUtil;
 import com.simple.jupiter.util.JConstants;
@@ -19,7 +21,6 @@ import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.WriteBufferWaterMark;
 import io.netty.util.HashedWheelTimer;
-import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.util.Collection;
 import java.util.concurrent.ConcurrentMap;
@@ -37,6 +38,8 @@ public abstract class NettyConnector implements JConnector<JConnection> {
 
     protected final Protocol protocol;
     protected final HashedWheelTimer timer = new HashedWheelTimer(new NamedThreadFactory("connector.timer", true));
+    // 所有连接共享, 重连时间随机退避并且限制同时重连的个数
+    protected final ReconnectScheduler reconnectScheduler = new ReconnectScheduler(timer);
 
     /**
      * address:port -> 对应服务端的所有channel 封装到group里，因为客户端每调用一次connect都会生成一个新的channel
@@ -47,9 +50,12 @@ public abstract class NettyConnector implements JConnector<JConnection> {
      */
     private final DirectoryJChannelGroup directoryGroup = new DirectoryJChannelGroup();
     private final JConnectionManager connectionManager = new JConnectionManager();
+    // 自适应连接数, 设置了 JOption.MAX_CONNECTIONS 时才启动
+    private final ConnectionScaler connectionScaler = new ConnectionScaler(this);
 
     private Bootstrap bootstrap;
     private EventLoopGroup worker;
+    private ThreadFactory workerFactory;
     private int nWorkers;
 
     private ConsumerProcessor processor;
@@ -64,7 +70,7 @@ public abstract class NettyConnector implements JConnector<JConnection> {
     }
 
     protected void init() {
-        ThreadFactory workerFactory = workerThreadFactory("jupiter.connector");
+        workerFactory = workerThreadFactory("jupiter.connector");
         worker = initEventLoopGroup(nWorkers, workerFactory);
         bootstrap = new Bootstrap().group(worker);
 
@@ -76,8 +82,11 @@ public abstract class NettyConnector implements JConnector<JConnection> {
 
     protected abstract void doInit();
 
+    /**
+     * worker线程可以通过 {@link JOption#AFFINITY_LAYOUT} 绑核, 并作为consumer业务线程的绑核基准.
+     */
     protected ThreadFactory workerThreadFactory(String name) {
-        return new DefaultThreadFactory(name, Thread.MAX_PRIORITY);
+        return new AffinityEventLoopThreadFactory(name, AffinityLayout.CONNECTOR_ANCHOR, Thread.MAX_PRIORITY);
     }
 
     @Override
@@ -165,6 +174,11 @@ public abstract class NettyConnector implements JConnector<JConnection> {
         return connectionManager;
     }
 
+    @Override
+    public JConnector<JConnection> newDomainConnector() {
+        return null;
+    }
+
     @Override
     public void shutdownGracefully() {
         connectionManager.cancelAllAutoReconnect();
@@ -180,6 +194,14 @@ public abstract class NettyConnector implements JConnector<JConnection> {
 
         setIoRatio(child.getOption(JOption.IO_RATIO));
 
+        if (workerFactory instanceof AffinityEventLoopThreadFactory) {
+            ((AffinityEventLoopThreadFactory) workerFactory).layout(child.getOption(JOption.AFFINITY_LAYOUT));
+        }
+
+        if (child.getOption(JOption.MAX_CONNECTIONS) > 0) {
+            connectionScaler.start();
+        }
+
         bootstrap.option(ChannelOption.MESSAGE_SIZE_ESTIMATOR, JMessageSizeEstimator.DEFAULT);
     }
 
@@ -20,6 +20,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * jupiter
@@ -101,17 +102,30 @@ public class AdaptiveOutputBufAllocator {
          * @param actualWroteBytes the actual number of wrote bytes in the previous allocate operation
          */
         void record(int actualWroteBytes);
+
+        /**
+         * Similar to {@link #record(int)} except that it also counts a hit if the allocated buffer was large enough
+         * to hold all the wrote bytes (no reallocation), otherwise counts a miss.
+         *
+         * @param allocatedBytes   the capacity of the buffer allocated in the previous allocate operation
+         * @param actualWroteBytes the actual number of wrote bytes in the previous allocate operation
+         */
+        void record(int allocatedBytes, int actualWroteBytes);
     }
 
     private static final class HandleImpl implements Handle {
 
+        private final AdaptiveOutputBufAllocator parent;
         private final int minIndex;
         private final int maxIndex;
-        private int index;                          // Single IO thread read/write
-        private volatile int nextAllocateBufSize;   // Single IO thread read/write, other thread read
-        private boolean decreaseNow;                // Single IO thread read/write
-
-        HandleImpl(int minIndex, int maxIndex, int initial) {
+        // 序列化在业务线程中, 同一个handle会被多个业务线程同时 allocate/record, 不加锁:
+        // 并发 record 只会丢掉一部分反馈, 预测值始终在 [minIndex, maxIndex] 之内, 不影响正确性
+        private int index;                          // Business threads read/write, racy but benign
+        private volatile int nextAllocateBufSize;   // Business threads read/write
+        private boolean decreaseNow;                // Business threads read/write, racy but benign
+
+        HandleImpl(AdaptiveOutputBufAllocator parent, int minIndex, int maxIndex, int initial) {
+            this.parent = parent;
             this.minIndex = minIndex;
             this.maxIndex = maxIndex;
 
@@ -145,12 +159,26 @@ public class AdaptiveOutputBufAllocator {
                 decreaseNow = false;
             }
         }
+
+        @Override
+        public void record(int allocatedBytes, int actualWroteBytes) {
+            if (actualWroteBytes <= allocatedBytes) {
+                parent.hits.increment();
+            } else {
+                parent.misses.increment();
+            }
+            record(actualWroteBytes);
+        }
     }
 
     private final int minIndex;
     private final int maxIndex;
     private final int initial;
 
+    // 预测的容量足够(无需扩容)/不足的次数
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
     /**
      * Creates a new predictor with the default parameters.  With the default
      * parameters, the expected buffer size starts from {@code 512}, does not
@@ -196,6 +224,20 @@ public class AdaptiveOutputBufAllocator {
     }
 
     public Handle newHandle() {
-        return new HandleImpl(minIndex, maxIndex, initial);
+        return new HandleImpl(this, minIndex, maxIndex, initial);
+    }
+
+    /**
+     * The number of buffers which were large enough to hold all the wrote bytes.
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * The number of buffers which had to be expanded (reallocated and copied) while writing.
+     */
+    public long missCount() {
+        return misses.sum();
     }
 }
@@ -0,0 +1,137 @@
+package com.simple.jupiter.transport.netty.channel;
+
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import com.simple.jupiter.util.Maps;
+import com.simple.jupiter.util.SystemPropertyUtil;
+import io.netty.channel.EventLoop;
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * 同一个 event-loop 上所有 {@link NettyChannel} 共享的任务队列.
+ *
+ * 每个连接一个队列时, 大量空闲连接(10万+)的队列本身就要占用几百M内存; 共享之后队列在第一次使用时才创建,
+ * 一个 event-loop 只有一个, runAllTasks 中所有任务执行完之后再对涉及到的每个连接只 flush() 一次.
+ *
+ * jupiter
+ * org.jupiter.transport.netty.channel
+ */
+final class EventLoopTasks implements Runnable {
+
+    // 单个 event-loop 任务队列的最大容量, 队列按需扩容(每次1024)
+    private static final int QUEUE_CAPACITY = SystemPropertyUtil.getInt("jupiter.io.channel.task.queue.capacity", 1024 * 64);
+
+    private static final AtomicIntegerFieldUpdater<EventLoopTasks> scheduledUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(EventLoopTasks.class, "scheduled");
+
+    private static final ConcurrentMap<EventLoop, EventLoopTasks> tasksMap = Maps.newConcurrentMap();
+
+    static EventLoopTasks of(EventLoop eventLoop) {
+        EventLoopTasks tasks = tasksMap.get(eventLoop);
+        if (tasks == null) {
+            EventLoopTasks newTasks = new EventLoopTasks(eventLoop);
+            tasks = tasksMap.putIfAbsent(eventLoop, newTasks);
+            if (tasks == null) {
+                tasks = newTasks;
+                eventLoop.terminationFuture().addListener(future -> tasksMap.remove(eventLoop));
+            }
+        }
+        return tasks;
+    }
+
+    private final EventLoop eventLoop;
+    private final Queue<Runnable> taskQueue = PlatformDependent.newMpscQueue(QUEUE_CAPACITY);
+    // run() 是否已经提交到 event-loop 且还未开始执行, 同一时刻最多只提交一个
+    private volatile int scheduled = 0; // 0: false, 1: true
+    // 本轮有写操作待 flush 的连接, 只在 event-loop 中访问
+    private final ArrayList<NettyChannel> flushChannels = new ArrayList<>();
+
+    private EventLoopTasks(EventLoop eventLoop) {
+        this.eventLoop = eventLoop;
+    }
+
+    boolean offer(Runnable task) {
+        return taskQueue.offer(task);
+    }
+
+    void schedule() {
+        // 已经提交过且还未执行的 run() 会处理掉刚刚入队的任务, 不需要重复提交
+        if (scheduledUpdater.compareAndSet(this, 0, 1)) {
+            try {
+                eventLoop.execute(this);
+            } catch (Throwable t) {
+                // event-loop 已经关闭, run() 不会再执行, 如果不重置 scheduled 之后入队的任务会一直积压在队列中
+                do {
+                    failAll(t);
+                    scheduled = 0;
+                    // 重置之前其他线程入队的任务看到的还是 scheduled == 1, 由当前线程一并处理
+                } while (!taskQueue.isEmpty() && scheduledUpdater.compareAndSet(this, 0, 1));
+            }
+        }
+    }
+
+    /**
+     * 本轮结束时需要 flush, 只在 event-loop 中调用.
+     */
+    void markFlush(NettyChannel nChannel) {
+        if (!nChannel.needsFlush) {
+            nChannel.needsFlush = true;
+            flushChannels.add(nChannel);
+        }
+    }
+
+    @Override
+    public void run() {
+        // 必须在 poll 之前重置, 之后入队的任务会重新提交
+        scheduled = 0;
+
+        if (taskQueue.isEmpty()) {
+            return;
+        }
+
+        // 只会和 failAll() 竞争(event-loop 关闭过程中), 平时没有竞争, 每一轮只加一次锁
+        synchronized (this) {
+            runTasks();
+        }
+    }
+
+    private void runTasks() {
+        try {
+            // 一轮最多执行 QUEUE_CAPACITY 个任务, 避免业务线程持续写入时一直占用 event-loop
+            for (int i = 0; i < QUEUE_CAPACITY; i++) {
+                Runnable task = taskQueue.poll();
+                if (task == null) {
+                    break;
+                }
+                task.run();
+            }
+        } finally {
+            for (int i = 0; i < flushChannels.size(); i++) {
+                NettyChannel nChannel = flushChannels.get(i);
+                nChannel.needsFlush = false;
+                nChannel.channel().flush();
+                // 积压的字节已经交给了 netty, 如果 netty 自己的缓冲区没有超过高水位线, 就不会有 channelWritabilityChanged 事件
+                nChannel.notifyWritabilityListeners();
+            }
+            flushChannels.clear();
+            // 某个任务抛出异常时, 剩下的任务交给下一次 run()
+            if (!taskQueue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * event-loop 拒绝执行 run() 时, 丢弃队列中所有的任务, 写任务通知 promise 失败.
+     */
+    private synchronized void failAll(Throwable cause) {
+        Runnable task;
+        while ((task = taskQueue.poll()) != null) {
+            if (task instanceof NettyChannel.WriteTask) {
+                ((NettyChannel.WriteTask) task).fail(cause);
+            }
+        }
+    }
+}
@@ -2,25 +2,38 @@ package com.simple.jupiter.transport.netty.channel;
 
 
 import com.simple.jupiter.serialization.io.OutputBuf;
+import com.simple.jupiter.transport.Directory;
 import com.simple.jupiter.transport.JProtocolHeader;
 import com.simple.jupiter.transport.channel.JChannel;
 import com.simple.jupiter.transport.channel.JFutureListener;
 import com.simple.jupiter.transport.netty.alloc.AdaptiveOutputBufAllocator;
+import com.simple.jupiter.transport.netty.estimator.JMessageSizeEstimator;
 import com.simple.jupiter.transport.netty.handler.connector.ConnectionWatchdog;
+import com.simple.jupiter.transport.payload.JRequestPayload;
+import com.simple.jupiter.util.Maps;
+import com.simple.jupiter.util.SystemPropertyUtil;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufOutputStream;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
 import io.netty.channel.EventLoop;
+import io.netty.channel.MessageSizeEstimator;
 import io.netty.util.Attribute;
 import io.netty.util.AttributeKey;
-import io.netty.util.internal.PlatformDependent;
+import io.netty.util.Recycler;
+import io.netty.util.ReferenceCountUtil;
 
 import java.io.OutputStream;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
-import java.util.Queue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * 对Netty Channel 的包装, 通过静态方法 attachChannel(Channel) 获取一个实例, NettyChannel 实例构造后会attach到对应 Channel 上, 不需要每次创建. jupiter org. jupiter. transport. netty. channel
@@ -31,6 +44,30 @@ public class NettyChannel implements JChannel {
 
     private static final AttributeKey<NettyChannel> NETTY_CHANNEL_KEY = AttributeKey.valueOf("netty.channel");
 
+    /**
+     * 合并写: 业务线程的写请求先进入 event-loop 共享的任务队列({@link EventLoopTasks}),
+     * 由一个 event-loop 任务统一 write() 之后每个连接只 flush() 一次, 减少跨线程的任务提交(唤醒)和系统调用.
+     */
+    private static final boolean WRITE_COALESCING = SystemPropertyUtil.getBoolean("jupiter.io.channel.write.coalescing", true);
+
+    // 收到第一个CREDIT之前credit计数的下限, 见 #consumeCredit(Object)
+    private static final int PRE_GRANT_FLOOR = Integer.MIN_VALUE >> 1;
+
+    private static final AtomicIntegerFieldUpdater<NettyChannel> inFlightRequestsUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(NettyChannel.class, "inFlightRequests");
+    private static final AtomicIntegerFieldUpdater<NettyChannel> creditsUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(NettyChannel.class, "credits");
+    private static final AtomicLongFieldUpdater<NettyChannel> pendingBytesUpdater =
+            AtomicLongFieldUpdater.newUpdater(NettyChannel.class, "pendingBytes");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<NettyChannel, ConcurrentMap> methodAllocHandlesUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(NettyChannel.class, ConcurrentMap.class, "methodAllocHandles");
+    private static final AtomicReferenceFieldUpdater<NettyChannel, Object> attachmentUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(NettyChannel.class, Object.class, "attachment");
+
+    // 与 bootstrap 上设置的 ChannelOption.MESSAGE_SIZE_ESTIMATOR 一致
+    private static final MessageSizeEstimator.Handle sizeEstimator = JMessageSizeEstimator.DEFAULT.newHandle();
+
     public static NettyChannel attachChannel(Channel channel) {
         Attribute<NettyChannel> attr = channel.attr(NETTY_CHANNEL_KEY);
         NettyChannel nChannel = attr.get();
@@ -47,10 +84,30 @@ public class NettyChannel implements JChannel {
 
     private final Channel channel;
 
-    private final AdaptiveOutputBufAllocator.Handle allocHandle = AdaptiveOutputBufAllocator.DEFAULT.newHandle();
+    // 以下都是第一次使用时才创建, 大量空闲连接时不占用内存
+    private volatile AdaptiveOutputBufAllocator.Handle allocHandle;
+    // 不同方法的消息大小差别可能很大, 按 服务 -> 方法 分别预测
+    private volatile ConcurrentMap<String, ConcurrentMap<String, AdaptiveOutputBufAllocator.Handle>> methodAllocHandles;
+    // channel 注册之后 event-loop 不会再变, 并发初始化时拿到的是同一个实例
+    private EventLoopTasks tasks;
+
+    // 本轮 EventLoopTasks#run() 中是否有待 flush 的写, 只在 event-loop 中访问
+    boolean needsFlush;
+    // 还在任务队列中没有交给 netty 的字节数, netty 的 ChannelOutboundBuffer 看不到这部分
+    private volatile long pendingBytes = 0;
+
+    // 已发出还没有完成的请求数, 见 NettyChannelGroup#next()
+    private volatile int inFlightRequests = 0;
+
+    // 服务端授予的流控credit, 见 Credits; 收到第一个CREDIT之前不做限制
+    private volatile boolean flowControlled = false;
+    private volatile int credits = 0;
 
-    private final Queue<Runnable> taskQueue = PlatformDependent.newMpscQueue(1024);
-    private final Runnable runAllTasks = this::runAllTasks;
+    // 上层(rpc)附加在连接上的状态, 随连接一起回收
+    private volatile Object attachment;
+
+    // 可写性恢复时通知, 见 NettyChannelGroup#next()
+    private final CopyOnWriteArrayList<Runnable> writabilityListeners = new CopyOnWriteArrayList<>();
 
     private NettyChannel(Channel channel) {
         this.channel = channel;
@@ -85,9 +142,50 @@ public class NettyChannel implements JChannel {
         return channel.remoteAddress();
     }
 
+    /**
+     * 除了 netty 的 ChannelOutboundBuffer, 还要算上合并写队列中积压的字节,
+     * 二者之和超过高水位线(WRITE_BUFFER_HIGH_WATER_MARK)时不可写.
+     */
     @Override
     public boolean isWritable() {
-        return channel.isWritable();
+        return channel.isWritable() && pendingBytes < channel.bytesBeforeUnwritable() && (!flowControlled || credits > 0);
+    }
+
+    /**
+     * 收到服务端授予的credit, 只在 event-loop 中调用.
+     */
+    public void grantCredits(int n) {
+        creditsUpdater.addAndGet(this, n);
+        flowControlled = true;
+        notifyWritabilityListeners();
+    }
+
+    /**
+     * 还没有写到socket的字节数(合并写队列 + ChannelOutboundBuffer).
+     */
+    public long pendingOutboundBytes() {
+        ChannelOutboundBuffer outboundBuffer = channel.unsafe().outboundBuffer();
+        return pendingBytes + (outboundBuffer == null ? 0 : outboundBuffer.totalPendingWriteBytes());
+    }
+
+    public void addWritabilityListener(Runnable listener) {
+        writabilityListeners.add(listener);
+    }
+
+    public void removeWritabilityListener(Runnable listener) {
+        writabilityListeners.remove(listener);
+    }
+
+    /**
+     * 由 event-loop 在可写性可能恢复时调用(channelWritabilityChanged, 或者合并写队列清空之后).
+     */
+    public void notifyWritabilityListeners() {
+        if (!isWritable()) {
+            return;
+        }
+        for (Runnable listener : writabilityListeners) {
+            listener.run();
+        }
     }
 
     @Override
@@ -106,6 +204,34 @@ public class NettyChannel implements JChannel {
         channel.config().setAutoRead(autoRead);
     }
 
+    @Override
+    public int inFlightRequests() {
+        return inFlightRequests;
+    }
+
+    @Override
+    public void incrementInFlightRequests() {
+        inFlightRequestsUpdater.getAndIncrement(this);
+    }
+
+    @Override
+    public void decrementInFlightRequests() {
+        inFlightRequestsUpdater.getAndDecrement(this);
+    }
+
+    @Override
+    public Object attachment() {
+        return attachment;
+    }
+
+    @Override
+    public Object attachIfAbsent(Object attachment) {
+        if (attachmentUpdater.compareAndSet(this, null, attachment)) {
+            return null;
+        }
+        return this.attachment;
+    }
+
     @Override
     public JChannel close() {
         channel.close();
@@ -127,59 +253,134 @@ public class NettyChannel implements JChannel {
 
     @Override
     public JChannel write(Object msg) {
-        channel.writeAndFlush(msg, channel.voidPromise());
+        consumeCredit(msg);
+        if (WRITE_COALESCING) {
+            addWriteTask(msg, channel.voidPromise());
+        } else {
+            channel.writeAndFlush(msg, channel.voidPromise());
+        }
         return this;
     }
 
     @Override
     public JChannel write(Object msg, final JFutureListener<JChannel> listener) {
         final JChannel jChannel = this;
-        channel.writeAndFlush(msg)
-                .addListener((ChannelFutureListener) future -> {
-                    if (future.isSuccess()) {
-                        listener.operationSuccess(jChannel);
-                    } else {
-                        listener.operationFailure(jChannel, future.cause());
-                    }
-                });
+        ChannelPromise promise = channel.newPromise();
+        promise.addListener((ChannelFutureListener) future -> {
+            if (future.isSuccess()) {
+                listener.operationSuccess(jChannel);
+            } else {
+                listener.operationFailure(jChannel, future.cause());
+            }
+        });
+        consumeCredit(msg);
+        if (WRITE_COALESCING) {
+            addWriteTask(msg, promise);
+        } else {
+            channel.writeAndFlush(msg, promise);
+        }
         return jChannel;
     }
 
+    /**
+     * 每个请求消耗一个credit; 选择channel和写之间没有加锁, 并发时可能少量超出窗口.
+     *
+     * 收到第一个CREDIT之前发出的请求也要计入(credit为负), 服务端同样会为它们归还credit, 否则窗口会越来越大;
+     * 服务端没有开启流控时永远收不到CREDIT, 计数到 PRE_GRANT_FLOOR 之后不再减少, 避免溢出.
+     */
+    private void consumeCredit(Object msg) {
+        if (msg instanceof JRequestPayload && (flowControlled || credits > PRE_GRANT_FLOOR)) {
+            creditsUpdater.getAndDecrement(this);
+        }
+    }
+
+    private void addWriteTask(Object msg, ChannelPromise promise) {
+        int size = sizeEstimator.size(msg);
+        WriteTask task = WriteTask.newInstance(this, msg, promise, size);
+        pendingBytesUpdater.addAndGet(this, size);
+        EventLoopTasks tasks = tasks();
+        if (tasks.offer(task)) {
+            tasks.schedule();
+        } else {
+            pendingBytesUpdater.addAndGet(this, -size);
+            task.recycle();
+            // 队列已满, 不再等待, 直接走普通的写路径 (不同消息之间通过 id 关联, 不依赖发送顺序)
+            channel.writeAndFlush(msg, promise);
+        }
+    }
+
     @Override
     public void addTask(Runnable task) {
         EventLoop eventLoop = channel.eventLoop();
+        EventLoopTasks tasks = tasks();
 
-        while (!taskQueue.offer(task)) {
+        while (!tasks.offer(task)) {
             if (eventLoop.inEventLoop()) {
-                runAllTasks.run();
+                tasks.run();
             } else {
                 // TODO await?
-                eventLoop.execute(runAllTasks);
+                eventLoop.execute(tasks);
             }
         }
 
-        if (!taskQueue.isEmpty()) {
-            eventLoop.execute(runAllTasks);
-        }
+        tasks.schedule();
     }
 
-    private void runAllTasks() {
-        if (taskQueue.isEmpty()) {
-            return;
+    private EventLoopTasks tasks() {
+        EventLoopTasks tasks = this.tasks;
+        if (tasks == null) {
+            this.tasks = tasks = EventLoopTasks.of(channel.eventLoop());
         }
+        return tasks;
+    }
 
-        for (; ; ) {
-            Runnable task = taskQueue.poll();
-            if (task == null) {
-                return;
-            }
-            task.run();
+    @Override
+    public OutputBuf allocOutputBuf() {
+        AdaptiveOutputBufAllocator.Handle handle = allocHandle;
+        if (handle == null) {
+            // 并发时可能多创建一个, 只是丢掉一部分预测数据
+            allocHandle = handle = AdaptiveOutputBufAllocator.DEFAULT.newHandle();
         }
+        return NettyOutputBuf.newInstance(handle, channel.alloc());
     }
 
     @Override
-    public OutputBuf allocOutputBuf() {
-        return new NettyOutputBuf(allocHandle, channel.alloc());
+    public OutputBuf allocOutputBuf(Directory directory, String methodName) {
+        return NettyOutputBuf.newInstance(allocHandle(directory, methodName), channel.alloc());
+    }
+
+    @Override
+    public boolean acceptsBody() {
+        return false;
+    }
+
+    private AdaptiveOutputBufAllocator.Handle allocHandle(Directory directory, String methodName) {
+        ConcurrentMap<String, ConcurrentMap<String, AdaptiveOutputBufAllocator.Handle>> methodAllocHandles = this.methodAllocHandles;
+        if (methodAllocHandles == null) {
+            methodAllocHandlesUpdater.compareAndSet(this, null, Maps.newConcurrentMap());
+            methodAllocHandles = this.methodAllocHandles;
+        }
+
+        // directory 应该是长期存活的实例(consumer端invoker的metadata, provider端注册的metadata), directoryString 只拼接一次
+        String directoryString = directory.directoryString();
+        ConcurrentMap<String, AdaptiveOutputBufAllocator.Handle> handles = methodAllocHandles.get(directoryString);
+        if (handles == null) {
+            ConcurrentMap<String, AdaptiveOutputBufAllocator.Handle> newHandles = Maps.newConcurrentMap();
+            handles = methodAllocHandles.putIfAbsent(directoryString, newHandles);
+            if (handles == null) {
+                handles = newHandles;
+            }
+        }
+
+        AdaptiveOutputBufAllocator.Handle handle = handles.get(methodName);
+        if (handle == null) {
+            AdaptiveOutputBufAllocator.Handle newHandle = AdaptiveOutputBufAllocator.DEFAULT.newHandle();
+            handle = handles.putIfAbsent(methodName, newHandle);
+            if (handle == null) {
+                handle = newHandle;
+            }
+        }
+        return handle;
     }
 
     @Override
@@ -197,23 +398,114 @@ public class NettyChannel implements JChannel {
         return channel.toString();
     }
 
+    /**
+     * 每次写都会创建一个, 通过 {@link Recycler} 复用, 在 event-loop 中执行完之后回收.
+     */
+    static final class WriteTask implements Runnable {
+
+        private static final Recycler<WriteTask> RECYCLER = new Recycler<WriteTask>() {
+
+            @Override
+            protected WriteTask newObject(Handle<WriteTask> handle) {
+                return new WriteTask(handle);
+            }
+        };
+
+        static WriteTask newInstance(NettyChannel nChannel, Object msg, ChannelPromise promise, int size) {
+            WriteTask task = RECYCLER.get();
+            task.nChannel = nChannel;
+            task.msg = msg;
+            task.promise = promise;
+            task.size = size;
+            return task;
+        }
+
+        private final Recycler.Handle<WriteTask> handle;
+        private NettyChannel nChannel;
+        private Object msg;
+        private ChannelPromise promise;
+        private int size;
+
+        private WriteTask(Recycler.Handle<WriteTask> handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public void run() {
+            try {
+                nChannel.channel.write(msg, promise);
+                nChannel.tasks().markFlush(nChannel);
+            } finally {
+                pendingBytesUpdater.addAndGet(nChannel, -size);
+                recycle();
+            }
+        }
+
+        /**
+         * event-loop 拒绝执行时(已经关闭), 不再写出, 通知 promise 失败.
+         */
+        void fail(Throwable cause) {
+            try {
+                ReferenceCountUtil.release(msg);
+                promise.tryFailure(cause);
+            } finally {
+                pendingBytesUpdater.addAndGet(nChannel, -size);
+                recycle();
+            }
+        }
+
+        void recycle() {
+            nChannel = null;
+            msg = null;
+            promise = null;
+            size = 0;
+            handle.recycle(this);
+        }
+    }
+
+    /**
+     * 每个请求/响应都会创建一个, 通过 {@link Recycler} 复用, encoder 先从payload上摘下它
+     * (PayloadHolder#detachOutputBuf()), 再调用 {@link #backingObject()} 取走 {@link ByteBuf}, 之后回收.
+     */
     static final class NettyOutputBuf implements OutputBuf {
 
-        private final AdaptiveOutputBufAllocator.Handle allocHandle;
-        private final ByteBuf byteBuf;
-        private ByteBuffer nioByteBuffer;
+        private static final Recycler<NettyOutputBuf> RECYCLER = new Recycler<NettyOutputBuf>() {
+
+            @Override
+            protected NettyOutputBuf newObject(Handle<NettyOutputBuf> handle) {
+                return new NettyOutputBuf(handle);
+            }
+        };
 
-        public NettyOutputBuf(AdaptiveOutputBufAllocator.Handle allocHandle, ByteBufAllocator alloc) {
-            this.allocHandle = allocHandle;
-            byteBuf = allocHandle.allocate(alloc);
+        static NettyOutputBuf newInstance(AdaptiveOutputBufAllocator.Handle allocHandle, ByteBufAllocator alloc) {
+            NettyOutputBuf buf = RECYCLER.get();
+            buf.allocHandle = allocHandle;
+            buf.byteBuf = allocHandle.allocate(alloc);
+            buf.allocatedBytes = buf.byteBuf.capacity();
 
-            byteBuf.ensureWritable(JProtocolHeader.HEADER_SIZE)
+            buf.byteBuf.ensureWritable(JProtocolHeader.HEADER_SIZE)
                     // reserved 16-byte protocol header location
-                    .writerIndex(byteBuf.writerIndex() + JProtocolHeader.HEADER_SIZE);
+                    .writerIndex(buf.byteBuf.writerIndex() + JProtocolHeader.HEADER_SIZE);
+            return buf;
+        }
+
+        private final Recycler.Handle<NettyOutputBuf> handle;
+        private AdaptiveOutputBufAllocator.Handle allocHandle;
+        private int allocatedBytes;
+        private ByteBuf byteBuf;
+        private ByteBuffer nioByteBuffer;
+
+        private NettyOutputBuf(Recycler.Handle<NettyOutputBuf> handle) {
+            this.handle = handle;
         }
 
         @Override
         public OutputStream outputStream() {
+            if (nioByteBuffer != null) {
+                // 之前通过nioByteBuffer写入的内容(比如rpc层的信封)先提交到writerIndex, 流接着往后写
+                byteBuf.writerIndex(byteBuf.writerIndex() + nioByteBuffer.position());
+                nioByteBuffer = null;
+            }
             return new ByteBufOutputStream(byteBuf); // should not be called more than once
         }
 
@@ -239,10 +531,13 @@ public class NettyChannel implements JChannel {
 
         @Override
         public int size() {
+            if (byteBuf == null) {
+                return 0; // 已经被encoder取走
+            }
             if (nioByteBuffer == null) {
                 return byteBuf.readableBytes();
             }
-            return Math.max(byteBuf.readableBytes(), nioByteBuffer.position());
+            return byteBuf.readableBytes() + nioByteBuffer.position();
         }
 
         @Override
@@ -257,9 +552,18 @@ public class NettyChannel implements JChannel {
                 actualWroteBytes += nioByteBuffer.position();
             }
 
-            allocHandle.record(actualWroteBytes);
+            allocHandle.record(allocatedBytes, actualWroteBytes);
+
+            ByteBuf buf = byteBuf.writerIndex(actualWroteBytes);
+            recycle();
+            return buf;
+        }
 
-            return byteBuf.writerIndex(actualWroteBytes);
+        private void recycle() {
+            allocHandle = null;
+            byteBuf = null;
+            nioByteBuffer = null;
+            handle.recycle(this);
         }
 
         private static ByteBuffer newNioByteBuffer(ByteBuf byteBuf, int writableBytes) {
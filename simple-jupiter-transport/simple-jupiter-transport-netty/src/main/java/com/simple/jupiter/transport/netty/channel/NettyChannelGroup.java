@@ -14,6 +14,7 @@ import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
@@ -27,16 +28,43 @@ public class NettyChannelGroup implements JChannelGroup {
 
     private static int DEFAULT_SEQUENCE_STEP = (JConstants.AVAILABLE_PROCESSORS << 3) + 1;
 
+    private static final SelectMode SELECT_MODE = SelectMode.parse(SystemPropertyUtil
+            .get("jupiter.io.channel.group.select.mode", "round_robin"));
+
+    // 所有channel都不可写(积压超过高水位线)时, next() 最多等待的时间, <= 0 表示立即失败
+    private static final long UNWRITABLE_WAIT_MILLIS = SystemPropertyUtil
+            .getLong("jupiter.io.channel.group.unwritable.wait.millis", 1000);
+
+    // 自适应连接数(JOption.MAX_CONNECTIONS > 0), 见 scale(int, int)
+    // 平均每个连接未完成的请求数达到这个值时认为压力偏高
+    private static final int SCALE_UP_IN_FLIGHT = SystemPropertyUtil
+            .getInt("jupiter.io.channel.group.scale.up.in_flight", 32);
+    // 去掉一个连接之后平均每个连接未完成的请求数仍不超过这个值时认为流量偏低
+    private static final int SCALE_DOWN_IN_FLIGHT = SystemPropertyUtil
+            .getInt("jupiter.io.channel.group.scale.down.in_flight", 1);
+    // 连续多少次采样压力偏高才增加连接
+    private static final int SCALE_UP_TICKS = SystemPropertyUtil
+            .getInt("jupiter.io.channel.group.scale.up.ticks", 3);
+    // 连续多少次采样流量偏低才关闭连接, 比增加连接更保守, 避免来回抖动
+    private static final int SCALE_DOWN_TICKS = SystemPropertyUtil
+            .getInt("jupiter.io.channel.group.scale.down.ticks", 12);
+
     private static final AtomicReferenceFieldUpdater<CopyOnWriteArrayList, Object[]> channelsUpdater =
             AtomicUpdater.newAtomicReferenceFieldUpdater(CopyOnWriteArrayList.class, Object[].class, "array");
     private static final AtomicIntegerFieldUpdater<NettyChannelGroup> signalNeededUpdater =
             AtomicIntegerFieldUpdater.newUpdater(NettyChannelGroup.class, "signalNeeded");
+    private static final AtomicIntegerFieldUpdater<NettyChannelGroup> writableSignalNeededUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(NettyChannelGroup.class, "writableSignalNeeded");
+    private static final AtomicReferenceFieldUpdater<NettyChannelGroup, NettyChannel> bulkChannelUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(NettyChannelGroup.class, NettyChannel.class, "bulkChannel");
 
     private final ConcurrentLinkedQueue<Runnable> waitAvailableListeners = new ConcurrentLinkedQueue<>();
 
     private final UnresolvedAddress address;
 
     private final CopyOnWriteArrayList<NettyChannel> channels = new CopyOnWriteArrayList<>();
+    // 为大消息保留的连接(bulk lane), 不参与 next() 的选择, 见 JConstants.BULK_LANE_ENABLED
+    private volatile NettyChannel bulkChannel;
 
     // 连接断开时自动被移除
     private final ChannelFutureListener remover = future -> remove(NettyChannel.attachChannel(future.channel()));
@@ -47,8 +75,23 @@ public class NettyChannelGroup implements JChannelGroup {
 
     private final ReentrantLock lock = new ReentrantLock();
     private final Condition notifyCondition = lock.newCondition();
+    private final Condition writableCondition = lock.newCondition();
 
     private volatile int signalNeeded = 0; // 0: false, 1: true
+    private volatile int writableSignalNeeded = 0; // 0: false, 1: true
+
+    // channel 可写性恢复时唤醒 next() 中等待的线程
+    private final Runnable writabilityListener = () -> {
+        if (writableSignalNeededUpdater.getAndSet(this, 0) != 0) { // signal needed: true
+            final ReentrantLock _look = lock;
+            _look.lock();
+            try {
+                writableCondition.signalAll(); // must signal all
+            } finally {
+                _look.unlock();
+            }
+        }
+    };
 
     private volatile boolean connecting = false;
 
@@ -57,6 +100,10 @@ public class NettyChannelGroup implements JChannelGroup {
     private volatile long timestamp = SystemClock.millisClock().now();
     private volatile long deadlineMillis = -1;
 
+    // 连续压力偏高/流量偏低的采样次数, 只在 scale(int, int) 中访问
+    private int hotTicks;
+    private int coldTicks;
+
     public NettyChannelGroup(UnresolvedAddress address) {
         this.address = address;
     }
@@ -66,8 +113,20 @@ public class NettyChannelGroup implements JChannelGroup {
         return address;
     }
 
+    /**
+     * 按 jupiter.io.channel.group.select.mode 选择一个可写的channel, 不可写的channel(积压超过了高水位线)会被跳过:
+     *
+     * round_robin(默认): 轮询;
+     * least_in_flight: 已发出还没有完成的请求数最少的channel;
+     * p2c: 随机选两个, 取其中请求数较少的一个(power of two choices), 比 least_in_flight 开销小, 连接多时更合适.
+     *
+     * 所有channel都不可写时最多等待 jupiter.io.channel.group.unwritable.wait.millis,
+     * 仍然不可写就抛出异常, 避免对端处理过慢时本端的堆外内存无限增长.
+     */
     @Override
     public JChannel next() {
+        long deadline = 0;
+        boolean waited = false;
         for (;;) {
             // snapshot of channels array
             Object[] elements = channelsUpdater.get(channels);
@@ -78,20 +137,45 @@ public class NettyChannelGroup implements JChannelGroup {
                 }
                 throw new IllegalStateException("No channel");
             }
-            if (length == 1) {
-                return (JChannel) elements[0];
+            NettyChannel channel = select(elements);
+            if (channel != null) {
+                return channel;
             }
 
-            //sequence.next()有可能是负值，该操作是为取正数  10001111 & 01111111111111 = 00001111
-            int index = sequence.next() & Integer.MAX_VALUE;
-
-            return (JChannel) elements[index % length];
+            // 所有channel都不可写, 在IO线程中等待只会阻止积压的数据被写出去
+            if (UNWRITABLE_WAIT_MILLIS > 0 && !inIoThread(elements)) {
+                long now = System.nanoTime();
+                if (!waited) {
+                    waited = true;
+                    deadline = now + TimeUnit.MILLISECONDS.toNanos(UNWRITABLE_WAIT_MILLIS);
+                }
+                if (deadline - now > 0 && waitForWritable(deadline - now)) {
+                    continue;
+                }
+            }
+            throw new IllegalStateException("No writable channel: " + address);
         }
     }
 
+    /**
+     * 开启bulk lane时, 至少有一个普通连接之后再建立的第一个连接被保留给大消息, 同一个连接上的小消息
+     * 不会排在大消息后面(队头阻塞).
+     */
+    @Override
+    public JChannel bulkLane() {
+        NettyChannel channel = bulkChannel;
+        // 不可写时(积压或者没有credit)返回null, 由调用方退回普通连接
+        return channel != null && channel.isWritable() ? channel : null;
+    }
+
     @Override
     public List<? extends JChannel> channels() {
-        return Lists.newArrayList(channels);
+        List<NettyChannel> list = Lists.newArrayList(channels);
+        NettyChannel bulk = bulkChannel;
+        if (bulk != null) {
+            list.add(bulk);
+        }
+        return list;
     }
 
     @Override
@@ -101,11 +185,17 @@ public class NettyChannelGroup implements JChannelGroup {
 
     @Override
     public boolean add(JChannel channel) {
-        boolean added = channel instanceof NettyChannel && channels.add((NettyChannel) channel);
+        if (!(channel instanceof NettyChannel)) {
+            return false;
+        }
+        boolean added = (JConstants.BULK_LANE_ENABLED
+                && !channels.isEmpty() && bulkChannelUpdater.compareAndSet(this, null, (NettyChannel) channel))
+                || channels.add((NettyChannel) channel);
         if (added) {
             timestamp = SystemClock.millisClock().now(); // reset timestamp
 
             ((NettyChannel) channel).channel().closeFuture().addListener(remover);
+            ((NettyChannel) channel).addWritabilityListener(writabilityListener);
             deadlineMillis = -1;
 
             if (signalNeededUpdater.getAndSet(this, 0) != 0) { // signal needed: true
@@ -125,8 +215,20 @@ public class NettyChannelGroup implements JChannelGroup {
 
     @Override
     public boolean remove(JChannel channel) {
-        boolean removed = channel instanceof NettyChannel && channels.remove(channel);
+        if (!(channel instanceof NettyChannel)) {
+            return false;
+        }
+        boolean removed = bulkChannelUpdater.compareAndSet(this, (NettyChannel) channel, null)
+                || channels.remove(channel);
         if (removed) {
+            ((NettyChannel) channel).removeWritabilityListener(writabilityListener);
+
+            // 普通连接都断开了, bulk lane 退回普通连接, 等普通连接重连后再重新保留
+            NettyChannel bulk = bulkChannel;
+            if (channels.isEmpty() && bulk != null && bulkChannelUpdater.compareAndSet(this, bulk, null)) {
+                channels.add(bulk);
+            }
+
             timestamp = SystemClock.millisClock().now(); // reset timestamp
 
             if (channels.isEmpty()) {
@@ -138,12 +240,88 @@ public class NettyChannelGroup implements JChannelGroup {
 
     @Override
     public int size() {
-        return channels.size();
+        return channels.size() + (bulkChannel == null ? 0 : 1);
     }
 
+    /**
+     * 开启bulk lane时多出一个连接.
+     */
     @Override
     public void setCapacity(int capacity) {
-        this.capacity = capacity;
+        this.capacity = JConstants.BULK_LANE_ENABLED && capacity < Integer.MAX_VALUE ? capacity + 1 : capacity;
+    }
+
+    /**
+     * 根据负载调整连接数, 由connector周期性调用(单线程):
+     * 连续 SCALE_UP_TICKS 次采样中平均每个连接未完成的请求数不少于 SCALE_UP_IN_FLIGHT, 或者有连接不可写(写缓冲区积压),
+     * 返回1, 调用方应该再建立一个连接; 连续 SCALE_DOWN_TICKS 次采样中剩下的连接足够承担当前的请求, 返回-1,
+     * 调用方应该通过 {@link #detachIdlest()} 关闭一个连接; 否则返回0.
+     *
+     * 返回非0时同时调整 capacity, 保证断线重连不会超出/补回调整之后的连接数.
+     */
+    public int scale(int minConnections, int maxConnections) {
+        Object[] elements = channelsUpdater.get(channels);
+        int n = elements.length;
+        if (n == 0) {
+            // 全部断开了, 交给重连
+            hotTicks = coldTicks = 0;
+            return 0;
+        }
+
+        int hint = 0;
+        if (n < minConnections) {
+            hint = 1;
+        } else if (n > maxConnections) {
+            hint = -1;
+        } else {
+            long inFlight = 0;
+            boolean backlogged = false;
+            for (Object element : elements) {
+                NettyChannel channel = (NettyChannel) element;
+                inFlight += channel.inFlightRequests();
+                if (!channel.isWritable()) {
+                    backlogged = true;
+                }
+            }
+
+            if (backlogged || inFlight >= (long) n * SCALE_UP_IN_FLIGHT) {
+                coldTicks = 0;
+                if (++hotTicks >= SCALE_UP_TICKS && n < maxConnections) {
+                    hint = 1;
+                }
+            } else if (n > Math.max(minConnections, 1) && inFlight <= (long) (n - 1) * SCALE_DOWN_IN_FLIGHT) {
+                hotTicks = 0;
+                if (++coldTicks >= SCALE_DOWN_TICKS) {
+                    hint = -1;
+                }
+            } else {
+                hotTicks = coldTicks = 0;
+            }
+        }
+
+        if (hint != 0) {
+            hotTicks = coldTicks = 0;
+            setCapacity(n + hint);
+        }
+        return hint;
+    }
+
+    /**
+     * 从group中移除未完成的请求数最少的普通连接, 之后不会再被选中, 调用方等它的请求都完成之后关闭它.
+     */
+    public NettyChannel detachIdlest() {
+        Object[] elements = channelsUpdater.get(channels);
+        if (elements.length <= 1) {
+            return null;
+        }
+        NettyChannel idlest = null;
+        for (Object element : elements) {
+            NettyChannel channel = (NettyChannel) element;
+            if (idlest == null || channel.inFlightRequests() < idlest.inFlightRequests()) {
+                idlest = channel;
+            }
+        }
+        return remove(idlest) ? idlest : null;
     }
 
     @Override
@@ -166,6 +344,17 @@ public class NettyChannelGroup implements JChannelGroup {
         return !channels.isEmpty();
     }
 
+    @Override
+    public boolean isWritable() {
+        Object[] elements = channelsUpdater.get(channels);
+        for (Object element : elements) {
+            if (((NettyChannel) element).isWritable()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public boolean waitForAvailable(long timeoutMillis) {
         boolean available = isAvailable();
@@ -271,6 +460,7 @@ public class NettyChannelGroup implements JChannelGroup {
         return "NettyChannelGroup{" +
                 "address=" + address +
                 ", channels=" + channels +
+                ", bulkChannel=" + bulkChannel +
                 ", weights=" + weights +
                 ", warmUp=" + warmUp +
                 ", timestamp=" + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSSZ").format(new Date(timestamp)) +
@@ -278,6 +468,119 @@ public class NettyChannelGroup implements JChannelGroup {
                 '}';
     }
 
+    /**
+     * 返回null表示没有可写的channel.
+     */
+    private NettyChannel select(Object[] elements) {
+        if (elements.length == 1) {
+            NettyChannel channel = (NettyChannel) elements[0];
+            return channel.isWritable() ? channel : null;
+        }
+
+        switch (SELECT_MODE) {
+            case LEAST_IN_FLIGHT:
+                return selectLeastInFlight(elements);
+            case P2C:
+                return selectP2c(elements);
+            default:
+                return selectRoundRobin(elements);
+        }
+    }
+
+    private NettyChannel selectRoundRobin(Object[] elements) {
+        int length = elements.length;
+        //sequence.next()有可能是负值，该操作是为取正数  10001111 & 01111111111111 = 00001111
+        int index = (sequence.next() & Integer.MAX_VALUE) % length;
+
+        for (int i = 0; i < length; i++) {
+            NettyChannel channel = (NettyChannel) elements[(index + i) % length];
+            if (channel.isWritable()) {
+                return channel;
+            }
+        }
+        return null;
+    }
+
+    private NettyChannel selectLeastInFlight(Object[] elements) {
+        int length = elements.length;
+        // 从轮询的位置开始找, 请求数相同的channel之间仍然是轮询
+        int index = (sequence.next() & Integer.MAX_VALUE) % length;
+
+        NettyChannel best = null;
+        int bestInFlight = Integer.MAX_VALUE;
+        for (int i = 0; i < length; i++) {
+            NettyChannel channel = (NettyChannel) elements[(index + i) % length];
+            int inFlight = channel.inFlightRequests();
+            if (inFlight < bestInFlight && channel.isWritable()) {
+                best = channel;
+                bestInFlight = inFlight;
+                if (inFlight <= 0) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    private NettyChannel selectP2c(Object[] elements) {
+        int length = elements.length;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(length);
+        int j = random.nextInt(length - 1);
+        if (j >= i) {
+            j++;
+        }
+
+        NettyChannel first = (NettyChannel) elements[i];
+        NettyChannel second = (NettyChannel) elements[j];
+        if (second.inFlightRequests() < first.inFlightRequests()) {
+            NettyChannel tmp = first;
+            first = second;
+            second = tmp;
+        }
+        if (first.isWritable()) {
+            return first;
+        }
+        if (second.isWritable()) {
+            return second;
+        }
+        // 两个都不可写, 逐个找
+        return selectRoundRobin(elements);
+    }
+
+    private boolean waitForWritable(long timeoutNanos) {
+        long remains = timeoutNanos;
+
+        final ReentrantLock _look = lock;
+        _look.lock();
+        try {
+            for (;;) {
+                // 必须在检查之前设置, 否则可能错过 writabilityListener 的通知
+                writableSignalNeeded = 1; // set signal needed to true
+                if (isWritable()) {
+                    return true;
+                }
+                if ((remains = writableCondition.awaitNanos(remains)) <= 0) {
+                    return isWritable();
+                }
+            }
+        } catch (InterruptedException e) {
+            ThrowUtil.throwException(e);
+        } finally {
+            _look.unlock();
+        }
+        return false;
+    }
+
+    private static boolean inIoThread(Object[] elements) {
+        for (Object element : elements) {
+            if (((NettyChannel) element).inIoThread()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     void notifyListeners() {
         for (;;) {
             Runnable listener = waitAvailableListeners.poll();
@@ -287,4 +590,19 @@ public class NettyChannelGroup implements JChannelGroup {
             listener.run();
         }
     }
+
+    enum SelectMode {
+        ROUND_ROBIN,
+        LEAST_IN_FLIGHT,
+        P2C;
+
+        static SelectMode parse(String name) {
+            for (SelectMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(name)) {
+                    return mode;
+                }
+            }
+            return ROUND_ROBIN;
+        }
+    }
 }
@@ -0,0 +1,213 @@
+package com.simple.jupiter.transport.netty.handler;
+
+import java.util.concurrent.atomic.AtomicLong;
+import com.simple.jupiter.transport.JProtocolHeader;
+import com.simple.jupiter.transport.exception.IoSignals;
+import com.simple.jupiter.util.Signal;
+import com.simple.jupiter.util.SystemPropertyUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+
+/**
+ * 超大消息体的分片(CHUNK)发送与组装, 帧格式见 {@link JProtocolHeader}.
+ *
+ * 编码端把消息体拆成 CHUNK_SIZE 大小的分片, 每个分片是原消息体的 retained slice, 没有内存拷贝;
+ * 解码端把分片依次加入 {@link CompositeByteBuf}, 单帧仍然受 jupiter.io.decoder.max.body.size 限制,
+ * 不需要为整个消息体分配一块连续的内存, 也不需要为了大消息调大单帧的限制; 组装好的消息体交给Serializer流式读取
+ * (见 {@link com.simple.jupiter.serialization.io.InputBuf#isContiguous()}).
+ *
+ * 除了单个消息的限制(jupiter.io.decoder.max.assembled.body.size), 整个进程内所有连接上正在组装的分片总量也有上限
+ * (jupiter.io.decoder.max.assembling.size), 超过时触发组装的连接会被关闭.
+ *
+ * 默认只有超过 5M (与 jupiter.io.decoder.max.body.size 的默认值一致) 的消息体才会分片, 这样的消息原本就会被对端以
+ * BODY_TOO_LARGE 拒绝, 所以不影响与不认识 CHUNK 的旧版本互通.
+ *
+ * 注意压缩是在分片之前对整个消息体做的, 解压时同样需要整个消息体, 解压后也是一整块连续的内存, 超大消息建议不要开启压缩.
+ *
+ * jupiter
+ * org.jupiter.transport.netty.handler
+ */
+final class Chunks {
+
+    // 消息体(压缩之后)超过该长度时分片发送, 默认5M
+    static final int CHUNK_THRESHOLD = SystemPropertyUtil.getInt("jupiter.io.encoder.chunk.threshold", 1024 * 1024 * 5);
+    // 每个分片的长度, 默认1M
+    static final int CHUNK_SIZE = Math.max(
+            Math.min(SystemPropertyUtil.getInt("jupiter.io.encoder.chunk.size", 1024 * 1024), CHUNK_THRESHOLD), 1024);
+    // 分片组装后的消息体最大限制, 默认256M
+    static final int MAX_ASSEMBLED_BODY_SIZE =
+            SystemPropertyUtil.getInt("jupiter.io.decoder.max.assembled.body.size", 1024 * 1024 * 256);
+    // 进程内所有连接正在组装(还没有收到最后一帧)的分片总长度的上限, 默认1G
+    static final long MAX_ASSEMBLING_SIZE =
+            SystemPropertyUtil.getLong("jupiter.io.decoder.max.assembling.size", 1024L * 1024 * 1024);
+
+    private static final AtomicLong assemblingSize = new AtomicLong();
+
+    static boolean needChunk(int bodyLength) {
+        return bodyLength > CHUNK_THRESHOLD;
+    }
+
+    /**
+     * 消息体编码后(包含所有帧的协议头)的总长度.
+     */
+    static int frameLength(int bodyLength) {
+        int count = needChunk(bodyLength) ? chunkCount(bodyLength) : 1;
+        return bodyLength + JProtocolHeader.HEADER_SIZE * count;
+    }
+
+    /**
+     * frame 是已经写好协议头的完整消息({@link LowCopyProtocolEncoder} 的输出), 拆分成多个帧, 组合成一个 {@link CompositeByteBuf},
+     * 分片是 frame 的 retained slice, 最终 frame 会被 release.
+     */
+    static ByteBuf split(ByteBuf frame) {
+        int readerIndex = frame.readerIndex();
+        byte sign = frame.getByte(readerIndex + 2);
+        byte status = frame.getByte(readerIndex + 3);
+        long id = frame.getLong(readerIndex + 4);
+        byte chunkSign = (byte) ((sign & 0xf0) | JProtocolHeader.CHUNK);
+
+        int bodyIndex = readerIndex + JProtocolHeader.HEADER_SIZE;
+        int bodyEnd = frame.writerIndex();
+        int count = chunkCount(bodyEnd - bodyIndex);
+
+        ByteBufAllocator alloc = frame.alloc();
+        CompositeByteBuf out = alloc.compositeDirectBuffer(count << 1);
+        try {
+            for (int i = 0; i < count; i++) {
+                int offset = bodyIndex + i * CHUNK_SIZE;
+                int length = Math.min(CHUNK_SIZE, bodyEnd - offset);
+                boolean last = i == count - 1;
+
+                ByteBuf header = alloc.directBuffer(JProtocolHeader.HEADER_SIZE);
+                writeHeader(header, last ? sign : chunkSign, status, id, length);
+                out.addComponent(true, header);
+                out.addComponent(true, frame.retainedSlice(offset, length));
+            }
+        } catch (Throwable t) {
+            out.release();
+            throw t;
+        } finally {
+            frame.release();
+        }
+        return out;
+    }
+
+    /**
+     * 写入一个完整的消息, 消息体过大时拆分成多个帧.
+     */
+    static void writeFrames(ByteBuf out, byte sign, byte status, long id, byte[] body) {
+        if (!needChunk(body.length)) {
+            writeHeader(out, sign, status, id, body.length);
+            out.writeBytes(body);
+            return;
+        }
+
+        byte chunkSign = (byte) ((sign & 0xf0) | JProtocolHeader.CHUNK);
+        for (int offset = 0; offset < body.length; offset += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, body.length - offset);
+            boolean last = offset + length == body.length;
+
+            writeHeader(out, last ? sign : chunkSign, status, id, length);
+            out.writeBytes(body, offset, length);
+        }
+    }
+
+    private static void writeHeader(ByteBuf out, byte sign, byte status, long id, int bodySize) {
+        out.writeShort(JProtocolHeader.MAGIC)
+                .writeByte(sign)
+                .writeByte(status)
+                .writeLong(id)
+                .writeInt(bodySize);
+    }
+
+    private static int chunkCount(int bodyLength) {
+        return (bodyLength + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    /**
+     * 解码端的分片组装, 每个decoder(即每个连接)一个实例, 只在 event loop 中访问.
+     */
+    static final class Assembler {
+
+        private CompositeByteBuf body;
+        private long id;
+
+        boolean isAssembling() {
+            return body != null;
+        }
+
+        /**
+         * 追加一个 CHUNK 帧的分片.
+         */
+        void append(ByteBuf chunk, long id) throws Signal {
+            if (body == null) {
+                // 不限制component个数, 避免 CompositeByteBuf 合并(拷贝)分片
+                body = chunk.alloc().compositeBuffer(Integer.MAX_VALUE);
+                this.id = id;
+            } else if (this.id != id) {
+                chunk.release();
+                throw IoSignals.ILLEGAL_CHUNK;
+            }
+
+            int length = chunk.readableBytes();
+            if (body.readableBytes() + length > MAX_ASSEMBLED_BODY_SIZE) {
+                chunk.release();
+                throw IoSignals.BODY_TOO_LARGE;
+            }
+            if (assemblingSize.addAndGet(length) > MAX_ASSEMBLING_SIZE) {
+                assemblingSize.addAndGet(-length);
+                chunk.release();
+                throw IoSignals.TOO_MANY_CHUNKS;
+            }
+            body.addComponent(true, chunk);
+        }
+
+        /**
+         * 消息的最后一帧, 返回组装(并解压)后的完整消息体; 之前没有分片时就是 last 本身.
+         */
+        ByteBuf complete(ByteBuf last, long id, byte status) throws Signal {
+            if (body == null) {
+                return JProtocolHeader.isCompressed(status) ? Compressions.decompress(last) : last;
+            }
+
+            append(last, id);
+            ByteBuf assembled = detach();
+            return JProtocolHeader.isCompressed(status) ? Compressions.decompress(assembled) : assembled;
+        }
+
+        /**
+         * 同 {@link #complete(ByteBuf, long, byte)}, 用于消息体为 byte[] 的decoder.
+         */
+        byte[] completeBytes(ByteBuf last, long id, byte status) throws Signal {
+            ByteBuf assembled = complete(last, id, status);
+            try {
+                return ByteBufUtil.getBytes(assembled);
+            } finally {
+                assembled.release();
+            }
+        }
+
+        void release() {
+            ByteBuf buf = detach();
+            if (buf != null) {
+                buf.release();
+            }
+        }
+
+        /**
+         * 组装结束(或者放弃), 从进程内正在组装的总量中减去.
+         */
+        private ByteBuf detach() {
+            ByteBuf buf = body;
+            if (buf != null) {
+                body = null;
+                assemblingSize.addAndGet(-buf.readableBytes());
+            }
+            return buf;
+        }
+    }
+
+    private Chunks() {}
+}
@@ -0,0 +1,184 @@
+package com.simple.jupiter.transport.netty.handler;
+
+import com.simple.jupiter.transport.JProtocolHeader;
+import com.simple.jupiter.transport.exception.IoSignals;
+import com.simple.jupiter.util.Signal;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * v2(紧凑)协议头的编解码, 格式见 {@link JProtocolHeader}.
+ *
+ * 对于小消息, v1定长16字节的协议头占了整个帧的很大比例, v2用varint表示消息id和消息体长度,
+ * id/长度都较小时协议头只有5~8个字节.
+ *
+ * jupiter
+ * org.jupiter.transport.netty.handler
+ */
+final class CompactHeaders {
+
+    /**
+     * v2协议头的长度, id为负数时不能使用v2, 返回 -1.
+     */
+    static int headerLength(long id, int bodySize) {
+        if (id < 0) {
+            return -1;
+        }
+        return 3 + varintLength(id) + varintLength(bodySize);
+    }
+
+    /**
+     * 把 {@link LowCopyProtocolEncoder} 编码好的v1帧原地改写成v2帧: 新的协议头写在原协议头(预留的16个字节)的末尾,
+     * 然后把 readerIndex 移到新协议头的开始, 没有内存拷贝.
+     *
+     * 分片后的消息, 或者v2协议头放不进16个字节(id过大)时原样返回.
+     */
+    static ByteBuf compact(ByteBuf frame) {
+        int readerIndex = frame.readerIndex();
+        int bodySize = frame.readableBytes() - JProtocolHeader.HEADER_SIZE;
+        if (bodySize < 0
+                || frame.getShort(readerIndex) != JProtocolHeader.MAGIC
+                || frame.getInt(readerIndex + 12) != bodySize) { // 分片的消息
+            return frame;
+        }
+
+        long id = frame.getLong(readerIndex + 4);
+        int headerLength = headerLength(id, bodySize);
+        if (headerLength < 0 || headerLength > JProtocolHeader.HEADER_SIZE) {
+            return frame;
+        }
+
+        byte sign = frame.getByte(readerIndex + 2);
+        byte status = frame.getByte(readerIndex + 3);
+
+        int writerIndex = frame.writerIndex();
+        int newReaderIndex = readerIndex + JProtocolHeader.HEADER_SIZE - headerLength;
+        frame.writerIndex(newReaderIndex);
+        writeHeader0(frame, sign, status, id, bodySize);
+        frame.writerIndex(writerIndex);
+        frame.readerIndex(newReaderIndex);
+
+        return frame;
+    }
+
+    /**
+     * 写入v2协议头, id为负数时什么都不写, 返回false.
+     */
+    static boolean writeHeader(ByteBuf out, byte sign, byte status, long id, int bodySize) {
+        if (id < 0) {
+            return false;
+        }
+        writeHeader0(out, sign, status, id, bodySize);
+        return true;
+    }
+
+    /**
+     * 读取magic之后的v2协议头, 数据不足时由 {@link io.netty.handler.codec.ReplayingDecoder} 负责重试.
+     */
+    static void readHeader(ByteBuf in, JProtocolHeader header) throws Signal {
+        in.skipBytes(1);                                // MAGIC
+        header.sign(in.readByte());                     // 消息标志位
+        header.status(in.readByte());                   // 状态位
+
+        long id = readVarint(in, 9);
+        long bodySize = readVarint(in, 5);
+        if (bodySize > Integer.MAX_VALUE) {
+            throw IoSignals.ILLEGAL_HEADER;
+        }
+        header.id(id);                                  // 消息id
+        header.bodySize((int) bodySize);                // 消息体长度
+    }
+
+    /**
+     * 不移动 readerIndex 读取从 index 开始的v2协议头, 返回协议头的长度, 数据不足时返回 -1.
+     */
+    static int peekHeader(ByteBuf in, int index, JProtocolHeader header) throws Signal {
+        int end = in.writerIndex();
+        if (end - index < 5) {
+            return -1;
+        }
+        int i = index + 3;
+        int idLength = completeVarintLength(in, i, end, 9);
+        if (idLength < 0) {
+            return -1;
+        }
+        int sizeLength = completeVarintLength(in, i + idLength, end, 5);
+        if (sizeLength < 0) {
+            return -1;
+        }
+
+        long bodySize = getVarint(in, i + idLength, 5);
+        if (bodySize > Integer.MAX_VALUE) {
+            throw IoSignals.ILLEGAL_HEADER;
+        }
+        header.sign(in.getByte(index + 1));             // 消息标志位
+        header.status(in.getByte(index + 2));           // 状态位
+        header.id(getVarint(in, i, 9));                 // 消息id
+        header.bodySize((int) bodySize);                // 消息体长度
+
+        return 3 + idLength + sizeLength;
+    }
+
+    private static void writeHeader0(ByteBuf out, byte sign, byte status, long id, int bodySize) {
+        out.writeByte(JProtocolHeader.MAGIC_V2)
+                .writeByte(sign)
+                .writeByte(status);
+        writeVarint(out, id);
+        writeVarint(out, bodySize);
+    }
+
+    private static void writeVarint(ByteBuf out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarint(ByteBuf in, int maxLength) throws Signal {
+        long value = 0;
+        for (int i = 0; i < maxLength; i++) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7f) << (7 * i);
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw IoSignals.ILLEGAL_HEADER;
+    }
+
+    private static long getVarint(ByteBuf in, int index, int maxLength) throws Signal {
+        long value = 0;
+        for (int i = 0; i < maxLength; i++) {
+            byte b = in.getByte(index + i);
+            value |= (long) (b & 0x7f) << (7 * i);
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw IoSignals.ILLEGAL_HEADER;
+    }
+
+    // 从 index 开始的varint的长度, 数据不足时返回 -1
+    private static int completeVarintLength(ByteBuf in, int index, int end, int maxLength) throws Signal {
+        for (int i = 0; i < maxLength; i++) {
+            if (index + i >= end) {
+                return -1;
+            }
+            if (in.getByte(index + i) >= 0) {
+                return i + 1;
+            }
+        }
+        throw IoSignals.ILLEGAL_HEADER;
+    }
+
+    private static int varintLength(long value) {
+        int length = 1;
+        while ((value & ~0x7fL) != 0) {
+            length++;
+            value >>>= 7;
+        }
+        return length;
+    }
+
+    private CompactHeaders() {}
+}
@@ -0,0 +1,164 @@
+package com.simple.jupiter.transport.netty.handler;
+
+import com.simple.jupiter.transport.CodecConfig;
+import com.simple.jupiter.transport.compress.Compressor;
+import com.simple.jupiter.transport.compress.CompressorFactory;
+import com.simple.jupiter.transport.exception.IoSignals;
+import com.simple.jupiter.util.Signal;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+/**
+ * 消息体的压缩/解压缩, 压缩后的消息体格式:
+ *
+ * <pre>
+ * = 1 // 压缩类型
+ * + 4 // 原始消息体长度
+ * + N // 压缩后的数据
+ * </pre>
+ *
+ * jupiter
+ * org.jupiter.transport.netty.handler
+ */
+final class Compressions {
+
+    // 压缩类型 + 原始长度
+    static final int COMPRESSED_HEADER_SIZE = 5;
+
+    /**
+     * 压缩 frame 中 headerSize 之后的消息体, 返回的 ByteBuf 同样在头部预留了 headerSize 个字节.
+     * 返回 null 表示不需要压缩(未开启/长度未达到阈值/压缩无收益), 否则 frame 会被 release.
+     */
+    static ByteBuf compress(ByteBuf frame, int headerSize) {
+        Compressor compressor = CodecConfig.compressor();
+        if (compressor == null) {
+            return null;
+        }
+        int bodyIndex = frame.readerIndex() + headerSize;
+        int bodyLength = frame.writerIndex() - bodyIndex;
+        if (bodyLength < CodecConfig.compressThreshold()) {
+            return null;
+        }
+
+        byte[] src;
+        int srcOffset;
+        if (frame.hasArray()) {
+            src = frame.array();
+            srcOffset = frame.arrayOffset() + bodyIndex;
+        } else {
+            src = ByteBufUtil.getBytes(frame, bodyIndex, bodyLength, false);
+            srcOffset = 0;
+        }
+
+        int dstIndex = headerSize + COMPRESSED_HEADER_SIZE;
+        ByteBuf out = frame.alloc().heapBuffer(dstIndex + compressor.maxCompressedLength(bodyLength));
+        try {
+            int n = compressor.compress(src, srcOffset, bodyLength, out.array(), out.arrayOffset() + dstIndex);
+            if (COMPRESSED_HEADER_SIZE + n >= bodyLength) {
+                // 压缩无收益
+                out.release();
+                return null;
+            }
+            out.writerIndex(headerSize)
+                    .writeByte(compressor.code())
+                    .writeInt(bodyLength)
+                    .writerIndex(dstIndex + n);
+        } catch (Throwable t) {
+            out.release();
+            throw t;
+        }
+
+        frame.release();
+
+        return out;
+    }
+
+    /**
+     * 压缩消息体, 返回 null 表示不需要压缩(未开启/长度未达到阈值/压缩无收益).
+     */
+    static byte[] compress(byte[] body) {
+        Compressor compressor = CodecConfig.compressor();
+        if (compressor == null || body.length < CodecConfig.compressThreshold()) {
+            return null;
+        }
+
+        byte[] dst = new byte[COMPRESSED_HEADER_SIZE + compressor.maxCompressedLength(body.length)];
+        int n = compressor.compress(body, 0, body.length, dst, COMPRESSED_HEADER_SIZE);
+        if (COMPRESSED_HEADER_SIZE + n >= body.length) {
+            return null; // 压缩无收益
+        }
+        dst[0] = compressor.code();
+        dst[1] = (byte) (body.length >>> 24);
+        dst[2] = (byte) (body.length >>> 16);
+        dst[3] = (byte) (body.length >>> 8);
+        dst[4] = (byte) body.length;
+
+        byte[] compressed = new byte[COMPRESSED_HEADER_SIZE + n];
+        System.arraycopy(dst, 0, compressed, 0, compressed.length);
+        return compressed;
+    }
+
+    /**
+     * 解压消息体, body 会被 release.
+     *
+     * 编码端先压缩再决定是否分片, 压缩前超过单帧限制(jupiter.io.decoder.max.body.size)的消息体压缩之后可能只有一帧,
+     * 所以解压后的长度与分片组装后的消息体受同一个限制(jupiter.io.decoder.max.assembled.body.size), 见 {@link Chunks}.
+     */
+    static ByteBuf decompress(ByteBuf body) throws Signal {
+        boolean released = false;
+        try {
+            Compressor compressor = CompressorFactory.getCompressor(body.readByte());
+            int length = checkDecompressedSize(body.readInt());
+
+            byte[] src;
+            int srcOffset;
+            int srcLength = body.readableBytes();
+            if (body.hasArray()) {
+                src = body.array();
+                srcOffset = body.arrayOffset() + body.readerIndex();
+            } else {
+                src = ByteBufUtil.getBytes(body, body.readerIndex(), srcLength, false);
+                srcOffset = 0;
+                // 已经拷贝出来了(比如分片组装的消息体), 不必等到解压结束, 避免压缩前后的数据和拷贝同时占用内存
+                released = true;
+                body.release();
+            }
+
+            ByteBuf out = body.alloc().heapBuffer(length, length);
+            try {
+                compressor.decompress(src, srcOffset, srcLength, out.array(), out.arrayOffset(), length);
+                out.writerIndex(length);
+            } catch (Throwable t) {
+                out.release();
+                throw t;
+            }
+            return out;
+        } finally {
+            if (!released) {
+                body.release();
+            }
+        }
+    }
+
+    /**
+     * 同 {@link #decompress(ByteBuf)}, 用于消息体为 byte[] 的decoder.
+     */
+    static byte[] decompress(byte[] body) throws Signal {
+        Compressor compressor = CompressorFactory.getCompressor(body[0]);
+        int length = checkDecompressedSize(
+                ((body[1] & 0xff) << 24) | ((body[2] & 0xff) << 16) | ((body[3] & 0xff) << 8) | (body[4] & 0xff));
+
+        byte[] bytes = new byte[length];
+        compressor.decompress(body, COMPRESSED_HEADER_SIZE, body.length - COMPRESSED_HEADER_SIZE, bytes, 0, length);
+        return bytes;
+    }
+
+    private static int checkDecompressedSize(int length) throws Signal {
+        if (length < 0 || length > Chunks.MAX_ASSEMBLED_BODY_SIZE) {
+            throw IoSignals.BODY_TOO_LARGE;
+        }
+        return length;
+    }
+
+    private Compressions() {}
+}
@@ -0,0 +1,164 @@
+package com.simple.jupiter.transport.netty.handler;
+
+import java.util.List;
+import com.simple.jupiter.transport.JProtocolHeader;
+import com.simple.jupiter.transport.exception.IoSignals;
+import com.simple.jupiter.transport.netty.Credits;
+import com.simple.jupiter.transport.netty.Handshakes;
+import com.simple.jupiter.transport.payload.JCancelPayload;
+import com.simple.jupiter.transport.payload.JRequestPayload;
+import com.simple.jupiter.transport.payload.JResponsePayload;
+import com.simple.jupiter.util.SystemClock;
+import com.simple.jupiter.util.SystemPropertyUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+
+/**
+ * 与 {@link ProtocolDecoder} 协议完全一致, 区别是基于 {@link ByteToMessageDecoder} 实现:
+ * 先 peek 16字节的协议头, 等到整个消息体都到达之后才一次性读出消息体,
+ * 避免了 {@link io.netty.handler.codec.ReplayingDecoder} 在大消息分多次到达时反复抛出 REPLAY 信号并重新解码.
+ *
+ * jupiter
+ * org.jupiter.transport.netty.handler
+ */
+public class CumulativeProtocolDecoder extends ByteToMessageDecoder {
+
+    /**
+     * Cumulate {@link ByteBuf}s by add them to a CompositeByteBuf and so do no memory copy whenever possible.
+     * Be aware that CompositeByteBuf use a more complex indexing implementation so depending on your use-case
+     * and the decoder implementation this may be slower then just use the {@link #MERGE_CUMULATOR}.
+     */
+    private static final boolean USE_COMPOSITE_BUF = SystemPropertyUtil.getBoolean("jupiter.io.decoder.composite.buf", false);
+
+    public CumulativeProtocolDecoder() {
+        if (USE_COMPOSITE_BUF) {
+            setCumulator(COMPOSITE_CUMULATOR);
+        }
+    }
+
+    // 协议头
+    private final JProtocolHeader header = new JProtocolHeader();
+    // 分片消息
+    private final Chunks.Assembler chunks = new Chunks.Assembler();
+    // 文件区段
+    private final FileRegions.Receiver files = new FileRegions.Receiver();
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        if (!in.isReadable()) {
+            return;
+        }
+
+        int readerIndex = in.readerIndex();
+        int headerSize;
+        if (in.getByte(readerIndex) == JProtocolHeader.MAGIC_V2) {
+            headerSize = CompactHeaders.peekHeader(in, readerIndex, header);   // v2协议头
+            if (headerSize < 0) {
+                return;
+            }
+        } else {
+            if (in.readableBytes() < JProtocolHeader.HEADER_SIZE) {
+                return;
+            }
+            ProtocolDecoder.checkMagic(in.getShort(readerIndex));               // MAGIC
+            header.sign(in.getByte(readerIndex + 2));                           // 消息标志位
+            header.status(in.getByte(readerIndex + 3));                         // 状态位
+            header.id(in.getLong(readerIndex + 4));                             // 消息id
+            header.bodySize(in.getInt(readerIndex + 12));                       // 消息体长度
+            headerSize = JProtocolHeader.HEADER_SIZE;
+        }
+
+        switch (header.messageCode()) {
+            case JProtocolHeader.HEARTBEAT:
+                in.skipBytes(headerSize);
+                if (header.status() != 0) {
+                    out.add(new Handshakes.Hello(header.status()));
+                }
+                break;
+            case JProtocolHeader.CREDIT:
+                in.skipBytes(headerSize);
+                out.add(new Credits.Grant((int) header.id()));
+                break;
+            case JProtocolHeader.CANCEL:
+                in.skipBytes(headerSize);
+                out.add(new JCancelPayload(header.id()));
+                break;
+            case JProtocolHeader.FILE: {
+                int length = ProtocolDecoder.checkBodySize(header.bodySize());
+                if (in.readableBytes() < headerSize + length) {
+                    return; // 文件区段还未完整到达
+                }
+                in.skipBytes(headerSize);
+                files.append(in.readSlice(length), header.id(), header.status());
+
+                break;
+            }
+            case JProtocolHeader.CHUNK: {
+                int length = ProtocolDecoder.checkBodySize(header.bodySize());
+                if (in.readableBytes() < headerSize + length) {
+                    return; // 分片还未完整到达
+                }
+                in.skipBytes(headerSize);
+                chunks.append(in.readRetainedSlice(length), header.id());
+
+                break;
+            }
+            case JProtocolHeader.REQUEST: {
+                int length = ProtocolDecoder.checkBodySize(header.bodySize());
+                if (in.readableBytes() < headerSize + length) {
+                    return; // 消息体还未完整到达
+                }
+                in.skipBytes(headerSize);
+                byte[] bytes = ProtocolDecoder.readBody(in, length, header, chunks);
+
+                JRequestPayload request = new JRequestPayload(header.id());
+                request.status(JProtocolHeader.unmaskStatus(header.status()));
+                request.timestamp(SystemClock.millisClock().now());
+                request.fileRegions(files.complete(header.id()));
+                request.bytes(header.serializerCode(), bytes);
+
+                out.add(request);
+
+                break;
+            }
+            case JProtocolHeader.RESPONSE: {
+                int length = ProtocolDecoder.checkBodySize(header.bodySize());
+                if (in.readableBytes() < headerSize + length) {
+                    return; // 消息体还未完整到达
+                }
+                in.skipBytes(headerSize);
+                byte[] bytes = ProtocolDecoder.readBody(in, length, header, chunks);
+
+                JResponsePayload response = new JResponsePayload(header.id());
+                response.status(JProtocolHeader.unmaskStatus(header.status()));
+                response.fileRegions(files.complete(header.id()));
+                response.bytes(header.serializerCode(), bytes);
+
+                out.add(response);
+
+                break;
+            }
+            case JProtocolHeader.BATCH: {
+                int length = ProtocolDecoder.checkBodySize(header.bodySize());
+                if (in.readableBytes() < headerSize + length) {
+                    return; // 消息体还未完整到达
+                }
+                in.skipBytes(headerSize);
+                ByteBuf batchByteBuf = in.readSlice(length);
+
+                ProtocolDecoder.decodeBatch(batchByteBuf, (int) header.id(), out);
+
+                break;
+            }
+            default:
+                throw IoSignals.ILLEGAL_SIGN;
+        }
+    }
+
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+        chunks.release();
+        files.release();
+    }
+}
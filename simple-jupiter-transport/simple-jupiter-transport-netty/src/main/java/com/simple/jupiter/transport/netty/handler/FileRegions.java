@@ -0,0 +1,268 @@
+package com.simple.jupiter.transport.netty.handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import com.simple.jupiter.concurrent.NamedThreadFactory;
+import com.simple.jupiter.transport.JFileRegion;
+import com.simple.jupiter.transport.JProtocolHeader;
+import com.simple.jupiter.transport.exception.IoSignals;
+import com.simple.jupiter.transport.payload.JRequestPayload;
+import com.simple.jupiter.transport.payload.JResponsePayload;
+import com.simple.jupiter.transport.payload.PayloadHolder;
+import com.simple.jupiter.util.Signal;
+import com.simple.jupiter.util.StackTraceUtil;
+import com.simple.jupiter.util.SystemPropertyUtil;
+import com.simple.jupiter.util.internal.logging.InternalLogger;
+import com.simple.jupiter.util.internal.logging.InternalLoggerFactory;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.PromiseCombiner;
+
+/**
+ * 文件区段({@link JFileRegion})的发送与接收, 帧格式见 {@link JProtocolHeader}.
+ *
+ * 发送端每个FILE帧由协议头和 {@link DefaultFileRegion} 组成, 文件内容由内核直接发送(sendfile/transferTo), 不经过堆内存,
+ * 也不经过序列化; 单帧不超过 jupiter.io.encoder.chunk.size, 接收端收到一帧就写入临时文件, 不需要为整个文件分配内存.
+ *
+ * 临时文件在IO线程中创建, 内容交给单独的写线程写入(同一个连接上按顺序串行), 业务线程拿到文件区段之前等待写入完成,
+ * 见 {@link JFileRegion#awaitAll(List)}; 一个连接上还没有写入的数据超过 jupiter.io.decoder.file.pending 时,
+ * IO线程等待写入完成之后再继续读, 相当于退回到同步写入.
+ *
+ * jupiter
+ * org.jupiter.transport.netty.handler
+ */
+final class FileRegions {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(FileRegions.class);
+
+    // 接收端单个消息所有文件区段的最大总长度, 默认8G
+    static final long MAX_FILE_SIZE = SystemPropertyUtil.getLong("jupiter.io.decoder.max.file.size", 8L << 30);
+    // 接收端临时文件的目录
+    private static final File FILE_DIR = new File(
+            SystemPropertyUtil.get("jupiter.io.decoder.file.dir", SystemPropertyUtil.get("java.io.tmpdir")));
+    // 接收端写临时文件的线程数
+    private static final int WRITER_THREADS = SystemPropertyUtil.getInt("jupiter.io.decoder.file.threads", 2);
+    // 接收端单个连接上已经读到但是还没有写入临时文件的最大字节数, 默认64M
+    private static final long MAX_PENDING_BYTES = SystemPropertyUtil.getLong("jupiter.io.decoder.file.pending", 64L << 20);
+
+    // 队列无界, 不会拒绝任务: 被拒绝的写任务会导致它持有的 ByteBuf 泄漏
+    private static final ExecutorService writer =
+            Executors.newFixedThreadPool(WRITER_THREADS, new NamedThreadFactory("file.region.writer", true));
+
+    static boolean hasFileRegions(Object msg) {
+        if (!(msg instanceof PayloadHolder)) {
+            return false;
+        }
+        List<JFileRegion> regions = ((PayloadHolder) msg).fileRegions();
+        return regions != null && !regions.isEmpty();
+    }
+
+    /**
+     * 在消息之前写出它的所有文件区段, 返回消息本身要使用的promise; 所有帧都写出后才通知原来的 promise.
+     */
+    static ChannelPromise writeFrames(ChannelHandlerContext ctx, PayloadHolder msg, ChannelPromise promise) {
+        long id = msg instanceof JRequestPayload ? ((JRequestPayload) msg).invokeId() : ((JResponsePayload) msg).id();
+        byte sign = JProtocolHeader.toSign((byte) 0x00, JProtocolHeader.FILE);
+
+        PromiseCombiner combiner = new PromiseCombiner(ctx.executor());
+        for (JFileRegion region : msg.fileRegions()) {
+            long position = region.position();
+            long end = position + region.count();
+            do {
+                int length = (int) Math.min(Chunks.CHUNK_SIZE, end - position);
+                boolean last = position + length == end;
+
+                ByteBuf header = ctx.alloc().ioBuffer(JProtocolHeader.HEADER_SIZE);
+                header.writeShort(JProtocolHeader.MAGIC)
+                        .writeByte(sign)
+                        .writeByte(last ? JProtocolHeader.FILE_LAST : 0x00)
+                        .writeLong(id)
+                        .writeInt(length);
+                combiner.add(ctx.write(header));
+                if (length > 0) {
+                    // 每个 DefaultFileRegion 在真正写出时才打开文件, 写完后关闭
+                    combiner.add(ctx.write(new DefaultFileRegion(region.file(), position, length)));
+                }
+                position += length;
+            } while (position < end);
+        }
+
+        ChannelPromise msgPromise = ctx.newPromise();
+        combiner.add((Future<?>) msgPromise);
+        combiner.finish(promise);
+        return msgPromise;
+    }
+
+    private FileRegions() {}
+
+    /**
+     * 解码端接收文件区段, 每个decoder(即每个连接)一个实例, 只在 event loop 中访问.
+     */
+    static final class Receiver {
+
+        private long id;
+        private List<JFileRegion> received;     // 已经接收完成的区段
+        private long total;                     // 所有区段的总长度
+
+        private Region region;                  // 正在接收的区段
+        private long position;                  // 正在接收的区段已经提交写入的长度
+
+        // 同一个连接上的写任务按顺序串行执行, 每个任务都不会异常完成
+        private CompletableFuture<Void> writes = CompletableFuture.completedFuture(null);
+        private final AtomicLong pendingBytes = new AtomicLong();
+
+        /**
+         * 追加一个FILE帧, frame 会被读完.
+         */
+        void append(ByteBuf frame, long id, byte status) throws Signal {
+            if (received == null) {
+                received = new ArrayList<>(2);
+                total = 0;
+                this.id = id;
+            } else if (this.id != id) {
+                release();
+                throw IoSignals.ILLEGAL_FILE;
+            }
+
+            total += frame.readableBytes();
+            if (total > MAX_FILE_SIZE) {
+                release();
+                throw IoSignals.BODY_TOO_LARGE;
+            }
+
+            if (region == null) {
+                try {
+                    region = new Region(File.createTempFile("jupiter-", ".region", FILE_DIR));
+                } catch (IOException e) {
+                    logger.error("Create file region failed: {}, {}.", FILE_DIR, StackTraceUtil.stackTrace(e));
+
+                    release();
+                    throw IoSignals.ILLEGAL_FILE;
+                }
+                position = 0;
+            }
+
+            final Region r = region;
+            int length = frame.readableBytes();
+            if (length > 0) {
+                ByteBuf data = frame.readRetainedSlice(length);
+                long p = position;
+                position += length;
+                pendingBytes.addAndGet(length);
+                writes = writes.thenRunAsync(() -> {
+                    r.write(data, p);
+                    pendingBytes.addAndGet(-length);
+                }, writer);
+            }
+            if (status == JProtocolHeader.FILE_LAST) {
+                writes = writes.thenRunAsync(r::finish, writer);
+                received.add(JFileRegion.temporary(r.file, position, r.written));
+                region = null;
+            }
+
+            if (pendingBytes.get() > MAX_PENDING_BYTES) {
+                // 磁盘跟不上网络, 等待之前的写入完成
+                writes.join();
+            }
+        }
+
+        /**
+         * 收到所属的Request/Response, 返回它的所有文件区段, 没有时返回null.
+         */
+        List<JFileRegion> complete(long id) throws Signal {
+            if (received == null) {
+                return null;
+            }
+            if (this.id != id || region != null) {
+                release();
+                throw IoSignals.ILLEGAL_FILE;
+            }
+            List<JFileRegion> regions = received;
+            received = null;
+            return regions;
+        }
+
+        /**
+         * 删除还没有交给上层的临时文件, 还没有完成的写入会失败或者写到已经删除的文件中.
+         */
+        void release() {
+            if (region != null) {
+                if (!region.file.delete()) {
+                    logger.warn("Delete file failed: {}.", region.file);
+                }
+                region = null;
+            }
+            if (received != null) {
+                for (JFileRegion r : received) {
+                    r.release();
+                }
+                received = null;
+            }
+        }
+    }
+
+    /**
+     * 接收中的一个区段, 除了构造, 只在写线程中访问(同一个连接上的写入串行执行).
+     */
+    private static final class Region {
+
+        final File file;
+        final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        private FileChannel channel;
+        private IOException failure;
+
+        Region(File file) {
+            this.file = file;
+        }
+
+        void write(ByteBuf data, long position) {
+            try {
+                if (failure != null) {
+                    return;
+                }
+                if (channel == null) {
+                    channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+                }
+                while (data.isReadable()) {
+                    position += data.readBytes(channel, position, data.readableBytes());
+                }
+            } catch (IOException e) {
+                logger.error("Write file region failed: {}, {}.", file, StackTraceUtil.stackTrace(e));
+
+                failure = e;
+            } finally {
+                data.release();
+            }
+        }
+
+        void finish() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+                channel = null;
+            }
+            if (failure == null) {
+                written.complete(null);
+            } else {
+                written.completeExceptionally(failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.simple.jupiter.transport.netty.handler;
+
+import com.simple.jupiter.transport.JProtocolHeader;
+import com.simple.jupiter.transport.netty.Handshakes;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+/**
+ * 协商v2(紧凑)协议头, 放在decoder之后.
+ *
+ * 客户端: 连接建立时发出v2的协商消息, 收到服务端的回复后开始使用v2编码.
+ * 服务端: 收到客户端的协商消息后回复, 然后开始使用v2编码.
+ * 没有开启 JOption.COMPACT_HEADER 时不发出也不回复协商消息, 只是吞掉对端发来的协商消息.
+ *
+ * 协商完成之前双方都使用v1编码, decoder同时识别v1/v2, 所以切换时不需要同步.
+ *
+ * jupiter
+ * org.jupiter.transport.netty.handler
+ */
+@ChannelHandler.Sharable
+public class HandshakeHandler extends ChannelInboundHandlerAdapter {
+
+    private final boolean client;
+    private final boolean enabled;
+
+    public HandshakeHandler(boolean client, boolean enabled) {
+        this.client = client;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        if (client && enabled) {
+            ctx.writeAndFlush(Handshakes.helloContent(), ctx.voidPromise());
+        }
+
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof Handshakes.Hello)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        if (enabled && ((Handshakes.Hello) msg).version() >= JProtocolHeader.VERSION_2) {
+            if (!client) {
+                ctx.writeAndFlush(Handshakes.helloContent(), ctx.voidPromise());
+            }
+            ctx.channel().attr(Handshakes.COMPACT_HEADER).set(true);
+        }
+    }
+}
@@ -16,22 +16,28 @@
 package com.simple.jupiter.transport.netty.handler;
 
 import com.simple.jupiter.util.SystemClock;
+import com.simple.jupiter.util.SystemPropertyUtil;
 import io.netty.channel.*;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.Timeout;
 import io.netty.util.TimerTask;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.FastThreadLocal;
 
 import java.util.concurrent.TimeUnit;
 
 /**
- * 基于 {@link HashedWheelTimer} 的空闲链路监测.
+ * 基于 {@link HashedWheelTimer} 或者 event-loop 定时扫描的空闲链路监测.
  *
  *  1. Netty4.x默认的链路检测使用的是eventLoop的delayQueue, delayQueue是一个优先级队列, 复杂度为O(log n),
  *      每个worker处理自己的链路监测, 可能有助于减少上下文切换, 但是网络IO操作与idle会相互影响.
  *  2. 这个实现使用{@link HashedWheelTimer}的复杂度为O(1), 而且网络IO操作与idle不会相互影响, 但是有上下文切换.
  *  3. 如果连接数小, 比如几万以内, 可以直接用Netty4.x默认的链路检测 {@link io.netty.handler.timeout.IdleStateHandler},
  *      如果连接数较大, 建议使用这个实现.
+ *  4. 不指定 timer 时, 每个 event-loop 只有一个定时任务(间隔 jupiter.io.idle.sweep.interval, 默认1秒),
+ *      依次检查该 event-loop 上的所有链路, 每个链路没有额外的定时任务对象, 也没有上下文切换,
+ *      适合10万以上大部分空闲的连接; 空闲事件最多延迟一个扫描间隔.
  *
  * jupiter
  * org.jupiter.transport.netty.handler
@@ -41,6 +47,9 @@ import java.util.concurrent.TimeUnit;
 public class IdleStateChecker extends ChannelDuplexHandler {
 
     private static final long MIN_TIMEOUT_MILLIS = 1;
+    // event-loop 扫描空闲链路的间隔
+    private static final long SWEEP_INTERVAL_MILLIS =
+            Math.max(SystemPropertyUtil.getLong("jupiter.io.idle.sweep.interval", 1000), MIN_TIMEOUT_MILLIS);
 
     // do not create a new ChannelFutureListener per write operation to reduce GC pressure.
     private final ChannelFutureListener writeListener = new ChannelFutureListener() {
@@ -72,6 +81,25 @@ public class IdleStateChecker extends ChannelDuplexHandler {
     private volatile Timeout allIdleTimeout;
     private boolean firstAllIdleEvent = true;
 
+    // 以下只用于 event-loop 扫描(timer 为 null), 只在 event-loop 中访问
+    private ChannelHandlerContext ctx;
+    private Sweeper sweeper;
+    private IdleStateChecker prev, next;    // Sweeper 中的双向链表
+    private long readerIdleDeadline;
+    private long writerIdleDeadline;
+    private long allIdleDeadline;
+
+    /**
+     * 使用 event-loop 扫描.
+     */
+    public IdleStateChecker(
+            int readerIdleTimeSeconds,
+            int writerIdleTimeSeconds,
+            int allIdleTimeSeconds) {
+
+        this(null, readerIdleTimeSeconds, writerIdleTimeSeconds, allIdleTimeSeconds, TimeUnit.SECONDS);
+    }
+
     public IdleStateChecker(
             HashedWheelTimer timer,
             int readerIdleTimeSeconds,
@@ -219,6 +247,17 @@ public class IdleStateChecker extends ChannelDuplexHandler {
         state = 1;
 
         lastReadTime = lastWriteTime = SystemClock.millisClock().now();
+        if (timer == null) {
+            if (readerIdleTimeMillis > 0 || writerIdleTimeMillis > 0 || allIdleTimeMillis > 0) {
+                readerIdleDeadline = readerIdleTimeMillis > 0 ? lastReadTime + readerIdleTimeMillis : 0;
+                writerIdleDeadline = writerIdleTimeMillis > 0 ? lastWriteTime + writerIdleTimeMillis : 0;
+                allIdleDeadline = allIdleTimeMillis > 0 ? lastReadTime + allIdleTimeMillis : 0;
+                this.ctx = ctx;
+                sweeper = Sweeper.current(ctx.executor());
+                sweeper.add(this);
+            }
+            return;
+        }
         if (readerIdleTimeMillis > 0) {
             readerIdleTimeout = timer.newTimeout(
                     new ReaderIdleTimeoutTask(ctx),
@@ -239,6 +278,12 @@ public class IdleStateChecker extends ChannelDuplexHandler {
     private void destroy() {
         state = 2;
 
+        if (sweeper != null) {
+            sweeper.remove(this);
+            sweeper = null;
+            ctx = null;
+        }
+
         if (readerIdleTimeout != null) {
             readerIdleTimeout.cancel();
             readerIdleTimeout = null;
@@ -257,6 +302,151 @@ public class IdleStateChecker extends ChannelDuplexHandler {
         ctx.fireUserEventTriggered(evt);
     }
 
+    /**
+     * 由 {@link Sweeper} 调用, 逻辑与下面三个 TimerTask 一致, 用截止时间代替定时任务.
+     */
+    private void sweep(long now) {
+        ChannelHandlerContext ctx = this.ctx;
+        if (!ctx.channel().isOpen()) {
+            return;
+        }
+
+        if (readerIdleDeadline > 0 && now >= readerIdleDeadline) {
+            long nextDelay = readerIdleTimeMillis;
+            if (!reading) {
+                nextDelay -= now - lastReadTime;
+            }
+            if (nextDelay <= 0) {
+                readerIdleDeadline = now + readerIdleTimeMillis;
+                IdleStateEvent event;
+                if (firstReaderIdleEvent) {
+                    firstReaderIdleEvent = false;
+                    event = IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT;
+                } else {
+                    event = IdleStateEvent.READER_IDLE_STATE_EVENT;
+                }
+                fireIdle(ctx, event);
+            } else {
+                readerIdleDeadline = now + nextDelay;
+            }
+        }
+
+        if (writerIdleDeadline > 0 && now >= writerIdleDeadline) {
+            long nextDelay = writerIdleTimeMillis - (now - lastWriteTime);
+            if (nextDelay <= 0) {
+                writerIdleDeadline = now + writerIdleTimeMillis;
+                IdleStateEvent event;
+                if (firstWriterIdleEvent) {
+                    firstWriterIdleEvent = false;
+                    event = IdleStateEvent.FIRST_WRITER_IDLE_STATE_EVENT;
+                } else {
+                    event = IdleStateEvent.WRITER_IDLE_STATE_EVENT;
+                }
+                fireIdle(ctx, event);
+            } else {
+                writerIdleDeadline = now + nextDelay;
+            }
+        }
+
+        if (allIdleDeadline > 0 && now >= allIdleDeadline) {
+            long nextDelay = allIdleTimeMillis;
+            if (!reading) {
+                nextDelay -= now - Math.max(lastReadTime, lastWriteTime);
+            }
+            if (nextDelay <= 0) {
+                allIdleDeadline = now + allIdleTimeMillis;
+                IdleStateEvent event;
+                if (firstAllIdleEvent) {
+                    firstAllIdleEvent = false;
+                    event = IdleStateEvent.FIRST_ALL_IDLE_STATE_EVENT;
+                } else {
+                    event = IdleStateEvent.ALL_IDLE_STATE_EVENT;
+                }
+                fireIdle(ctx, event);
+            } else {
+                allIdleDeadline = now + nextDelay;
+            }
+        }
+    }
+
+    private void fireIdle(ChannelHandlerContext ctx, IdleStateEvent event) {
+        try {
+            channelIdle(ctx, event);
+        } catch (Throwable t) {
+            ctx.fireExceptionCaught(t);
+        }
+    }
+
+    /**
+     * 每个 event-loop 一个, 定时扫描该 event-loop 上的所有 {@link IdleStateChecker}, 只在 event-loop 中访问.
+     */
+    private static final class Sweeper implements Runnable {
+
+        private static final FastThreadLocal<Sweeper> sweepers = new FastThreadLocal<>();
+
+        static Sweeper current(EventExecutor executor) {
+            Sweeper sweeper = sweepers.get();
+            if (sweeper == null) {
+                sweeper = new Sweeper(executor);
+                sweepers.set(sweeper);
+            }
+            return sweeper;
+        }
+
+        private final EventExecutor executor;
+        private IdleStateChecker head;
+        private boolean scheduled;
+
+        private Sweeper(EventExecutor executor) {
+            this.executor = executor;
+        }
+
+        void add(IdleStateChecker checker) {
+            checker.next = head;
+            if (head != null) {
+                head.prev = checker;
+            }
+            head = checker;
+
+            if (!scheduled) {
+                scheduled = true;
+                executor.schedule(this, SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        void remove(IdleStateChecker checker) {
+            if (checker.prev != null) {
+                checker.prev.next = checker.next;
+            } else if (head == checker) {
+                head = checker.next;
+            }
+            if (checker.next != null) {
+                checker.next.prev = checker.prev;
+            }
+            // 保留 checker.next, 扫描过程中移除当前链路(比如关闭连接)时还能继续向后遍历
+            checker.prev = null;
+        }
+
+        @Override
+        public void run() {
+            long now = SystemClock.millisClock().now();
+            IdleStateChecker checker = head;
+            while (checker != null) {
+                IdleStateChecker next = checker.next;
+                if (checker.sweeper == this) {
+                    checker.sweep(now);
+                }
+                checker = next;
+            }
+
+            if (head != null) {
+                executor.schedule(this, SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } else {
+                scheduled = false;
+            }
+        }
+    }
+
     private final class ReaderIdleTimeoutTask implements TimerTask {
 
         private final ChannelHandlerContext ctx;
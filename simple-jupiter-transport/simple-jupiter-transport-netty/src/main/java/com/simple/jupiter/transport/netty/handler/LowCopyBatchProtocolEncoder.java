@@ -0,0 +1,176 @@
+package com.simple.jupiter.transport.netty.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.simple.jupiter.transport.JProtocolHeader;
+import com.simple.jupiter.transport.netty.Handshakes;
+import com.simple.jupiter.transport.payload.PayloadHolder;
+import com.simple.jupiter.util.SystemPropertyUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.EncoderException;
+
+/**
+ * 将两次flush之间写入的 Request/Response 打包成一个 BATCH 消息发出.
+ *
+ * <pre>
+ * **************************************************************************************************
+ *                                          Batch
+ *  ┌ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ┐
+ *       2   │   1   │    1   │     8     │      4      │   1  │   1   │   8  │   4  │
+ *  ├ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ┤
+ *           │       │        │           │             │      │       │      │      │
+ *  │  MAGIC   BATCH     0x00     Count      Body Size    Sign   Status   Id    Size   Body   ...    │
+ *           │       │        │           │             │      │       │      │      │
+ *  └ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ┘
+ * </pre>
+ *
+ * 子消息直接复用 {@link LowCopyProtocolEncoder} 编码好的 ByteBuf (跳过2个字节的magic), 通过
+ * {@link CompositeByteBuf} 组合在一起, 不会有额外的内存拷贝.
+ *
+ * 每个 channel 独享一个实例, 不可以 Sharable.
+ *
+ * jupiter
+ * org.jupiter.transport.netty.handler
+ */
+public class LowCopyBatchProtocolEncoder extends ChannelOutboundHandlerAdapter {
+
+    // 单个batch最多容纳的子消息个数
+    private static final int MAX_BATCH_COUNT =
+            SystemPropertyUtil.getInt("jupiter.io.encoder.batch.max.count", 64);
+    // 单个batch消息体的最大长度, 超过后立即发出
+    private static final int MAX_BATCH_BYTES =
+            SystemPropertyUtil.getInt("jupiter.io.encoder.batch.max.bytes", 64 * 1024);
+
+    private final LowCopyProtocolEncoder encoder;
+
+    private final List<ByteBuf> pendingFrames = new ArrayList<>();
+    private final List<ChannelPromise> pendingPromises = new ArrayList<>();
+    private int pendingBytes;
+
+    public LowCopyBatchProtocolEncoder(LowCopyProtocolEncoder encoder) {
+        this.encoder = encoder;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!(msg instanceof PayloadHolder)) {
+            // 保证消息顺序
+            writePending(ctx);
+            ctx.write(msg, promise);
+            return;
+        }
+
+        if (FileRegions.hasFileRegions(msg)) {
+            // 带文件区段的消息不能作为batch的子消息
+            writePending(ctx);
+            encoder.write(ctx, msg, promise);
+            return;
+        }
+
+        ByteBuf frame;
+        try {
+            frame = encoder.encode((PayloadHolder) msg);
+        } catch (Throwable t) {
+            throw new EncoderException(t);
+        }
+
+        if (frame.readableBytes() >= MAX_BATCH_BYTES || frame.readableBytes() > Chunks.CHUNK_THRESHOLD) {
+            // 大消息单独发送, 避免撑大batch; 分片后的消息不能作为batch的子消息
+            writePending(ctx);
+            writeSingle(ctx, frame, promise);
+            return;
+        }
+
+        pendingFrames.add(frame);
+        pendingPromises.add(promise);
+        pendingBytes += frame.readableBytes() - 2; // 子消息不需要magic
+
+        if (pendingFrames.size() >= MAX_BATCH_COUNT || pendingBytes >= MAX_BATCH_BYTES) {
+            writePending(ctx);
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        writePending(ctx);
+        ctx.flush();
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        writePending(ctx);
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        for (ByteBuf frame : pendingFrames) {
+            frame.release();
+        }
+        pendingFrames.clear();
+        pendingPromises.clear();
+        pendingBytes = 0;
+    }
+
+    private void writePending(ChannelHandlerContext ctx) {
+        int count = pendingFrames.size();
+        if (count == 0) {
+            return;
+        }
+
+        if (count == 1) {
+            // 单个消息没必要打包
+            writeSingle(ctx, pendingFrames.get(0), pendingPromises.get(0));
+        } else {
+            CompositeByteBuf batch = ctx.alloc().compositeDirectBuffer(count + 1);
+
+            ByteBuf header = ctx.alloc().directBuffer(JProtocolHeader.HEADER_SIZE);
+            header.writeShort(JProtocolHeader.MAGIC)
+                    .writeByte(JProtocolHeader.toSign((byte) 0x00, JProtocolHeader.BATCH))
+                    .writeByte(0x00)
+                    .writeLong(count)
+                    .writeInt(pendingBytes);
+            batch.addComponent(true, header);
+
+            for (ByteBuf frame : pendingFrames) {
+                // 跳过magic
+                batch.addComponent(true, frame.skipBytes(2));
+            }
+
+            ChannelPromise batchPromise = ctx.newPromise();
+            final ChannelPromise[] promises = pendingPromises.toArray(new ChannelPromise[0]);
+            batchPromise.addListener((ChannelFutureListener) future -> {
+                // 每个子消息的promise都需要单独通知
+                for (ChannelPromise p : promises) {
+                    if (p.isVoid()) {
+                        continue;
+                    }
+                    if (future.isSuccess()) {
+                        p.trySuccess();
+                    } else {
+                        p.tryFailure(future.cause());
+                    }
+                }
+            });
+
+            ctx.write(batch, batchPromise);
+        }
+
+        pendingFrames.clear();
+        pendingPromises.clear();
+        pendingBytes = 0;
+    }
+
+    // 不打包的消息与 LowCopyProtocolEncoder 一样, 协商了v2时改写成紧凑协议头(分片的消息原样发送)
+    private static void writeSingle(ChannelHandlerContext ctx, ByteBuf frame, ChannelPromise promise) {
+        if (Handshakes.isCompactHeader(ctx.channel())) {
+            frame = CompactHeaders.compact(frame);
+        }
+        ctx.write(frame, promise);
+    }
+}
@@ -6,6 +6,9 @@ import java.util.List;
 import com.simple.jupiter.serialization.io.InputBuf;
 import com.simple.jupiter.transport.JProtocolHeader;
 import com.simple.jupiter.transport.exception.IoSignals;
+import com.simple.jupiter.transport.netty.Credits;
+import com.simple.jupiter.transport.netty.Handshakes;
+import com.simple.jupiter.transport.payload.JCancelPayload;
 import com.simple.jupiter.transport.payload.JRequestPayload;
 import com.simple.jupiter.transport.payload.JResponsePayload;
 import com.simple.jupiter.util.Signal;
@@ -15,6 +18,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ReplayingDecoder;
+import io.netty.util.Recycler;
 
 /**
  * <pre>
@@ -31,7 +35,7 @@ import io.netty.handler.codec.ReplayingDecoder;
  * 消息头16个字节定长
  * = 2 // magic = (short) 0xbabe
  * + 1 // 消息标志位, 低地址4位用来表示消息类型request/response/heartbeat等, 高地址4位用来表示序列化类型
- * + 1 // 状态位, 设置请求响应状态
+ * + 1 // 状态位, 设置请求响应状态, 最高位用来标识消息体是否被压缩
  * + 8 // 消息 id, long 类型, 未来jupiter可能将id限制在48位, 留出高地址的16位作为扩展字段
  * + 4 // 消息体 body 长度, int 类型
  * </pre>
@@ -44,7 +48,7 @@ import io.netty.handler.codec.ReplayingDecoder;
 public class LowCopyProtocolDecoder extends ReplayingDecoder<LowCopyProtocolDecoder.State> {
 
     // 协议体最大限制, 默认5M
-    private static final int MAX_BODY_SIZE = SystemPropertyUtil.getInt("jupiter.io.decoder.max.body.size", 1024 * 1024 * 5);
+    static final int MAX_BODY_SIZE = SystemPropertyUtil.getInt("jupiter.io.decoder.max.body.size", 1024 * 1024 * 5);
 
     /**
      * Cumulate {@link ByteBuf}s by add them to a CompositeByteBuf and so do no memory copy whenever possible.
@@ -62,10 +66,22 @@ public class LowCopyProtocolDecoder extends ReplayingDecoder<LowCopyProtocolDeco
 
     // 协议头
     private final JProtocolHeader header = new JProtocolHeader();
+    // 分片消息
+    private final Chunks.Assembler chunks = new Chunks.Assembler();
+    // 文件区段
+    private final FileRegions.Receiver files = new FileRegions.Receiver();
 
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-        switch (state()) {
+        State state = state();
+        if (state == State.MAGIC && in.getByte(in.readerIndex()) == JProtocolHeader.MAGIC_V2) {
+            // v2协议头, 不完整时从MAGIC重新开始
+            CompactHeaders.readHeader(in, header);
+            checkpoint(State.BODY);
+            state = State.BODY;
+        }
+
+        switch (state) {
             case MAGIC:
                 checkMagic(in.readShort());         // MAGIC
                 checkpoint(State.SIGN);
@@ -84,14 +100,37 @@ public class LowCopyProtocolDecoder extends ReplayingDecoder<LowCopyProtocolDeco
             case BODY:
                 switch (header.messageCode()) {
                     case JProtocolHeader.HEARTBEAT:
+                        if (header.status() != 0) {
+                            out.add(new Handshakes.Hello(header.status()));
+                        }
+                        break;
+                    case JProtocolHeader.CREDIT:
+                        out.add(new Credits.Grant((int) header.id()));
+                        break;
+                    case JProtocolHeader.CANCEL:
+                        out.add(new JCancelPayload(header.id()));
                         break;
+                    case JProtocolHeader.FILE: {
+                        int length = checkBodySize(header.bodySize());
+                        files.append(in.readSlice(length), header.id(), header.status());
+
+                        break;
+                    }
+                    case JProtocolHeader.CHUNK: {
+                        int length = checkBodySize(header.bodySize());
+                        chunks.append(in.readRetainedSlice(length), header.id());
+
+                        break;
+                    }
                     case JProtocolHeader.REQUEST: {
                         int length = checkBodySize(header.bodySize());
-                        ByteBuf bodyByteBuf = in.readRetainedSlice(length);
+                        ByteBuf bodyByteBuf = chunks.complete(in.readRetainedSlice(length), header.id(), header.status());
 
                         JRequestPayload request = new JRequestPayload(header.id());
+                        request.status(JProtocolHeader.unmaskStatus(header.status()));
                         request.timestamp(SystemClock.millisClock().now());
-                        request.inputBuf(header.serializerCode(), new NettyInputBuf(bodyByteBuf));
+                        request.fileRegions(files.complete(header.id()));
+                        request.inputBuf(header.serializerCode(), NettyInputBuf.newInstance(bodyByteBuf));
 
                         out.add(request);
 
@@ -99,16 +138,25 @@ public class LowCopyProtocolDecoder extends ReplayingDecoder<LowCopyProtocolDeco
                     }
                     case JProtocolHeader.RESPONSE: {
                         int length = checkBodySize(header.bodySize());
-                        ByteBuf bodyByteBuf = in.readRetainedSlice(length);
+                        ByteBuf bodyByteBuf = chunks.complete(in.readRetainedSlice(length), header.id(), header.status());
 
                         JResponsePayload response = new JResponsePayload(header.id());
-                        response.status(header.status());
-                        response.inputBuf(header.serializerCode(), new NettyInputBuf(bodyByteBuf));
+                        response.status(JProtocolHeader.unmaskStatus(header.status()));
+                        response.fileRegions(files.complete(header.id()));
+                        response.inputBuf(header.serializerCode(), NettyInputBuf.newInstance(bodyByteBuf));
 
                         out.add(response);
 
                         break;
                     }
+                    case JProtocolHeader.BATCH: {
+                        int length = checkBodySize(header.bodySize());
+                        ByteBuf batchByteBuf = in.readSlice(length);
+
+                        decodeBatch(batchByteBuf, (int) header.id(), out);
+
+                        break;
+                    }
                     default:
                         throw IoSignals.ILLEGAL_SIGN;
                 }
@@ -116,25 +164,119 @@ public class LowCopyProtocolDecoder extends ReplayingDecoder<LowCopyProtocolDeco
         }
     }
 
-    private static void checkMagic(short magic) throws Signal {
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+        chunks.release();
+        files.release();
+    }
+
+    // 批量消息拆分成N个独立的request/response, 子消息体是batch的retained slice, 同样没有内存拷贝
+    static void decodeBatch(ByteBuf batch, int count, List<Object> out) throws Signal {
+        checkBatchCount(count, batch);
+
+        long now = SystemClock.millisClock().now();
+        for (int i = 0; i < count; i++) {
+            byte sign = batch.readByte();
+            byte status = batch.readByte();
+            long id = batch.readLong();
+            int length = checkSubBodySize(checkBodySize(batch.readInt()), batch, count - i - 1);
+
+            byte messageCode = (byte) (sign & 0x0f);
+            byte serializerCode = (byte) (((int) sign & 0xff) >> 4);
+            switch (messageCode) {
+                case JProtocolHeader.REQUEST: {
+                    ByteBuf bodyByteBuf = batch.readRetainedSlice(length);
+                    if (JProtocolHeader.isCompressed(status)) {
+                        bodyByteBuf = Compressions.decompress(bodyByteBuf);
+                    }
+
+                    JRequestPayload request = new JRequestPayload(id);
+                    request.status(JProtocolHeader.unmaskStatus(status));
+                    request.timestamp(now);
+                    request.inputBuf(serializerCode, NettyInputBuf.newInstance(bodyByteBuf));
+
+                    out.add(request);
+
+                    break;
+                }
+                case JProtocolHeader.RESPONSE: {
+                    ByteBuf bodyByteBuf = batch.readRetainedSlice(length);
+                    if (JProtocolHeader.isCompressed(status)) {
+                        bodyByteBuf = Compressions.decompress(bodyByteBuf);
+                    }
+
+                    JResponsePayload response = new JResponsePayload(id);
+                    response.status(JProtocolHeader.unmaskStatus(status));
+                    response.inputBuf(serializerCode, NettyInputBuf.newInstance(bodyByteBuf));
+
+                    out.add(response);
+
+                    break;
+                }
+                case JProtocolHeader.CANCEL:
+                    batch.skipBytes(length);
+                    out.add(new JCancelPayload(id));
+
+                    break;
+                default:
+                    throw IoSignals.ILLEGAL_SIGN;
+            }
+        }
+    }
+
+    static void checkMagic(short magic) throws Signal {
         if (magic != JProtocolHeader.MAGIC) {
             throw IoSignals.ILLEGAL_MAGIC;
         }
     }
 
-    private static int checkBodySize(int size) throws Signal {
+    static int checkBodySize(int size) throws Signal {
         if (size > MAX_BODY_SIZE) {
             throw IoSignals.BODY_TOO_LARGE;
         }
         return size;
     }
 
+    // 批量消息的子消息个数不能为0, 并且所有子消息头都要在消息体之内
+    static void checkBatchCount(int count, ByteBuf batch) throws Signal {
+        if (count <= 0 || (long) count * JProtocolHeader.BATCH_SUB_HEADER_SIZE > batch.readableBytes()) {
+            throw IoSignals.ILLEGAL_SIGN;
+        }
+    }
+
+    // 子消息体不能超出批量消息体, 并且要给后面 remaining 个子消息头留出位置
+    static int checkSubBodySize(int size, ByteBuf batch, int remaining) throws Signal {
+        if (size < 0 || size > batch.readableBytes() - remaining * JProtocolHeader.BATCH_SUB_HEADER_SIZE) {
+            throw IoSignals.ILLEGAL_SIGN;
+        }
+        return size;
+    }
+
+    /**
+     * 每个请求/响应都会创建一个, 通过 {@link Recycler} 复用; {@link #release()} 只释放内存,
+     * 持有它的payload clear() 时才回收({@link #recycle()}), 避免payload引用到已经被其他消息复用的对象.
+     */
     static final class NettyInputBuf implements InputBuf {
 
-        private final ByteBuf byteBuf;
+        private static final Recycler<NettyInputBuf> RECYCLER = new Recycler<NettyInputBuf>() {
+
+            @Override
+            protected NettyInputBuf newObject(Handle<NettyInputBuf> handle) {
+                return new NettyInputBuf(handle);
+            }
+        };
 
-        NettyInputBuf(ByteBuf byteBuf) {
-            this.byteBuf = byteBuf;
+        static NettyInputBuf newInstance(ByteBuf byteBuf) {
+            NettyInputBuf buf = RECYCLER.get();
+            buf.byteBuf = byteBuf;
+            return buf;
+        }
+
+        private final Recycler.Handle<NettyInputBuf> handle;
+        private ByteBuf byteBuf;
+
+        private NettyInputBuf(Recycler.Handle<NettyInputBuf> handle) {
+            this.handle = handle;
         }
 
         @Override
@@ -147,9 +289,19 @@ public class LowCopyProtocolDecoder extends ReplayingDecoder<LowCopyProtocolDeco
             return byteBuf.nioBuffer(); // should not be called more than once
         }
 
+        @Override
+        public void getBytes(int index, byte[] dst, int dstIndex, int length) {
+            byteBuf.getBytes(byteBuf.readerIndex() + index, dst, dstIndex, length);
+        }
+
         @Override
         public int size() {
-            return byteBuf.readableBytes();
+            return byteBuf == null ? 0 : byteBuf.readableBytes();
+        }
+
+        @Override
+        public boolean isContiguous() {
+            return byteBuf.nioBufferCount() == 1;
         }
 
         @Override
@@ -159,7 +311,18 @@ public class LowCopyProtocolDecoder extends ReplayingDecoder<LowCopyProtocolDeco
 
         @Override
         public boolean release() {
-            return byteBuf.release();
+            ByteBuf buf = byteBuf;
+            if (buf == null) {
+                return false;
+            }
+            byteBuf = null;
+            return buf.release();
+        }
+
+        @Override
+        public void recycle() {
+            release();
+            handle.recycle(this);
         }
     }
 
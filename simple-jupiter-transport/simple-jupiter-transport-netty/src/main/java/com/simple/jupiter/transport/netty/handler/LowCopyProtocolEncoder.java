@@ -1,11 +1,14 @@
 package com.simple.jupiter.transport.netty.handler;
 
 import com.simple.jupiter.transport.JProtocolHeader;
+import com.simple.jupiter.transport.netty.Handshakes;
+import com.simple.jupiter.transport.payload.JCancelPayload;
 import com.simple.jupiter.transport.payload.JRequestPayload;
 import com.simple.jupiter.transport.payload.JResponsePayload;
 import com.simple.jupiter.transport.payload.PayloadHolder;
 import com.simple.jupiter.util.Reflects;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOutboundHandlerAdapter;
@@ -29,7 +32,7 @@ import java.sql.Ref;
  * 消息头16个字节定长
  * = 2 // magic = (short) 0xbabe
  * + 1 // 消息标志位, 低地址4位用来表示消息类型request/response/heartbeat等, 高地址4位用来表示序列化类型
- * + 1 // 状态位, 设置请求响应状态
+ * + 1 // 状态位, 设置请求响应状态, 最高位用来标识消息体是否被压缩
  * + 8 // 消息 id, long 类型, 未来jupiter可能将id限制在48位, 留出高地址的16位作为扩展字段
  * + 4 // 消息体 body 长度, int 类型
  * </pre>
@@ -49,6 +52,13 @@ public class LowCopyProtocolEncoder extends ChannelOutboundHandlerAdapter {
             if (msg instanceof PayloadHolder) {
                 PayloadHolder cast = (PayloadHolder) msg;
                 buf = encode(cast);
+                if (Handshakes.isCompactHeader(ctx.channel())) {
+                    buf = CompactHeaders.compact(buf);
+                }
+                if (FileRegions.hasFileRegions(cast)) {
+                    // 文件区段在消息之前发送
+                    promise = FileRegions.writeFrames(ctx, cast, promise);
+                }
                 ctx.write(buf, promise);
                 buf = null;
             } else {
@@ -64,20 +74,35 @@ public class LowCopyProtocolEncoder extends ChannelOutboundHandlerAdapter {
     }
 
     protected ByteBuf encode(PayloadHolder msg) throws Exception {
+        ByteBuf frame;
         if (msg instanceof JRequestPayload) {
-            return doEncodeRequest((JRequestPayload) msg);
+            frame = doEncodeRequest((JRequestPayload) msg);
         } else if (msg instanceof JResponsePayload) {
-            return doEncodeResponse((JResponsePayload) msg);
+            frame = doEncodeResponse((JResponsePayload) msg);
+        } else if (msg instanceof JCancelPayload) {
+            return doEncodeCancel((JCancelPayload) msg);
         } else {
             throw new IllegalArgumentException(Reflects.simpleClassName(msg));
         }
+        //超大的消息体拆分成多个帧发送, 见 Chunks
+        if (Chunks.needChunk(frame.readableBytes() - JProtocolHeader.HEADER_SIZE)) {
+            frame = Chunks.split(frame);
+        }
+        return frame;
     }
 
     private ByteBuf doEncodeRequest(JRequestPayload request) {
         byte sign = JProtocolHeader.toSign(request.serializerCode(), JProtocolHeader.REQUEST);
         long invokeId = request.invokeId();
         //这边获取的是NettyOutput那边生成好并前面空16个位置 + 后面填充了具体的请求内容的ByteBuf, 所以这边补齐除了内容之外的byte
-        ByteBuf byteBuf = (ByteBuf) request.outputBuf().backingObject();
+        ByteBuf byteBuf = (ByteBuf) request.detachOutputBuf().backingObject();
+        byte status = request.status();
+        //消息体超过阈值时压缩, 压缩后的ByteBuf同样在前面空出了16个位置
+        ByteBuf compressed = Compressions.compress(byteBuf, JProtocolHeader.HEADER_SIZE);
+        if (compressed != null) {
+            byteBuf = compressed;
+            status = JProtocolHeader.toStatus(status, true);
+        }
         int length = byteBuf.readableBytes();
         //标记当前位置，等补齐header后还要回到消息的末尾
         byteBuf.markWriterIndex();
@@ -86,7 +111,7 @@ public class LowCopyProtocolEncoder extends ChannelOutboundHandlerAdapter {
         //补充除了内容之外的数据
         byteBuf.writeShort(JProtocolHeader.MAGIC)
             .writeByte(sign)
-            .writeByte(0x00)
+            .writeByte(status)
             .writeLong(invokeId)
             .writeInt(length - JProtocolHeader.HEADER_SIZE);
 
@@ -99,7 +124,12 @@ public class LowCopyProtocolEncoder extends ChannelOutboundHandlerAdapter {
         byte sign = JProtocolHeader.toSign(response.serializerCode(), JProtocolHeader.RESPONSE);
         byte status = response.status();
         long invokeId = response.id();
-        ByteBuf byteBuf = (ByteBuf) response.outputBuf().backingObject();
+        ByteBuf byteBuf = (ByteBuf) response.detachOutputBuf().backingObject();
+        ByteBuf compressed = Compressions.compress(byteBuf, JProtocolHeader.HEADER_SIZE);
+        if (compressed != null) {
+            byteBuf = compressed;
+            status = JProtocolHeader.toStatus(status, true);
+        }
         int length = byteBuf.readableBytes();
 
         byteBuf.markWriterIndex();
@@ -116,4 +146,16 @@ public class LowCopyProtocolEncoder extends ChannelOutboundHandlerAdapter {
 
         return byteBuf;
     }
+
+    private ByteBuf doEncodeCancel(JCancelPayload cancel) {
+        // 只有协议头, 没有消息体
+        ByteBuf byteBuf = ByteBufAllocator.DEFAULT.directBuffer(JProtocolHeader.HEADER_SIZE);
+        byteBuf.writeShort(JProtocolHeader.MAGIC)
+            .writeByte(JProtocolHeader.toSign((byte) 0x00, JProtocolHeader.CANCEL))
+            .writeByte(0x00)
+            .writeLong(cancel.invokeId())
+            .writeInt(0);
+
+        return byteBuf;
+    }
 }
@@ -17,6 +17,9 @@ package com.simple.jupiter.transport.netty.handler;
 
 import com.simple.jupiter.transport.JProtocolHeader;
 import com.simple.jupiter.transport.exception.IoSignals;
+import com.simple.jupiter.transport.netty.Credits;
+import com.simple.jupiter.transport.netty.Handshakes;
+import com.simple.jupiter.transport.payload.JCancelPayload;
 import com.simple.jupiter.transport.payload.JRequestPayload;
 import com.simple.jupiter.transport.payload.JResponsePayload;
 import com.simple.jupiter.util.Signal;
@@ -44,7 +47,7 @@ import java.util.List;
  * 消息头16个字节定长
  * = 2 // magic = (short) 0xbabe
  * + 1 // 消息标志位, 低地址4位用来表示消息类型request/response/heartbeat等, 高地址4位用来表示序列化类型
- * + 1 // 状态位, 设置请求响应状态
+ * + 1 // 状态位, 设置请求响应状态, 最高位用来标识消息体是否被压缩
  * + 8 // 消息 id, long 类型, 未来jupiter可能将id限制在48位, 留出高地址的16位作为扩展字段
  * + 4 // 消息体 body 长度, int 类型
  * </pre>
@@ -75,10 +78,22 @@ public class ProtocolDecoder extends ReplayingDecoder<ProtocolDecoder.State> {
 
     // 协议头
     private final JProtocolHeader header = new JProtocolHeader();
+    // 分片消息
+    private final Chunks.Assembler chunks = new Chunks.Assembler();
+    // 文件区段
+    private final FileRegions.Receiver files = new FileRegions.Receiver();
 
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-        switch (state()) {
+        State state = state();
+        if (state == State.MAGIC && in.getByte(in.readerIndex()) == JProtocolHeader.MAGIC_V2) {
+            // v2协议头, 不完整时从MAGIC重新开始
+            CompactHeaders.readHeader(in, header);
+            checkpoint(State.BODY);
+            state = State.BODY;
+        }
+
+        switch (state) {
             case MAGIC:
                 checkMagic(in.readShort());         // MAGIC
                 checkpoint(State.SIGN);
@@ -97,14 +112,36 @@ public class ProtocolDecoder extends ReplayingDecoder<ProtocolDecoder.State> {
             case BODY:
                 switch (header.messageCode()) {
                     case JProtocolHeader.HEARTBEAT:
+                        if (header.status() != 0) {
+                            out.add(new Handshakes.Hello(header.status()));
+                        }
+                        break;
+                    case JProtocolHeader.CREDIT:
+                        out.add(new Credits.Grant((int) header.id()));
+                        break;
+                    case JProtocolHeader.CANCEL:
+                        out.add(new JCancelPayload(header.id()));
+                        break;
+                    case JProtocolHeader.FILE: {
+                        int length = checkBodySize(header.bodySize());
+                        files.append(in.readSlice(length), header.id(), header.status());
+
+                        break;
+                    }
+                    case JProtocolHeader.CHUNK: {
+                        int length = checkBodySize(header.bodySize());
+                        chunks.append(in.readRetainedSlice(length), header.id());
+
                         break;
+                    }
                     case JProtocolHeader.REQUEST: {
                         int length = checkBodySize(header.bodySize());
-                        byte[] bytes = new byte[length];
-                        in.readBytes(bytes);
+                        byte[] bytes = readBody(in, length, header, chunks);
 
                         JRequestPayload request = new JRequestPayload(header.id());
+                        request.status(JProtocolHeader.unmaskStatus(header.status()));
                         request.timestamp(SystemClock.millisClock().now());
+                        request.fileRegions(files.complete(header.id()));
                         request.bytes(header.serializerCode(), bytes);
 
                         out.add(request);
@@ -113,17 +150,25 @@ public class ProtocolDecoder extends ReplayingDecoder<ProtocolDecoder.State> {
                     }
                     case JProtocolHeader.RESPONSE: {
                         int length = checkBodySize(header.bodySize());
-                        byte[] bytes = new byte[length];
-                        in.readBytes(bytes);
+                        byte[] bytes = readBody(in, length, header, chunks);
 
                         JResponsePayload response = new JResponsePayload(header.id());
-                        response.status(header.status());
+                        response.status(JProtocolHeader.unmaskStatus(header.status()));
+                        response.fileRegions(files.complete(header.id()));
                         response.bytes(header.serializerCode(), bytes);
 
                         out.add(response);
 
                         break;
                     }
+                    case JProtocolHeader.BATCH: {
+                        int length = checkBodySize(header.bodySize());
+                        ByteBuf batchByteBuf = in.readSlice(length);
+
+                        decodeBatch(batchByteBuf, (int) header.id(), out);
+
+                        break;
+                    }
                     default:
                         throw IoSignals.ILLEGAL_SIGN;
                 }
@@ -131,19 +176,102 @@ public class ProtocolDecoder extends ReplayingDecoder<ProtocolDecoder.State> {
         }
     }
 
-    private static void checkMagic(short magic) throws Signal {
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+        chunks.release();
+        files.release();
+    }
+
+    // 读取消息体并解压, 之前收到过分片时组装成完整的消息体
+    static byte[] readBody(ByteBuf in, int length, JProtocolHeader header, Chunks.Assembler chunks) throws Signal {
+        if (chunks.isAssembling()) {
+            return chunks.completeBytes(in.readRetainedSlice(length), header.id(), header.status());
+        }
+
+        byte[] bytes = new byte[length];
+        in.readBytes(bytes);
+        if (JProtocolHeader.isCompressed(header.status())) {
+            bytes = Compressions.decompress(bytes);
+        }
+        return bytes;
+    }
+
+    // 批量消息拆分成N个独立的request/response
+    static void decodeBatch(ByteBuf batch, int count, List<Object> out) throws Signal {
+        checkBatchCount(count, batch);
+
+        long now = SystemClock.millisClock().now();
+        for (int i = 0; i < count; i++) {
+            byte sign = batch.readByte();
+            byte status = batch.readByte();
+            long id = batch.readLong();
+            int length = checkSubBodySize(checkBodySize(batch.readInt()), batch, count - i - 1);
+
+            byte messageCode = (byte) (sign & 0x0f);
+            byte serializerCode = (byte) (((int) sign & 0xff) >> 4);
+            byte[] bytes = new byte[length];
+            batch.readBytes(bytes);
+            if (JProtocolHeader.isCompressed(status)) {
+                bytes = Compressions.decompress(bytes);
+            }
+            switch (messageCode) {
+                case JProtocolHeader.REQUEST: {
+                    JRequestPayload request = new JRequestPayload(id);
+                    request.status(JProtocolHeader.unmaskStatus(status));
+                    request.timestamp(now);
+                    request.bytes(serializerCode, bytes);
+
+                    out.add(request);
+
+                    break;
+                }
+                case JProtocolHeader.RESPONSE: {
+                    JResponsePayload response = new JResponsePayload(id);
+                    response.status(JProtocolHeader.unmaskStatus(status));
+                    response.bytes(serializerCode, bytes);
+
+                    out.add(response);
+
+                    break;
+                }
+                case JProtocolHeader.CANCEL:
+                    out.add(new JCancelPayload(id));
+
+                    break;
+                default:
+                    throw IoSignals.ILLEGAL_SIGN;
+            }
+        }
+    }
+
+    static void checkMagic(short magic) throws Signal {
         if (magic != JProtocolHeader.MAGIC) {
             throw IoSignals.ILLEGAL_MAGIC;
         }
     }
 
-    private static int checkBodySize(int size) throws Signal {
+    static int checkBodySize(int size) throws Signal {
         if (size > MAX_BODY_SIZE) {
             throw IoSignals.BODY_TOO_LARGE;
         }
         return size;
     }
 
+    // 批量消息的子消息个数不能为0, 并且所有子消息头都要在消息体之内
+    static void checkBatchCount(int count, ByteBuf batch) throws Signal {
+        if (count <= 0 || (long) count * JProtocolHeader.BATCH_SUB_HEADER_SIZE > batch.readableBytes()) {
+            throw IoSignals.ILLEGAL_SIGN;
+        }
+    }
+
+    // 子消息体不能超出批量消息体, 并且要给后面 remaining 个子消息头留出位置
+    static int checkSubBodySize(int size, ByteBuf batch, int remaining) throws Signal {
+        if (size < 0 || size > batch.readableBytes() - remaining * JProtocolHeader.BATCH_SUB_HEADER_SIZE) {
+            throw IoSignals.ILLEGAL_SIGN;
+        }
+        return size;
+    }
+
     enum State {
         MAGIC,
         SIGN,
@@ -0,0 +1,28 @@
+package com.simple.jupiter.transport.netty.handler;
+
+import com.simple.jupiter.transport.CodecConfig;
+import io.netty.channel.ChannelHandler;
+
+/**
+ * 根据配置创建协议解码器, 解码器是有状态的, 每个 channel 都需要一个新的实例.
+ *
+ * <pre>
+ *                  low_copy=true                       low_copy=false
+ * replaying        {@link LowCopyProtocolDecoder}            {@link ProtocolDecoder}
+ * cumulative       {@link LowCopyCumulativeProtocolDecoder}  {@link CumulativeProtocolDecoder}
+ * </pre>
+ *
+ * jupiter
+ * org.jupiter.transport.netty.handler
+ */
+public final class ProtocolDecoders {
+
+    public static ChannelHandler newDecoder() {
+        if (CodecConfig.isCodecLowCopy()) {
+            return CodecConfig.isDecoderCumulative() ? new LowCopyCumulativeProtocolDecoder() : new LowCopyProtocolDecoder();
+        }
+        return CodecConfig.isDecoderCumulative() ? new CumulativeProtocolDecoder() : new ProtocolDecoder();
+    }
+
+    private ProtocolDecoders() {}
+}
@@ -1,6 +1,8 @@
 package com.simple.jupiter.transport.netty.handler;
 
 import com.simple.jupiter.transport.JProtocolHeader;
+import com.simple.jupiter.transport.netty.Handshakes;
+import com.simple.jupiter.transport.payload.JCancelPayload;
 import com.simple.jupiter.transport.payload.JRequestPayload;
 import com.simple.jupiter.transport.payload.JResponsePayload;
 import com.simple.jupiter.transport.payload.PayloadHolder;
@@ -8,17 +10,31 @@ import com.simple.jupiter.util.Reflects;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.MessageToByteEncoder;
 
 @ChannelHandler.Sharable
 public class ProtocolEncoder extends MessageToByteEncoder<PayloadHolder> {
 
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (FileRegions.hasFileRegions(msg)) {
+            // 文件区段在消息之前发送
+            promise = FileRegions.writeFrames(ctx, (PayloadHolder) msg, promise);
+        }
+        super.write(ctx, msg, promise);
+    }
+
     @Override
     protected void encode(ChannelHandlerContext ctx, PayloadHolder msg, ByteBuf out) throws Exception {
         if (msg instanceof JRequestPayload) {
-            doEncodeRequest((JRequestPayload) msg, out);
+            doEncodeRequest(ctx, (JRequestPayload) msg, out);
         } else if (msg instanceof JResponsePayload) {
-            doEncodeResponse((JResponsePayload) msg, out);
+            doEncodeResponse(ctx, (JResponsePayload) msg, out);
+        } else if (msg instanceof JCancelPayload) {
+            doEncodeCancel(ctx, (JCancelPayload) msg, out);
         } else {
             throw new IllegalArgumentException(Reflects.simpleClassName(msg));
         }
@@ -27,38 +43,53 @@ public class ProtocolEncoder extends MessageToByteEncoder<PayloadHolder> {
     @Override
     protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, PayloadHolder msg, boolean preferDirect) throws Exception {
         if (preferDirect) {
-            return ctx.alloc().ioBuffer(JProtocolHeader.HEADER_SIZE + msg.size());
+            return ctx.alloc().ioBuffer(Chunks.frameLength(msg.size()));
         } else {
-            return ctx.alloc().heapBuffer(JProtocolHeader.HEADER_SIZE + msg.size());
+            return ctx.alloc().heapBuffer(Chunks.frameLength(msg.size()));
         }
     }
 
-    private void doEncodeRequest(JRequestPayload request, ByteBuf out) {
+    private void doEncodeRequest(ChannelHandlerContext ctx, JRequestPayload request, ByteBuf out) {
         byte sign = JProtocolHeader.toSign(request.serializerCode(), JProtocolHeader.REQUEST);
         long invokeId = request.invokeId();
         byte[] bytes = request.bytes();
-        int length = bytes.length;
+        byte status = request.status();
+        byte[] compressed = Compressions.compress(bytes);
+        if (compressed != null) {
+            bytes = compressed;
+            status = JProtocolHeader.toStatus(status, true);
+        }
 
-        out.writeShort(JProtocolHeader.MAGIC)
-                .writeByte(sign)
-                .writeByte(0x00)
-                .writeLong(invokeId)
-                .writeInt(length)
-                .writeBytes(bytes);
+        writeFrames(ctx, out, sign, status, invokeId, bytes);
     }
 
-    private void doEncodeResponse(JResponsePayload response, ByteBuf out) {
+    private void doEncodeResponse(ChannelHandlerContext ctx, JResponsePayload response, ByteBuf out) {
         byte sign = JProtocolHeader.toSign(response.serializerCode(), JProtocolHeader.RESPONSE);
         byte status = response.status();
         long invokeId = response.id();
         byte[] bytes = response.bytes();
-        int length = bytes.length;
+        byte[] compressed = Compressions.compress(bytes);
+        if (compressed != null) {
+            bytes = compressed;
+            status = JProtocolHeader.toStatus(status, true);
+        }
 
-        out.writeShort(JProtocolHeader.MAGIC)
-                .writeByte(sign)
-                .writeByte(status)
-                .writeLong(invokeId)
-                .writeInt(length)
-                .writeBytes(bytes);
+        writeFrames(ctx, out, sign, status, invokeId, bytes);
+    }
+
+    private void doEncodeCancel(ChannelHandlerContext ctx, JCancelPayload cancel, ByteBuf out) {
+        byte sign = JProtocolHeader.toSign((byte) 0x00, JProtocolHeader.CANCEL);
+
+        // 只有协议头, 没有消息体
+        writeFrames(ctx, out, sign, (byte) 0x00, cancel.invokeId(), EMPTY_BYTES);
+    }
+
+    private static void writeFrames(ChannelHandlerContext ctx, ByteBuf out, byte sign, byte status, long id, byte[] bytes) {
+        if (Handshakes.isCompactHeader(ctx.channel()) && !Chunks.needChunk(bytes.length)
+                && CompactHeaders.writeHeader(out, sign, status, id, bytes.length)) {
+            out.writeBytes(bytes);
+        } else {
+            Chunks.writeFrames(out, sign, status, id, bytes);
+        }
     }
 }
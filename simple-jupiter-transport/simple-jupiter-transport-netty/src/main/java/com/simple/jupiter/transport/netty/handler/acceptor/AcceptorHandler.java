@@ -3,6 +3,7 @@ package com.simple.jupiter.transport.netty.handler.acceptor;
 import com.simple.jupiter.transport.Status;
 import com.simple.jupiter.transport.channel.JChannel;
 import com.simple.jupiter.transport.netty.channel.NettyChannel;
+import com.simple.jupiter.transport.payload.JCancelPayload;
 import com.simple.jupiter.transport.payload.JRequestPayload;
 import com.simple.jupiter.transport.processor.ProviderProcessor;
 import com.simple.jupiter.util.Signal;
@@ -40,6 +41,12 @@ public class AcceptorHandler extends ChannelInboundHandlerAdapter {
             } catch (Throwable t) {
                 processor.handleException(jChannel, (JRequestPayload) msg, Status.SERVER_ERROR, t);
             }
+        } else if (msg instanceof JCancelPayload) {
+            try {
+                processor.handleCancel(NettyChannel.attachChannel(ch), (JCancelPayload) msg);
+            } catch (Throwable t) {
+                logger.error("Handle cancel failed: {}, channel: {}, {}.", msg, ch, StackTraceUtil.stackTrace(t));
+            }
         } else {
             logger.warn("Unexpected message type received: {}, channel: {}.", msg.getClass(), ch);
             ReferenceCountUtil.release(msg);
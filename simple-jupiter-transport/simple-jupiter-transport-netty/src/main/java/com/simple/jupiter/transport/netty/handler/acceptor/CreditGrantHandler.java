@@ -0,0 +1,79 @@
+package com.simple.jupiter.transport.netty.handler.acceptor;
+
+import com.simple.jupiter.transport.netty.Credits;
+import com.simple.jupiter.transport.payload.JCancelPayload;
+import com.simple.jupiter.transport.payload.JRequestPayload;
+import com.simple.jupiter.transport.payload.JResponsePayload;
+import com.simple.jupiter.util.collection.LongObjectHashMap;
+import com.simple.jupiter.util.collection.LongObjectMap;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * 服务端的流控: 连接建立时授予客户端 window 个credit, 之后每写出一个响应归还一个credit.
+ *
+ * 归还的credit攒够 window / 4 个才发送一次, 跟在响应之后由同一次flush写出; 攒着的credit总是小于 window,
+ * 客户端没有未完成的请求时手里一定还有credit, 不会因此卡住.
+ *
+ * 被客户端取消(CANCEL)的请求不会再有响应, 收到取消时就归还它的credit; 为了保证每个请求只归还一次,
+ * 这里记录了所有还没有响应的请求id.
+ *
+ * 每个连接一个实例, 只在 event-loop 中访问, 需要放在encoder之后(更靠近pipeline的tail).
+ *
+ * jupiter
+ * org.jupiter.transport.netty.handler.acceptor
+ */
+public class CreditGrantHandler extends ChannelDuplexHandler {
+
+    private final int window;
+    private final int grantThreshold;
+    // 还没有响应的请求
+    private final LongObjectMap<Boolean> outstanding = new LongObjectHashMap<>();
+
+    private int pendingGrants;
+
+    public CreditGrantHandler(int window) {
+        this.window = window;
+        this.grantThreshold = Math.max(window >> 2, 1);
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        ctx.writeAndFlush(Credits.creditContent(ctx.alloc(), window), ctx.voidPromise());
+
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof JRequestPayload) {
+            outstanding.put(((JRequestPayload) msg).invokeId(), Boolean.TRUE);
+        } else if (msg instanceof JCancelPayload) {
+            if (outstanding.remove(((JCancelPayload) msg).invokeId()) != null && ++pendingGrants >= grantThreshold) {
+                writeGrants(ctx);
+                ctx.flush();
+            }
+        }
+
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        // 已经取消的请求在取消时归还过了
+        boolean grant = msg instanceof JResponsePayload && outstanding.remove(((JResponsePayload) msg).id()) != null;
+
+        ctx.write(msg, promise);
+
+        if (grant && ++pendingGrants >= grantThreshold) {
+            writeGrants(ctx);
+        }
+    }
+
+    private void writeGrants(ChannelHandlerContext ctx) {
+        int credits = pendingGrants;
+        pendingGrants = 0;
+        ctx.write(Credits.creditContent(ctx.alloc(), credits), ctx.voidPromise());
+    }
+}
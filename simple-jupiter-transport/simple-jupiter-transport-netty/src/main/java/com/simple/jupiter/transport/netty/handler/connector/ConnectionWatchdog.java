@@ -1,7 +1,6 @@
 package com.simple.jupiter.transport.netty.handler.connector;
 
 import java.net.SocketAddress;
-import java.util.concurrent.TimeUnit;
 import com.simple.jupiter.transport.channel.JChannelGroup;
 import com.simple.jupiter.transport.netty.channel.NettyChannel;
 import com.simple.jupiter.transport.netty.handler.ChannelHandlerHolder;
@@ -19,6 +18,12 @@ import io.netty.util.Timeout;
 import io.netty.util.Timer;
 import io.netty.util.TimerTask;
 
+/**
+ * 断线自动重连, 重连的时间和并发由 {@link ReconnectScheduler} 控制.
+ *
+ * jupiter
+ * org.jupiter.transport.netty.handler.connector
+ */
 @ChannelHandler.Sharable
 public abstract class ConnectionWatchdog extends ChannelInboundHandlerAdapter implements TimerTask, ChannelHandlerHolder {
 
@@ -28,15 +33,25 @@ public abstract class ConnectionWatchdog extends ChannelInboundHandlerAdapter im
     private static final int ST_STOPPED = 2;
 
     private final Bootstrap bootstrap;
-    private final Timer timer;
+    private final ReconnectScheduler scheduler;
     private final SocketAddress remoteAddress;
     private final JChannelGroup group;
     private volatile int state = ST_STARTED;
-    private int attempts;
-
+    // 上一次重连的等待时间, 0表示连接成功之后还没有重连过
+    private volatile long delayMillis;
+    // 正在等待的重连
+    private volatile Timeout reconnectTimeout;
+
+    /**
+     * 单独使用一个 {@link ReconnectScheduler}, 只有重连时间的随机退避, 没有并发限制.
+     */
     public ConnectionWatchdog(Bootstrap bootstrap, Timer timer, SocketAddress remoteAddress, JChannelGroup group) {
+        this(bootstrap, new ReconnectScheduler(timer), remoteAddress, group);
+    }
+
+    public ConnectionWatchdog(Bootstrap bootstrap, ReconnectScheduler scheduler, SocketAddress remoteAddress, JChannelGroup group) {
         this.bootstrap = bootstrap;
-        this.timer = timer;
+        this.scheduler = scheduler;
         this.remoteAddress = remoteAddress;
         this.group = group;
     }
@@ -54,6 +69,21 @@ public abstract class ConnectionWatchdog extends ChannelInboundHandlerAdapter im
         state = ST_STOPPED;
     }
 
+    /**
+     * 对端已经确认恢复(比如注册中心重新推送了这个地址), 正在等待的重连立即发起, 退避时间从头开始;
+     * 没有正在等待的重连时返回false.
+     */
+    public boolean reconnectNow() {
+        Timeout timeout = reconnectTimeout;
+        if (timeout != null && timeout.cancel()) {
+            reconnectTimeout = null;
+            delayMillis = 0;
+            scheduler.submit(this);
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
         Channel ch = ctx.channel();
@@ -62,7 +92,7 @@ public abstract class ConnectionWatchdog extends ChannelInboundHandlerAdapter im
             group.add(NettyChannel.attachChannel(ch));
         }
 
-        attempts = 0;
+        delayMillis = 0;
         logger.info("Connects with {}.", ch);
         ctx.fireChannelActive();
     }
@@ -71,11 +101,9 @@ public abstract class ConnectionWatchdog extends ChannelInboundHandlerAdapter im
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         boolean doReconnect = isReconnectNeeded();
         if (doReconnect) {
-            if (attempts < 12) {
-                attempts++;
-            }
-            long timeout = 2 << attempts;
-            timer.newTimeout(this, timeout, TimeUnit.MICROSECONDS);
+            long delay = scheduler.nextDelayMillis(delayMillis);
+            delayMillis = delay;
+            reconnectTimeout = scheduler.schedule(this, delay);
         }
         logger.warn("Disconnects with {}, address: {}, reconnect: {}.", ctx.channel(), remoteAddress, doReconnect);
 
@@ -84,32 +112,48 @@ public abstract class ConnectionWatchdog extends ChannelInboundHandlerAdapter im
 
     @Override
     public void run(Timeout timeout) throws Exception {
+        if (reconnectTimeout == timeout) {
+            reconnectTimeout = null;
+        }
+        scheduler.submit(this);
+    }
+
+    /**
+     * 已经拿到 {@link ReconnectScheduler} 的并发许可, 有结果之后必须归还.
+     */
+    void reconnect() {
         if (!isReconnectNeeded()) {
+            scheduler.release();
             logger.warn("Cancel reconnecting with {}.", remoteAddress);
             return;
         }
 
         ChannelFuture future;
-        synchronized (bootstrap) {
-            bootstrap.handler(new ChannelInitializer<Channel>() {
-
-                @Override
-                protected void initChannel(Channel ch) throws Exception {
-                    ch.pipeline().addLast(handlers());
-                }
-            });
-            future = bootstrap.connect(remoteAddress);
+        try {
+            synchronized (bootstrap) {
+                bootstrap.handler(new ChannelInitializer<Channel>() {
+
+                    @Override
+                    protected void initChannel(Channel ch) throws Exception {
+                        ch.pipeline().addLast(handlers());
+                    }
+                });
+                future = bootstrap.connect(remoteAddress);
+            }
+        } catch (Throwable t) {
+            scheduler.release();
+            throw t;
         }
         future.addListener((ChannelFutureListener) f -> {
             boolean succeed = f.isSuccess();
 
             logger.warn("Reconnects with {}, {}.", remoteAddress, succeed ? "succeed" : "failed");
 
+            scheduler.release();
             if (!succeed) {
                 f.channel().pipeline().fireChannelInactive();
             }
         });
-
     }
 
     private boolean isReconnectNeeded() {
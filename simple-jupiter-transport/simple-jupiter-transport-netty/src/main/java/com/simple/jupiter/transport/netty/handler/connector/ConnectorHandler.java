@@ -1,6 +1,8 @@
 package com.simple.jupiter.transport.netty.handler.connector;
 
 import java.io.IOException;
+import com.simple.jupiter.transport.JFileRegion;
+import com.simple.jupiter.transport.netty.Credits;
 import com.simple.jupiter.transport.netty.channel.NettyChannel;
 import com.simple.jupiter.transport.payload.JResponsePayload;
 import com.simple.jupiter.transport.processor.ConsumerProcessor;
@@ -31,8 +33,13 @@ public class ConnectorHandler extends ChannelInboundHandlerAdapter {
             try {
                 processor.handleResponse(NettyChannel.attachChannel(ch), (JResponsePayload) msg);
             } catch (Throwable t) {
+                // 响应被丢弃, 收到的文件区段也没有人会去release了
+                JFileRegion.releaseAll(((JResponsePayload) msg).fileRegions());
+
                 logger.error("An exception was caught: {}, on {} #channelRead().", StackTraceUtil.stackTrace(t), ch);
             }
+        } else if (msg instanceof Credits.Grant) {
+            NettyChannel.attachChannel(ch).grantCredits(((Credits.Grant) msg).credits());
         } else {
             logger.warn("Unexpected message type received: {}, channel: {}.", msg.getClass(), ch);
 
@@ -63,6 +70,9 @@ public class ConnectorHandler extends ChannelInboundHandlerAdapter {
             }
 
             config.setAutoRead(true);
+
+            // 唤醒因为所有channel都不可写而等待的调用者
+            NettyChannel.attachChannel(ch).notifyWritabilityListeners();
         }
     }
 
@@ -0,0 +1,98 @@
+package com.simple.jupiter.transport.netty.handler.connector;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.simple.jupiter.util.SystemPropertyUtil;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+
+/**
+ * 同一个connector下所有 {@link ConnectionWatchdog} 共享的重连调度器.
+ *
+ * 1. 退避时间使用 decorrelated jitter: delay = min(max, random(base, prevDelay * 3)), 服务端重启之后
+ *      大量客户端的重连时间被打散, 不会在同一时刻一起握手.
+ * 2. 同一时刻正在进行的重连(已经发起connect还没有结果)不超过 jupiter.io.reconnect.max.concurrent 个,
+ *      超出的排队, 前面的重连有结果之后再发起.
+ *
+ * jupiter
+ * org.jupiter.transport.netty.handler.connector
+ */
+public final class ReconnectScheduler {
+
+    // 退避时间的下限
+    private static final long BASE_DELAY_MILLIS = Math.max(
+            SystemPropertyUtil.getLong("jupiter.io.reconnect.base.delay.millis", 100), 1);
+    // 退避时间的上限
+    private static final long MAX_DELAY_MILLIS = Math.max(
+            SystemPropertyUtil.getLong("jupiter.io.reconnect.max.delay.millis", 10000), BASE_DELAY_MILLIS);
+    // 同时进行的重连的最大个数
+    private static final int MAX_CONCURRENT = Math.max(
+            SystemPropertyUtil.getInt("jupiter.io.reconnect.max.concurrent", 32), 1);
+
+    private final Timer timer;
+    private final AtomicInteger connecting = new AtomicInteger();
+    private final Queue<ConnectionWatchdog> pending = new ConcurrentLinkedQueue<>();
+
+    public ReconnectScheduler(Timer timer) {
+        this.timer = timer;
+    }
+
+    /**
+     * 下一次重连的等待时间, prevDelayMillis 为0表示第一次重连.
+     */
+    long nextDelayMillis(long prevDelayMillis) {
+        long upper = Math.min(MAX_DELAY_MILLIS, Math.max(BASE_DELAY_MILLIS, prevDelayMillis * 3));
+        return ThreadLocalRandom.current().nextLong(BASE_DELAY_MILLIS, upper + 1);
+    }
+
+    Timeout schedule(ConnectionWatchdog watchdog, long delayMillis) {
+        return timer.newTimeout(watchdog, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 等待时间到了(或者被立即唤醒), 拿到并发许可之后发起重连, 否则排队.
+     */
+    void submit(ConnectionWatchdog watchdog) {
+        if (tryAcquire()) {
+            watchdog.reconnect();
+        } else {
+            pending.offer(watchdog);
+            // 入队之前其他重连可能刚好结束, 再检查一次, 避免一直排在队列里
+            drain();
+        }
+    }
+
+    /**
+     * 一次重连有了结果(成功或者失败).
+     */
+    void release() {
+        connecting.decrementAndGet();
+        drain();
+    }
+
+    private void drain() {
+        while (!pending.isEmpty() && tryAcquire()) {
+            ConnectionWatchdog watchdog = pending.poll();
+            if (watchdog == null) {
+                connecting.decrementAndGet();
+                continue;
+            }
+            watchdog.reconnect();
+        }
+    }
+
+    private boolean tryAcquire() {
+        for (;;) {
+            int n = connecting.get();
+            if (n >= MAX_CONCURRENT) {
+                return false;
+            }
+            if (connecting.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+    }
+}